@@ -0,0 +1,864 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntityProcessor.java
+ */
+package com.microsoft.windowsazure.mobileservices.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates the JsonEntityAdapter of the classes annotated with JsonEntity.
+ * <p/>
+ * The processor does not depend on the Mobile Services SDK: annotations are
+ * recognized by name, and the generated sources are compiled with the SDK
+ * of the application.
+ */
+public class JsonEntityProcessor extends AbstractProcessor {
+
+    /**
+     * Name of the JsonEntity annotation
+     */
+    static final String JSON_ENTITY_ANNOTATION = "com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntity";
+
+    /**
+     * Name of Gson's SerializedName annotation
+     */
+    static final String SERIALIZED_NAME_ANNOTATION = "com.google.gson.annotations.SerializedName";
+
+    /**
+     * Name of the MobileServiceSystemProperty enumeration
+     */
+    static final String SYSTEM_PROPERTY_ENUM = "com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty";
+
+    /**
+     * Suffix of the name of the generated adapter classes
+     */
+    static final String ADAPTER_SUFFIX = "_JsonEntityAdapter";
+
+    /**
+     * The string prefix used to indicate system properties
+     */
+    private static final String SYSTEM_PROPERTY_PREFIX = "__";
+
+    /**
+     * Serialized name of the id property
+     */
+    private static final String ID_PROPERTY_NAME = "id";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(JSON_ENTITY_ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "JsonEntity can only be applied to classes");
+                    continue;
+                }
+
+                try {
+                    generateAdapter((TypeElement) element);
+                } catch (IOException e) {
+                    error(element, "Unable to write the JsonEntityAdapter: " + e.getMessage());
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Generates the JsonEntityAdapter of an entity class
+     *
+     * @param entity The entity class
+     * @throws java.io.IOException
+     */
+    private void generateAdapter(TypeElement entity) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+
+        if (entity.getModifiers().contains(Modifier.PRIVATE) || !entity.getTypeParameters().isEmpty()) {
+            error(entity, "JsonEntity classes must not be private nor generic");
+            return;
+        }
+
+        String packageName = elements.getPackageOf(entity).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(entity).toString();
+        String adapterName = binaryName.substring(packageName.length() == 0 ? 0 : packageName.length() + 1) + ADAPTER_SUFFIX;
+
+        List<Property> properties = getProperties(entity, packageName);
+
+        if (properties == null) {
+            return;
+        }
+
+        Property idProperty = null;
+        int idPropertyCount = 0;
+        List<String> systemProperties = new ArrayList<String>();
+        List<String> systemPropertyNames = getSystemPropertyNames(entity);
+
+        if (systemPropertyNames == null) {
+            return;
+        }
+
+        // Like JsonEntityMetadata, the id and system properties are only
+        // taken from the fields declared in the entity class itself
+        for (Property property : properties) {
+            if (property.mField.getEnclosingElement() != entity) {
+                continue;
+            }
+
+            if (property.mName.equalsIgnoreCase(ID_PROPERTY_NAME)) {
+                if (idPropertyCount == 0) {
+                    idProperty = property;
+                }
+
+                idPropertyCount++;
+            } else {
+                for (String systemProperty : systemPropertyNames) {
+                    if ((SYSTEM_PROPERTY_PREFIX + systemProperty).equalsIgnoreCase(property.mName)) {
+                        systemProperties.add(systemProperty);
+                    }
+                }
+            }
+        }
+
+        // System properties are only supported with string ids
+        if (idProperty == null || isIntegerType(idProperty.mType)) {
+            systemProperties.clear();
+        }
+
+        boolean createTypeAdapter = hasNoArgConstructor(entity, packageName);
+
+        if (!createTypeAdapter) {
+            note(entity, "The JsonEntityAdapter of " + entity.getQualifiedName() + " uses Gson's reflective type adapter, because the class has no accessible constructor without parameters");
+        }
+
+        String entityType = entity.getQualifiedName().toString();
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.length() == 0 ? adapterName : packageName + "." + adapterName, entity);
+        SourceWriter out = new SourceWriter(file.openWriter());
+
+        try {
+            if (packageName.length() > 0) {
+                out.line("package " + packageName + ";");
+                out.line("");
+            }
+
+            out.line("/**");
+            out.line(" * JsonEntityAdapter of " + entityType + ", generated by " + JsonEntityProcessor.class.getSimpleName());
+            out.line(" */");
+            out.begin("public final class " + adapterName + " implements com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityAdapter<" + entityType + "> {");
+            out.line("");
+
+            if (writeReflectiveFields(out, entityType, properties)) {
+                out.line("");
+            }
+
+            out.begin("public Class<" + entityType + "> getEntityClass() {");
+            out.line("return " + entityType + ".class;");
+            out.end("}");
+            out.line("");
+
+            out.begin("public String getIdPropertyName() {");
+            out.line("return " + quote(idProperty != null ? idProperty.mName : "") + ";");
+            out.end("}");
+            out.line("");
+
+            out.begin("public Class<?> getIdPropertyClass() {");
+            out.line("return " + (idProperty != null ? getClassLiteral(idProperty.mType) : "null") + ";");
+            out.end("}");
+            out.line("");
+
+            out.begin("public int getIdPropertyCount() {");
+            out.line("return " + idPropertyCount + ";");
+            out.end("}");
+            out.line("");
+
+            out.begin("public Object getId(" + entityType + " entity) {");
+            out.line("return " + (idProperty != null ? idProperty.mGetter.replace("$", "entity") : "null") + ";");
+            out.end("}");
+            out.line("");
+
+            String systemPropertyEnum = SYSTEM_PROPERTY_ENUM;
+            out.begin("public java.util.EnumSet<" + systemPropertyEnum + "> getSystemProperties() {");
+
+            if (systemProperties.isEmpty()) {
+                out.line("return java.util.EnumSet.noneOf(" + systemPropertyEnum + ".class);");
+            } else {
+                StringBuilder values = new StringBuilder();
+
+                for (String systemProperty : systemProperties) {
+                    values.append(values.length() == 0 ? "" : ", ").append(systemPropertyEnum).append('.').append(systemProperty);
+                }
+
+                out.line("return java.util.EnumSet.of(" + values + ");");
+            }
+
+            out.end("}");
+            out.line("");
+
+            String columnDataType = "com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType";
+            out.begin("public java.util.Map<String, " + columnDataType + "> getColumns() {");
+            out.line("java.util.Map<String, " + columnDataType + "> columns = new java.util.LinkedHashMap<String, " + columnDataType + ">();");
+
+            for (Property property : properties) {
+                String name = property.mName.equalsIgnoreCase(ID_PROPERTY_NAME) ? ID_PROPERTY_NAME : property.mName;
+                out.line("columns.put(" + quote(name) + ", " + columnDataType + "." + getColumnDataType(property.mType) + ");");
+            }
+
+            out.line("return columns;");
+            out.end("}");
+            out.line("");
+
+            out.begin("public com.google.gson.TypeAdapter<" + entityType + "> createTypeAdapter(final com.google.gson.Gson gson) {");
+
+            if (createTypeAdapter) {
+                writeTypeAdapter(out, entityType, properties);
+            } else {
+                out.line("return null;");
+            }
+
+            out.end("}");
+            out.end("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the reflective fields used to access the properties whose field
+     * the generated adapter cannot access directly, with the methods that
+     * read and write them
+     *
+     * @param out        The source writer
+     * @param entityType The name of the entity class
+     * @param properties The serialized properties of the entity class
+     * @return True if any field was written
+     */
+    private boolean writeReflectiveFields(SourceWriter out, String entityType, List<Property> properties) {
+        Elements elements = processingEnv.getElementUtils();
+        boolean hasReflectiveFields = false;
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+
+            if (property.mReflective) {
+                String declaringClass = elements.getBinaryName((TypeElement) property.mField.getEnclosingElement()).toString();
+                out.line("private static final java.lang.reflect.Field FIELD" + i + " = getDeclaredField(" + quote(declaringClass) + ", "
+                        + quote(property.mField.getSimpleName().toString()) + ");");
+                hasReflectiveFields = true;
+            }
+        }
+
+        if (!hasReflectiveFields) {
+            return false;
+        }
+
+        out.line("");
+        out.begin("private static java.lang.reflect.Field getDeclaredField(String className, String fieldName) {");
+        out.begin("try {");
+        out.line("java.lang.reflect.Field field = Class.forName(className, false, " + entityType + ".class.getClassLoader()).getDeclaredField(fieldName);");
+        out.line("field.setAccessible(true);");
+        out.line("return field;");
+        out.end("");
+        out.begin("} catch (Exception e) {");
+        out.line("throw new IllegalStateException(e);");
+        out.end("}");
+        out.end("}");
+        out.line("");
+        out.begin("private static Object getFieldValue(java.lang.reflect.Field field, Object entity) {");
+        out.begin("try {");
+        out.line("return field.get(entity);");
+        out.end("");
+        out.begin("} catch (IllegalAccessException e) {");
+        out.line("throw new IllegalStateException(e);");
+        out.end("}");
+        out.end("}");
+        out.line("");
+        out.begin("private static void setFieldValue(java.lang.reflect.Field field, Object entity, Object value) {");
+        out.begin("try {");
+        out.line("field.set(entity, value);");
+        out.end("");
+        out.begin("} catch (IllegalAccessException e) {");
+        out.line("throw new IllegalStateException(e);");
+        out.end("}");
+        out.end("}");
+
+        return true;
+    }
+
+    /**
+     * Writes the type adapter created by the generated adapter
+     *
+     * @param out        The source writer
+     * @param entityType The name of the entity class
+     * @param properties The serialized properties of the entity class
+     */
+    private void writeTypeAdapter(SourceWriter out, String entityType, List<Property> properties) {
+        out.begin("return new com.google.gson.TypeAdapter<" + entityType + ">() {");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String boxedType = getBoxedType(property.mType);
+            String typeToken = getClassLiteral(property.mType);
+
+            if (!isClassLiteral(property.mType)) {
+                typeToken = "new com.google.gson.reflect.TypeToken<" + boxedType + ">() {}";
+            }
+
+            out.line("private final com.google.gson.TypeAdapter<" + boxedType + "> mAdapter" + i + " = gson.getAdapter(" + typeToken + ");");
+        }
+
+        out.line("");
+        out.line("@Override");
+        out.begin("public void write(com.google.gson.stream.JsonWriter out, " + entityType + " value) throws java.io.IOException {");
+        out.begin("if (value == null) {");
+        out.line("out.nullValue();");
+        out.line("return;");
+        out.end("}");
+        out.line("");
+        out.line("out.beginObject();");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            out.line("out.name(" + quote(property.mName) + ");");
+            out.line("mAdapter" + i + ".write(out, " + property.mGetter.replace("$", "value") + ");");
+        }
+
+        out.line("out.endObject();");
+        out.end("}");
+        out.line("");
+
+        out.line("@Override");
+        out.begin("public " + entityType + " read(com.google.gson.stream.JsonReader in) throws java.io.IOException {");
+        out.begin("if (in.peek() == com.google.gson.stream.JsonToken.NULL) {");
+        out.line("in.nextNull();");
+        out.line("return null;");
+        out.end("}");
+        out.line("");
+        out.line(entityType + " value = new " + entityType + "();");
+        out.line("in.beginObject();");
+        out.line("");
+        out.begin("while (in.hasNext()) {");
+        out.begin("switch (in.nextName()) {");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            out.begin("case " + quote(property.mName) + ": {");
+
+            if (property.mType.getKind().isPrimitive()) {
+                // Primitive fields keep their value when the content is null
+                out.line(getBoxedType(property.mType) + " propertyValue = mAdapter" + i + ".read(in);");
+                out.begin("if (propertyValue != null) {");
+                out.line(property.mSetter.replace("$", "value").replace("#", "propertyValue") + ";");
+                out.end("}");
+            } else {
+                out.line(property.mSetter.replace("$", "value").replace("#", "mAdapter" + i + ".read(in)") + ";");
+            }
+
+            out.line("break;");
+            out.end("}");
+        }
+
+        out.begin("default:");
+        out.line("in.skipValue();");
+        out.end("");
+        out.end("}");
+        out.end("}");
+        out.line("");
+        out.line("in.endObject();");
+        out.line("return value;");
+        out.end("}");
+        out.end("};");
+    }
+
+    /**
+     * Returns the serialized properties of an entity class and its
+     * superclasses, in the order Gson serializes them
+     *
+     * @param entity      The entity class
+     * @param packageName The package of the generated adapter
+     * @return The properties, or null if an error was reported
+     */
+    private List<Property> getProperties(TypeElement entity, String packageName) {
+        Types types = processingEnv.getTypeUtils();
+        DeclaredType entityType = (DeclaredType) entity.asType();
+        Map<String, Property> properties = new LinkedHashMap<String, Property>();
+
+        boolean hasErrors = false;
+
+        // Gson serializes the fields of the class before the ones of its
+        // superclasses
+        for (TypeElement clazz = entity; clazz != null && !clazz.getQualifiedName().contentEquals("java.lang.Object"); clazz = getSuperclass(clazz)) {
+            for (VariableElement field : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+
+                // Gson does not serialize static and transient fields
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+
+                Property property = new Property();
+                property.mField = field;
+                property.mName = getSerializedName(field);
+                property.mType = types.asMemberOf(entityType, field);
+
+                if (property.mType.getKind() == TypeKind.TYPEVAR || property.mType.getKind() == TypeKind.ERROR) {
+                    property.mType = types.erasure(property.mType);
+                }
+
+                if (properties.containsKey(property.mName)) {
+                    error(field, entity.getQualifiedName() + " declares multiple JSON fields named " + property.mName);
+                    hasErrors = true;
+                    continue;
+                }
+
+                setAccessors(property, clazz, packageName, modifiers.contains(Modifier.FINAL), properties.size());
+                properties.put(property.mName, property);
+            }
+        }
+
+        return hasErrors ? null : new ArrayList<Property>(properties.values());
+    }
+
+    /**
+     * Sets the expressions used to read and write a property. The getter
+     * uses $ for the entity, and the setter uses $ for the entity and # for
+     * the value.
+     * <p/>
+     * Like Gson's reflective type adapter, properties are read and written
+     * through their fields, never through getters and setters. Fields the
+     * generated adapter cannot access, and final fields, are accessed using
+     * reflection.
+     *
+     * @param property     The property
+     * @param clazz        The class declaring the field of the property
+     * @param packageName  The package of the generated adapter
+     * @param isFinalField Indicates if the field is final
+     * @param index        The index of the property
+     */
+    private void setAccessors(Property property, TypeElement clazz, String packageName, boolean isFinalField, int index) {
+        String fieldName = property.mField.getSimpleName().toString();
+
+        if (isAccessible(property.mField, clazz, packageName) && !isFinalField) {
+            property.mGetter = "$." + fieldName;
+            property.mSetter = "$." + fieldName + " = #";
+        } else {
+            property.mReflective = true;
+            property.mGetter = "((" + getBoxedType(property.mType) + ") getFieldValue(FIELD" + index + ", $))";
+            property.mSetter = "setFieldValue(FIELD" + index + ", $, #)";
+        }
+    }
+
+    /**
+     * Indicates if the entity class has a constructor without parameters
+     * that the generated adapter can call
+     *
+     * @param entity      The entity class
+     * @param packageName The package of the generated adapter
+     */
+    private boolean hasNoArgConstructor(TypeElement entity, String packageName) {
+        if (entity.getModifiers().contains(Modifier.ABSTRACT)
+                || (entity.getNestingKind() == NestingKind.MEMBER && !entity.getModifiers().contains(Modifier.STATIC))) {
+            return false;
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                return isAccessible(constructor, entity, packageName);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indicates if a member can be accessed by the generated adapter
+     *
+     * @param member      The field, method or constructor
+     * @param clazz       The class declaring the member
+     * @param packageName The package of the generated adapter
+     */
+    private boolean isAccessible(Element member, TypeElement clazz, String packageName) {
+        Set<Modifier> modifiers = member.getModifiers();
+
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+
+        PackageElement memberPackage = processingEnv.getElementUtils().getPackageOf(clazz);
+
+        // Package and protected members are only accessible in the same
+        // package as the generated adapter
+        return modifiers.contains(Modifier.PUBLIC) || memberPackage.getQualifiedName().contentEquals(packageName);
+    }
+
+    /**
+     * Returns the names of the values of MobileServiceSystemProperty
+     *
+     * @param entity The entity class, used to report errors
+     * @return The names, or null if an error was reported
+     */
+    private List<String> getSystemPropertyNames(TypeElement entity) {
+        TypeElement systemPropertyEnum = processingEnv.getElementUtils().getTypeElement(SYSTEM_PROPERTY_ENUM);
+
+        if (systemPropertyEnum == null) {
+            error(entity, SYSTEM_PROPERTY_ENUM + " was not found. JsonEntity classes must be compiled with the Mobile Services SDK");
+            return null;
+        }
+
+        List<String> names = new ArrayList<String>();
+
+        for (Element element : systemPropertyEnum.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+                names.add(element.getSimpleName().toString());
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns the serialized name of a field, given by its SerializedName
+     * annotation or its name
+     *
+     * @param field The field
+     */
+    private static String getSerializedName(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+
+            if (annotationType.getQualifiedName().contentEquals(SERIALIZED_NAME_ANNOTATION)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                    if (value.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) value.getValue().getValue();
+                    }
+                }
+            }
+        }
+
+        return field.getSimpleName().toString();
+    }
+
+    /**
+     * Returns the superclass of a class, or null if it has none
+     *
+     * @param clazz The class
+     */
+    private static TypeElement getSuperclass(TypeElement clazz) {
+        TypeMirror superclass = clazz.getSuperclass();
+
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * Returns the local store column type of a property type
+     *
+     * @param type The property type
+     */
+    private String getColumnDataType(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return "Integer";
+            case FLOAT:
+            case DOUBLE:
+                return "Real";
+            case CHAR:
+                return "String";
+            case DECLARED:
+                String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+
+                if (name.equals("java.lang.String") || name.equals("java.lang.Character")) {
+                    return "String";
+                } else if (name.equals("java.lang.Boolean")) {
+                    return "Boolean";
+                } else if (name.equals("java.lang.Byte") || name.equals("java.lang.Short") || name.equals("java.lang.Integer") || name.equals("java.lang.Long")) {
+                    return "Integer";
+                } else if (name.equals("java.lang.Float") || name.equals("java.lang.Double")) {
+                    return "Real";
+                }
+
+                TypeElement dateClass = processingEnv.getElementUtils().getTypeElement("java.util.Date");
+
+                if (dateClass != null && processingEnv.getTypeUtils().isAssignable(type, dateClass.asType())) {
+                    return "Date";
+                }
+
+                return "Other";
+            default:
+                return "Other";
+        }
+    }
+
+    /**
+     * Indicates if a property type is an integer type
+     *
+     * @param type The property type
+     */
+    private static boolean isIntegerType(TypeMirror type) {
+        if (type.getKind() == TypeKind.INT || type.getKind() == TypeKind.LONG) {
+            return true;
+        }
+
+        String name = type.toString();
+
+        return name.equals("java.lang.Integer") || name.equals("java.lang.Long");
+    }
+
+    /**
+     * Indicates if a type can be written as a class literal
+     *
+     * @param type The type
+     */
+    private static boolean isClassLiteral(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isClassLiteral(((ArrayType) type).getComponentType());
+        }
+
+        return type.getKind() != TypeKind.DECLARED || ((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    /**
+     * Returns the class literal of a type, without its type arguments
+     *
+     * @param type The type
+     */
+    private String getClassLiteral(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString() + ".class";
+    }
+
+    /**
+     * Returns the name of the boxed type of a type, or the name of the type
+     * if it is not primitive
+     *
+     * @param type The type
+     */
+    private String getBoxedType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+
+        return type.toString();
+    }
+
+    /**
+     * Returns a string literal
+     *
+     * @param value The value of the literal
+     */
+    private static String quote(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return literal.append('"').toString();
+    }
+
+    /**
+     * Reports an error on an element
+     *
+     * @param element The element
+     * @param message The error message
+     */
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+
+    /**
+     * Reports a note on an element
+     *
+     * @param element The element
+     * @param message The note
+     */
+    private void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.NOTE, message, element);
+    }
+
+    /**
+     * A serialized property of an entity class
+     */
+    private static class Property {
+
+        /**
+         * The field of the property
+         */
+        VariableElement mField;
+
+        /**
+         * The serialized name of the property
+         */
+        String mName;
+
+        /**
+         * The type of the property, as a member of the entity class
+         */
+        TypeMirror mType;
+
+        /**
+         * The expression that reads the property
+         */
+        String mGetter;
+
+        /**
+         * The expression that writes the property
+         */
+        String mSetter;
+
+        /**
+         * Indicates if the field of the property is accessed using
+         * reflection
+         */
+        boolean mReflective;
+    }
+
+    /**
+     * Writes indented source code
+     */
+    private static class SourceWriter {
+
+        /**
+         * The indentation of a block
+         */
+        private static final String INDENT = "    ";
+
+        /**
+         * The underlying writer
+         */
+        private final Writer mWriter;
+
+        /**
+         * The current indentation
+         */
+        private String mIndent = "";
+
+        /**
+         * Constructor for SourceWriter
+         *
+         * @param writer The underlying writer
+         */
+        SourceWriter(Writer writer) {
+            mWriter = writer;
+        }
+
+        /**
+         * Writes a line
+         *
+         * @param line The line
+         */
+        void line(String line) {
+            try {
+                mWriter.write(line.length() == 0 ? "\n" : mIndent + line + "\n");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Writes a line and starts a block
+         *
+         * @param line The line
+         */
+        void begin(String line) {
+            line(line);
+            mIndent += INDENT;
+        }
+
+        /**
+         * Ends a block and writes a line
+         *
+         * @param line The line, or an empty string to only end the block
+         */
+        void end(String line) {
+            mIndent = mIndent.substring(INDENT.length());
+
+            if (line.length() > 0) {
+                line(line);
+            }
+        }
+
+        /**
+         * Closes the underlying writer
+         *
+         * @throws java.io.IOException
+         */
+        void close() throws IOException {
+            mWriter.close();
+        }
+    }
+}
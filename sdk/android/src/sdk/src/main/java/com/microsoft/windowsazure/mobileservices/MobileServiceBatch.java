@@ -0,0 +1,387 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceBatch.java
+ */
+package com.microsoft.windowsazure.mobileservices;
+
+import android.net.Uri;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
+import com.microsoft.windowsazure.mobileservices.http.MultipartBatchContent;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
+import com.microsoft.windowsazure.mobileservices.http.RequestDispatcher;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.protocol.HTTP;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects table operations and custom API calls and sends them to the
+ * Mobile Service in a single OData $batch request.
+ * <p/>
+ * Operations are made with the tables returned by getTable, or with the
+ * client returned by getClient, exactly as with a MobileServiceClient. Their
+ * requests are not sent when the operations are called; they are sent
+ * together by execute, and the future of each operation is completed with
+ * its part of the batch response. Every batch must be either executed or
+ * closed, e.g. in a finally block; otherwise the futures of its operations
+ * are never completed.
+ */
+public class MobileServiceBatch implements Closeable {
+
+    /**
+     * Batch URL part
+     */
+    private static final String BATCH_URL = "$batch";
+
+    /**
+     * The client used to send the batch request
+     */
+    private MobileServiceClient mClient;
+
+    /**
+     * The client used to make the operations of the batch
+     */
+    private MobileServiceClient mBatchClient;
+
+    /**
+     * The operations of the batch, in order
+     */
+    private List<BatchOperation> mOperations = new ArrayList<BatchOperation>();
+
+    /**
+     * Flag to indicate the batch has been executed
+     */
+    private boolean mExecuted;
+
+    /**
+     * Flag to indicate the batch has been closed
+     */
+    private boolean mClosed;
+
+    /**
+     * Constructor for MobileServiceBatch
+     *
+     * @param client The client used to send the batch request
+     */
+    MobileServiceBatch(MobileServiceClient client) {
+        if (client == null) {
+            throw new IllegalArgumentException("client cannot be null");
+        }
+
+        mClient = client;
+
+        // The requests of the operations are collected by the batch filter
+        // in the calling thread, so they are part of the batch as soon as
+        // the operations are called
+        mBatchClient = new MobileServiceClient(client).withFilter(new BatchServiceFilter());
+
+        // The requests are never executed by the batch client, so the batch
+        // dispatcher shares the threads of the client dispatcher. A client
+        // without dispatcher gets one whose threads are never started.
+        RequestDispatcher dispatcher = client.getRequestDispatcher();
+        mBatchClient.setRequestDispatcher(new InlineRequestDispatcher(dispatcher != null ? dispatcher : new RequestDispatcher(1, 1)));
+    }
+
+    /**
+     * Returns the client used to make the operations of the batch, such as
+     * custom API calls. Service filters of the batch client are not applied
+     * to the operations; the filters of the original client are applied to
+     * the batch request.
+     */
+    public MobileServiceClient getClient() {
+        return mBatchClient;
+    }
+
+    /**
+     * Returns a MobileServiceJsonTable whose operations are part of the batch
+     *
+     * @param name Table name
+     */
+    public MobileServiceJsonTable getTable(String name) {
+        return mBatchClient.getTable(name);
+    }
+
+    /**
+     * Returns a MobileServiceTable whose operations are part of the batch
+     *
+     * @param name  Table name
+     * @param clazz The class used for data serialization
+     */
+    public <E> MobileServiceTable<E> getTable(String name, Class<E> clazz) {
+        return mBatchClient.getTable(name, clazz);
+    }
+
+    /**
+     * Returns the number of operations of the batch
+     */
+    public synchronized int getOperationCount() {
+        return mOperations.size();
+    }
+
+    /**
+     * Sends the operations of the batch in a single request. The future of
+     * each operation is completed with its part of the batch response, and
+     * the parts are processed before the returned future is completed. A
+     * batch can only be executed once.
+     *
+     * @return A ListenableFuture that is completed when the batch response has
+     * been processed
+     */
+    public ListenableFuture<Void> execute() {
+        final List<BatchOperation> operations;
+
+        synchronized (this) {
+            if (mExecuted) {
+                return Futures.immediateFailedFuture(new IllegalStateException("The batch has already been executed."));
+            }
+
+            if (mClosed) {
+                return Futures.immediateFailedFuture(new IllegalStateException("The batch has been closed."));
+            }
+
+            mExecuted = true;
+            operations = new ArrayList<BatchOperation>(mOperations);
+        }
+
+        if (operations.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+
+        final SettableFuture<Void> future = SettableFuture.create();
+
+        ServiceFilterRequestImpl request;
+
+        try {
+            List<ServiceFilterRequest> requests = new ArrayList<ServiceFilterRequest>();
+
+            for (BatchOperation operation : operations) {
+                requests.add(operation.mRequest);
+            }
+
+            String boundary = MultipartBatchContent.createBoundary();
+
+            Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
+            // The path is not encoded, to keep the $ sign
+            uriBuilder.encodedPath(BATCH_URL);
+
+            request = new ServiceFilterRequestImpl(new HttpPost(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory(),
+                    mClient.getHttpConnectionPool());
+            request.addHeader(HTTP.CONTENT_TYPE, MultipartBatchContent.getContentType(boundary));
+            request.setContent(MultipartBatchContent.write(boundary, requests));
+        } catch (Exception e) {
+            failOperations(operations, e);
+            future.setException(e);
+            return future;
+        }
+
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            @Override
+            protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+                // The operations are completed in the background, so their
+                // responses are parsed in the background too
+                List<ServiceFilterResponse> responses = MultipartBatchContent.read(response);
+
+                for (int i = 0; i < operations.size(); i++) {
+                    if (i < responses.size()) {
+                        completeOperation(operations.get(i), responses.get(i));
+                    } else {
+                        operations.get(i).mFuture.setException(new MobileServiceException("The batch response does not contain a response for the operation.",
+                                response));
+                    }
+                }
+            }
+
+            @Override
+            protected void onRequestFailed(MobileServiceException exception) {
+                failOperations(operations, exception);
+            }
+
+            @Override
+            protected void onRequestCompleted(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(null);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Closes a batch that has not been executed, failing the futures of its
+     * operations. Closing an executed batch has no effect.
+     */
+    @Override
+    public void close() {
+        List<BatchOperation> operations;
+
+        synchronized (this) {
+            if (mExecuted || mClosed) {
+                return;
+            }
+
+            mClosed = true;
+            operations = new ArrayList<BatchOperation>(mOperations);
+            mOperations.clear();
+        }
+
+        failOperations(operations, new IllegalStateException("The batch was closed before it was executed."));
+    }
+
+    /**
+     * Adds the request of an operation to the batch
+     *
+     * @param request The request of the operation
+     * @return A ListenableFuture that is completed with the response of the
+     * operation
+     */
+    private synchronized ListenableFuture<ServiceFilterResponse> addOperation(ServiceFilterRequest request) {
+        if (mExecuted) {
+            return Futures.immediateFailedFuture(new IllegalStateException("The batch has already been executed."));
+        }
+
+        if (mClosed) {
+            return Futures.immediateFailedFuture(new IllegalStateException("The batch has been closed."));
+        }
+
+        BatchOperation operation = new BatchOperation(request);
+        mOperations.add(operation);
+
+        return operation.mFuture;
+    }
+
+    /**
+     * Completes an operation with its response, or with an exception if the
+     * response has an error status code
+     *
+     * @param operation The operation to complete
+     * @param response  The response of the operation
+     */
+    private static void completeOperation(BatchOperation operation, ServiceFilterResponse response) {
+        int statusCode = response.getStatus().getStatusCode();
+
+        if (statusCode < 200 || statusCode >= 300) {
+            String responseContent = response.getContent();
+
+            if (responseContent != null && !responseContent.trim().equals("")) {
+                operation.mFuture.setException(new MobileServiceException(responseContent, response));
+            } else {
+                operation.mFuture.setException(new MobileServiceException(String.format("{'code': %d}", statusCode), response));
+            }
+        } else {
+            operation.mFuture.set(response);
+        }
+    }
+
+    /**
+     * Fails the operations that have not been completed
+     *
+     * @param operations The operations to fail
+     * @param exception  The exception
+     */
+    private static void failOperations(List<BatchOperation> operations, Throwable exception) {
+        for (BatchOperation operation : operations) {
+            operation.mFuture.setException(exception);
+        }
+    }
+
+    /**
+     * Operation of the batch
+     */
+    private static class BatchOperation {
+
+        /**
+         * The request of the operation
+         */
+        private final ServiceFilterRequest mRequest;
+
+        /**
+         * The future completed with the response of the operation
+         */
+        private final SettableFuture<ServiceFilterResponse> mFuture = SettableFuture.create();
+
+        /**
+         * Constructor for BatchOperation
+         *
+         * @param request The request of the operation
+         */
+        BatchOperation(ServiceFilterRequest request) {
+            mRequest = request;
+        }
+    }
+
+    /**
+     * ServiceFilter that adds the requests to the batch instead of sending
+     * them
+     */
+    private class BatchServiceFilter implements ServiceFilter {
+
+        @Override
+        public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+            return addOperation(request);
+        }
+    }
+
+    /**
+     * RequestDispatcher that runs the service filters in the calling thread.
+     * The filters of the batch client do not block, since they only add the
+     * request to the batch.
+     */
+    private static class InlineRequestDispatcher extends RequestDispatcher {
+
+        /**
+         * Constructor for InlineRequestDispatcher
+         *
+         * @param dispatcher The dispatcher whose threads are shared
+         */
+        InlineRequestDispatcher(RequestDispatcher dispatcher) {
+            super(dispatcher);
+        }
+
+        @Override
+        public ListenableFuture<ServiceFilterResponse> start(MobileServiceConnection connection, ServiceFilterRequest request) {
+            try {
+                return connection.start(request);
+            } catch (Exception e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+    }
+}
@@ -40,17 +40,20 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializer;
-import com.google.gson.annotations.SerializedName;
 import com.microsoft.windowsazure.mobileservices.authentication.LoginManager;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAuthenticationProvider;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactory;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.http.HttpConnectionPool;
+import com.microsoft.windowsazure.mobileservices.http.HttpResponseCache;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestCoalescer;
+import com.microsoft.windowsazure.mobileservices.http.RequestCompression;
+import com.microsoft.windowsazure.mobileservices.http.RequestDispatcher;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
@@ -59,6 +62,7 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
+import com.microsoft.windowsazure.mobileservices.table.serialization.MobileServiceSerializationContext;
 import com.microsoft.windowsazure.mobileservices.table.serialization.LongSerializer;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncContext;
@@ -69,7 +73,6 @@ import org.apache.http.protocol.HTTP;
 
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
@@ -79,6 +82,7 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Entry-point for Microsoft Azure Mobile Services interactions
@@ -128,6 +132,11 @@ public class MobileServiceClient {
      * GsonBuilder used to in JSON Serialization/Deserialization
      */
     private GsonBuilder mGsonBuilder;
+    /**
+     * Serialization context that caches the Gson instance built from the
+     * GsonBuilder, shared with the clients created using withFilter
+     */
+    private MobileServiceSerializationContext mSerializationContext;
     /**
      * Context where the MobileServiceClient is created
      */
@@ -136,6 +145,42 @@ public class MobileServiceClient {
      * AndroidHttpClientFactory used for request execution
      */
     private AndroidHttpClientFactory mAndroidHttpClientFactory;
+    /**
+     * Pool of keep-alive connections used for request execution, shared with
+     * the clients created using withFilter
+     */
+    private HttpConnectionPool mHttpConnectionPool;
+    /**
+     * Dispatcher used to execute requests without blocking a thread per
+     * request, shared with the clients created using withFilter
+     */
+    private RequestDispatcher mRequestDispatcher;
+    /**
+     * Coalescer that shares the response of identical GET requests in
+     * flight, or null to execute every request
+     */
+    private RequestCoalescer mRequestCoalescer;
+    /**
+     * Cache used to revalidate GET responses with conditional requests, or
+     * null to download every response
+     */
+    private HttpResponseCache mHttpResponseCache;
+    /**
+     * Compression applied to the content of requests, or null to send it
+     * uncompressed
+     */
+    private RequestCompression mRequestCompression;
+    /**
+     * Compression applied to the content of requests of the tables that
+     * enable it when there is no request compression, shared with the
+     * clients created using withFilter
+     */
+    private RequestCompression mDefaultRequestCompression;
+    /**
+     * Executor used to deliver the completion of requests, or null to deliver
+     * it on the main thread
+     */
+    private Executor mCallbackExecutor;
     /**
      * MobileServicePush used for push notifications
      */
@@ -164,8 +209,14 @@ public class MobileServiceClient {
      * @param client An existing MobileServiceClient
      */
     public MobileServiceClient(MobileServiceClient client) {
-        initialize(client.getAppUrl(), client.getAppKey(), client.getCurrentUser(), client.getGsonBuilder(), client.getContext(),
-                client.getAndroidHttpClientFactory());
+        initialize(client.getAppUrl(), client.getAppKey(), client.getCurrentUser(), client.mGsonBuilder, client.getContext(),
+                client.getAndroidHttpClientFactory(), client.getHttpConnectionPool(), client.getRequestDispatcher(),
+                client.getRequestCoalescer(), client.getHttpResponseCache(), client.getRequestCompression(),
+                client.getCallbackExecutor());
+
+        // The GsonBuilder is shared, so is the Gson instance built from it
+        mSerializationContext = client.getSerializationContext();
+        mDefaultRequestCompression = client.getDefaultRequestCompression();
     }
 
     /**
@@ -179,7 +230,12 @@ public class MobileServiceClient {
         GsonBuilder gsonBuilder = createMobileServiceGsonBuilder();
         gsonBuilder.serializeNulls(); // by default, add null serialization
 
-        initialize(appUrl, appKey, null, gsonBuilder, context, new AndroidHttpClientFactoryImpl());
+        initialize(appUrl, appKey, null, gsonBuilder, context, new AndroidHttpClientFactoryImpl(), new HttpConnectionPool(),
+                new RequestDispatcher(), null, null, null, null);
+
+        // The GsonBuilder has the default configuration of the SDK, so the
+        // generated adapters of the entity classes can be used
+        mSerializationContext = new MobileServiceSerializationContext(gsonBuilder, true);
     }
 
     /**
@@ -1012,7 +1068,7 @@ public class MobileServiceClient {
             if (body instanceof JsonElement) {
                 json = (JsonElement) body;
             } else {
-                json = getGsonBuilder().create().toJsonTree(body);
+                json = mSerializationContext.toJsonTree(body);
             }
         }
 
@@ -1033,7 +1089,7 @@ public class MobileServiceClient {
                     concreteClass = clazz.getComponentType();
                 }
 
-                List<?> entities = JsonEntityParser.parseResults(jsonElement, getGsonBuilder().create(), concreteClass);
+                List<?> entities = JsonEntityParser.parseResults(jsonElement, mSerializationContext, concreteClass);
 
                 if (clazz.isArray()) {
                     E array = (E) Array.newInstance(concreteClass, entities.size());
@@ -1195,32 +1251,16 @@ public class MobileServiceClient {
             features.add(MobileServiceFeatures.AdditionalQueryParameters);
         }
 
-        final SettableFuture<JsonElement> future = SettableFuture.create();
-        ListenableFuture<ServiceFilterResponse> internalFuture = invokeApiInternal(apiName, content, httpMethod, requestHeaders, parameters, features);
-
-        Futures.addCallback(internalFuture, new FutureCallback<ServiceFilterResponse>() {
-            @Override
-            public void onFailure(Throwable e) {
-               future.setException(e);
-            }
-
-            @Override
-            public void onSuccess(ServiceFilterResponse response) {
-
-                String content = response.getContent();
-
-                if (content == null) {
-                    future.set(null);
-
-                    return;
-                }
-
-                JsonElement json = new JsonParser().parse(content);
-                future.set(json);
-            }
-        });
+        if (apiName == null || apiName.trim().equals("")) {
+            final SettableFuture<JsonElement> future = SettableFuture.create();
+            future.setException(new IllegalArgumentException("apiName cannot be null"));
+            return future;
+        }
 
-        return future;
+        // The response content is parsed as it is streamed from the
+        // connection
+        MobileServiceHttpClient httpClient = new MobileServiceHttpClient(this);
+        return httpClient.requestJson(CUSTOM_API_URL + apiName, content, httpMethod, requestHeaders, parameters, features);
     }
 
     /**
@@ -1334,25 +1374,21 @@ public class MobileServiceClient {
             throw new IllegalArgumentException("The class type used for creating a MobileServiceTable must be a concrete class");
         }
 
-        int idPropertyCount = 0;
-        for (Field field : clazz.getDeclaredFields()) {
-            SerializedName serializedName = field.getAnnotation(SerializedName.class);
-            if (serializedName != null) {
-                if (serializedName.value().equalsIgnoreCase("id")) {
-                    idPropertyCount++;
-                }
-            } else {
-                if (field.getName().equalsIgnoreCase("id")) {
-                    idPropertyCount++;
-                }
-            }
-        }
-
-        if (idPropertyCount != 1) {
+        if (mSerializationContext.getEntityMetadata(clazz).getIdPropertyCount() != 1) {
             throw new IllegalArgumentException("The class representing the MobileServiceTable must have a single id property defined");
         }
     }
 
+    /**
+     * Creates a batch that collects table operations and custom API calls and
+     * sends them in a single request
+     *
+     * @return The new MobileServiceBatch
+     */
+    public MobileServiceBatch batch() {
+        return new MobileServiceBatch(this);
+    }
+
     /**
      * Adds a new filter to the MobileServiceClient
      *
@@ -1439,9 +1475,20 @@ public class MobileServiceClient {
      * @param currentUser The Mobile Service user used to authenticate requests
      * @param gsonBuilder the GsonBuilder used to in JSON Serialization/Deserialization
      * @param context     The Context where the MobileServiceClient is created
+     * @param androidHttpClientFactory The factory used to create AndroidHttpClient objects when
+     *                                 connection pooling is disabled
+     * @param httpConnectionPool       The pool of connections used for request execution
+     * @param requestDispatcher        The dispatcher used to execute requests
+     * @param requestCoalescer         The coalescer used to share identical GET requests
+     * @param httpResponseCache        The cache used to revalidate GET responses
+     * @param requestCompression       The compression applied to the content of requests
+     * @param callbackExecutor         The executor used to deliver the completion of requests
      */
     private void initialize(URL appUrl, String appKey, MobileServiceUser currentUser, GsonBuilder gsonBuiler, Context context,
-                            AndroidHttpClientFactory androidHttpClientFactory) {
+                            AndroidHttpClientFactory androidHttpClientFactory, HttpConnectionPool httpConnectionPool,
+                            RequestDispatcher requestDispatcher, RequestCoalescer requestCoalescer,
+                            HttpResponseCache httpResponseCache, RequestCompression requestCompression,
+                            Executor callbackExecutor) {
         if (appUrl == null || appUrl.toString().trim().length() == 0) {
             throw new IllegalArgumentException("Invalid Application URL");
         }
@@ -1469,15 +1516,29 @@ public class MobileServiceClient {
         mCurrentUser = currentUser;
         mContext = context;
         mGsonBuilder = gsonBuiler;
+        mSerializationContext = new MobileServiceSerializationContext(gsonBuiler);
         mAndroidHttpClientFactory = androidHttpClientFactory;
+        mHttpConnectionPool = httpConnectionPool;
+        mRequestDispatcher = requestDispatcher;
+        mRequestCoalescer = requestCoalescer;
+        mHttpResponseCache = httpResponseCache;
+        mRequestCompression = requestCompression;
+        mDefaultRequestCompression = new RequestCompression();
+        mCallbackExecutor = callbackExecutor;
         mPush = new MobileServicePush(this, context);
         mSyncContext = new MobileServiceSyncContext(this);
     }
 
     /**
-     * Gets the GsonBuilder used to in JSON Serialization/Deserialization
+     * Gets the GsonBuilder used to in JSON Serialization/Deserialization. The
+     * GsonBuilder may be customised once it is returned, so the serialization
+     * context is invalidated on every call, and the generated adapters of the
+     * entity classes are no longer used. Call it again for each change
+     * instead of keeping the GsonBuilder, and do not change it while requests
+     * are running.
      */
     public GsonBuilder getGsonBuilder() {
+        mSerializationContext.invalidate();
         return mGsonBuilder;
     }
 
@@ -1488,6 +1549,18 @@ public class MobileServiceClient {
      */
     public void setGsonBuilder(GsonBuilder gsonBuilder) {
         mGsonBuilder = gsonBuilder;
+        mSerializationContext = new MobileServiceSerializationContext(gsonBuilder);
+    }
+
+    /**
+     * Gets the serialization context that caches the Gson instance built from
+     * the GsonBuilder, and the metadata of the entity classes. Changes made
+     * directly to the GsonBuilder are applied once the context is invalidated;
+     * registerSerializer, registerDeserializer and setGsonBuilder do it
+     * automatically.
+     */
+    public MobileServiceSerializationContext getSerializationContext() {
+        return mSerializationContext;
     }
 
     /**
@@ -1498,6 +1571,7 @@ public class MobileServiceClient {
      */
     public <T> void registerSerializer(Type type, JsonSerializer<T> serializer) {
         mGsonBuilder.registerTypeAdapter(type, serializer);
+        mSerializationContext.invalidate();
     }
 
     /**
@@ -1508,6 +1582,7 @@ public class MobileServiceClient {
      */
     public <T> void registerDeserializer(Type type, JsonDeserializer<T> deserializer) {
         mGsonBuilder.registerTypeAdapter(type, deserializer);
+        mSerializationContext.invalidate();
     }
 
     /**
@@ -1534,12 +1609,166 @@ public class MobileServiceClient {
     }
 
     /**
-     * Sets the AndroidHttpClientFactory
+     * Sets the AndroidHttpClientFactory, used to create the AndroidHttpClient
+     * objects when connection pooling is disabled
      */
     public void setAndroidHttpClientFactory(AndroidHttpClientFactory mAndroidHttpClientFactory) {
         this.mAndroidHttpClientFactory = mAndroidHttpClientFactory;
     }
 
+    /**
+     * Gets the pool of keep-alive connections used for request execution
+     *
+     * @return The connection pool, or null if connection pooling is disabled
+     */
+    public HttpConnectionPool getHttpConnectionPool() {
+        return mHttpConnectionPool;
+    }
+
+    /**
+     * Sets the pool of keep-alive connections used for request execution.
+     * Clients created afterwards using withFilter share the same pool. Set it
+     * to null to disable connection pooling, so a new AndroidHttpClient is
+     * created by the AndroidHttpClientFactory and closed for every request.
+     *
+     * @param httpConnectionPool The connection pool to use, or null
+     */
+    public void setHttpConnectionPool(HttpConnectionPool httpConnectionPool) {
+        this.mHttpConnectionPool = httpConnectionPool;
+    }
+
+    /**
+     * Gets the dispatcher used to execute requests
+     *
+     * @return The request dispatcher, or null if requests block an AsyncTask
+     * thread until they are completed
+     */
+    public RequestDispatcher getRequestDispatcher() {
+        return mRequestDispatcher;
+    }
+
+    /**
+     * Sets the dispatcher used to execute requests, which limits the number
+     * of requests executed at the same time. Clients created afterwards
+     * using withFilter share the same dispatcher. Set it to null to execute
+     * every request in an AsyncTask that blocks until the request is
+     * completed.
+     *
+     * @param requestDispatcher The dispatcher to use, or null
+     */
+    public void setRequestDispatcher(RequestDispatcher requestDispatcher) {
+        this.mRequestDispatcher = requestDispatcher;
+    }
+
+    /**
+     * Gets the coalescer that shares the response of identical GET requests
+     * in flight
+     *
+     * @return The request coalescer, or null if every request is executed
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return mRequestCoalescer;
+    }
+
+    /**
+     * Sets the coalescer that shares the response of identical GET requests
+     * in flight. A GET request with the same URL, authentication token and
+     * features header as a request still in flight does not go to the
+     * network; it completes with the response of the first one. Clients
+     * created afterwards using withFilter share the same coalescer. It is
+     * null, so disabled, by default.
+     *
+     * @param requestCoalescer The coalescer to use, or null
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.mRequestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Gets the cache used to revalidate GET responses
+     *
+     * @return The response cache, or null if every response is downloaded
+     */
+    public HttpResponseCache getHttpResponseCache() {
+        return mHttpResponseCache;
+    }
+
+    /**
+     * Sets the cache used to revalidate GET responses. Successful GET
+     * responses with an ETag header, such as lookUp and query results, are
+     * cached; the next identical request is sent with an If-None-Match header
+     * and a 304 (Not Modified) response is completed with the cached content.
+     * Clients created afterwards using withFilter share the same cache. It
+     * is null, so disabled, by default.
+     *
+     * @param httpResponseCache The cache to use, or null
+     */
+    public void setHttpResponseCache(HttpResponseCache httpResponseCache) {
+        this.mHttpResponseCache = httpResponseCache;
+    }
+
+    /**
+     * Gets the compression applied to the content of requests
+     *
+     * @return The request compression, or null if the content is sent
+     * uncompressed
+     */
+    public RequestCompression getRequestCompression() {
+        return mRequestCompression;
+    }
+
+    /**
+     * Sets the compression applied to the content of requests, such as
+     * inserts, updates, custom API calls and the operations pushed by the sync
+     * context. Content of at least the minimum size is sent with gzip
+     * Content-Encoding; if the server rejects it, the request is sent again
+     * uncompressed. Tables can override this setting using
+     * setRequestCompressionEnabled. Clients created afterwards using
+     * withFilter share the same compression. It is null, so disabled, by
+     * default.
+     *
+     * @param requestCompression The compression to apply, or null
+     */
+    public void setRequestCompression(RequestCompression requestCompression) {
+        this.mRequestCompression = requestCompression;
+    }
+
+    /**
+     * Gets the compression applied to the content of requests of the tables
+     * that enable it using setRequestCompressionEnabled when the client has
+     * no request compression. It uses the default RequestCompression
+     * settings.
+     *
+     * @return The default request compression
+     */
+    public RequestCompression getDefaultRequestCompression() {
+        return mDefaultRequestCompression;
+    }
+
+    /**
+     * Gets the executor used to deliver the completion of requests
+     *
+     * @return The callback executor, or null if completions are delivered on
+     * the main thread
+     */
+    public Executor getCallbackExecutor() {
+        return mCallbackExecutor;
+    }
+
+    /**
+     * Sets the executor used to deliver the completion of requests. Responses
+     * are always executed and parsed in a background thread; only the
+     * completion of the returned futures, and the callbacks registered on
+     * them, run on this executor. Use a direct executor to complete the
+     * futures on the background thread, or set it to null to deliver them on
+     * the main thread, which is the default.
+     *
+     * @param callbackExecutor The executor to use, or null
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.mCallbackExecutor = callbackExecutor;
+    }
+
     /**
      * Gets the MobileServicePush used for push notifications
      */
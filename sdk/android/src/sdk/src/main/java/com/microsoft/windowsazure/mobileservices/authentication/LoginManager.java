@@ -547,7 +547,7 @@ public class LoginManager {
         }
 
         // Create a request
-        final ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory());
+        final ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         request.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);
 
         try {
@@ -561,22 +561,30 @@ public class LoginManager {
 
         // Create the AsyncTask that will execute the request
         new RequestAsyncTask(request, connection) {
+            private MobileServiceUser mUser;
+
+            private Exception mUserException;
+
             @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException == null && response != null) {
-                    MobileServiceUser user = null;
-                    try {
-                        // Get the user from the response and create a
-                        // MobileServiceUser object from the JSON
-                        String content = response.getContent();
-                        user = createUserFromJSON((JsonObject) new JsonParser().parse((content.trim())));
+            protected void onResponseReceived(ServiceFilterResponse response) {
+                try {
+                    // Get the user from the response and create a
+                    // MobileServiceUser object from the JSON
+                    String content = response.getContent();
+                    mUser = createUserFromJSON((JsonObject) new JsonParser().parse((content.trim())));
+                } catch (Exception e) {
+                    mUserException = new MobileServiceException("Error while authenticating user.", e, response);
+                }
+            }
 
-                    } catch (Exception e) {
-                        future.setException(new MobileServiceException("Error while authenticating user.", e, response));
-                        return;
+            @Override
+            protected void onRequestCompleted(ServiceFilterResponse response) {
+                if (mTaskException == null && response != null) {
+                    if (mUserException != null) {
+                        future.setException(mUserException);
+                    } else {
+                        future.set(mUser);
                     }
-
-                    future.set(user);
                 } else {
                     future.setException(new MobileServiceException("Error while authenticating user.", mTaskException));
                 }
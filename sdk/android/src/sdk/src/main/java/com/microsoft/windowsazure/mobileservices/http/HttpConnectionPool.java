@@ -0,0 +1,399 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * HttpConnectionPool.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of keep-alive HTTP connections shared by the requests of a
+ * MobileServiceClient and all the clients created from it using withFilter
+ */
+public class HttpConnectionPool {
+
+    /**
+     * Default maximum number of connections per route
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+
+    /**
+     * Default maximum number of connections in the pool
+     */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+
+    /**
+     * Default time, in milliseconds, a connection is kept alive when the
+     * server does not specify a Keep-Alive timeout
+     */
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30 * 1000;
+
+    /**
+     * Default time, in milliseconds, after which an idle connection is evicted
+     * from the pool
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    /**
+     * Socket and connection timeout, same as the one used by AndroidHttpClient
+     */
+    private static final int SOCKET_OPERATION_TIMEOUT = 60 * 1000;
+
+    /**
+     * Keep-Alive header name
+     */
+    private static final String KEEP_ALIVE_HEADER = "Keep-Alive";
+
+    /**
+     * The HttpClient that executes the requests
+     */
+    private DefaultHttpClient mHttpClient;
+
+    /**
+     * The connection manager that holds the pooled connections
+     */
+    private ThreadSafeClientConnManager mConnectionManager;
+
+    /**
+     * Maximum number of connections per route
+     */
+    private int mMaxConnectionsPerRoute;
+
+    /**
+     * Maximum number of connections in the pool
+     */
+    private int mMaxTotalConnections;
+
+    /**
+     * Time a connection is kept alive when the server does not specify one
+     */
+    private long mKeepAliveMillis;
+
+    /**
+     * Time after which an idle connection is evicted
+     */
+    private long mIdleTimeoutMillis;
+
+    /**
+     * Last time idle connections were evicted
+     */
+    private volatile long mLastEviction;
+
+    /**
+     * Number of requests executed through the pool
+     */
+    private AtomicLong mRequestCount = new AtomicLong();
+
+    /**
+     * Number of connections opened by the pool
+     */
+    private AtomicLong mConnectionsCreated = new AtomicLong();
+
+    /**
+     * Number of connections evicted because they were idle or expired
+     */
+    private AtomicLong mEvictionCount = new AtomicLong();
+
+    /**
+     * Constructor for HttpConnectionPool using the default settings
+     */
+    public HttpConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_TOTAL_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for HttpConnectionPool
+     *
+     * @param maxConnectionsPerRoute Maximum number of connections per route
+     * @param maxTotalConnections    Maximum number of connections in the pool
+     * @param keepAliveMillis        Time, in milliseconds, a connection is kept alive when the
+     *                               server does not specify a Keep-Alive timeout
+     * @param idleTimeoutMillis      Time, in milliseconds, after which an idle connection is
+     *                               evicted from the pool
+     */
+    public HttpConnectionPool(int maxConnectionsPerRoute, int maxTotalConnections, long keepAliveMillis, long idleTimeoutMillis) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be greater than zero");
+        }
+
+        if (maxTotalConnections < maxConnectionsPerRoute) {
+            throw new IllegalArgumentException("maxTotalConnections cannot be lower than maxConnectionsPerRoute");
+        }
+
+        if (keepAliveMillis < 0 || idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeouts cannot be negative");
+        }
+
+        mMaxConnectionsPerRoute = maxConnectionsPerRoute;
+        mMaxTotalConnections = maxTotalConnections;
+        mKeepAliveMillis = keepAliveMillis;
+        mIdleTimeoutMillis = idleTimeoutMillis;
+        mLastEviction = System.currentTimeMillis();
+    }
+
+    /**
+     * Executes a request using a pooled connection
+     *
+     * @param request The request to execute
+     * @return The response of the request
+     * @throws IOException
+     */
+    public HttpResponse execute(HttpRequestBase request) throws IOException {
+        DefaultHttpClient client = getHttpClient();
+
+        evictIdleConnectionsIfNeeded();
+
+        mRequestCount.incrementAndGet();
+
+        return client.execute(request);
+    }
+
+    /**
+     * Closes the expired connections and the ones that have been idle for
+     * longer than the idle timeout
+     */
+    public synchronized void evictIdleConnections() {
+        // The lock keeps a concurrent shutdown from releasing the connection
+        // manager during the eviction
+        if (mConnectionManager != null) {
+            int before = mConnectionManager.getConnectionsInPool();
+
+            mConnectionManager.closeExpiredConnections();
+            mConnectionManager.closeIdleConnections(mIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+
+            int evicted = before - mConnectionManager.getConnectionsInPool();
+
+            if (evicted > 0) {
+                mEvictionCount.addAndGet(evicted);
+            }
+        }
+
+        mLastEviction = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes all the pooled connections and releases the pool resources. The
+     * pool can still be used afterwards, new connections will be opened on
+     * demand.
+     */
+    public synchronized void shutdown() {
+        if (mHttpClient != null) {
+            mConnectionManager.shutdown();
+            mHttpClient = null;
+            mConnectionManager = null;
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections per route
+     */
+    public int getMaxConnectionsPerRoute() {
+        return mMaxConnectionsPerRoute;
+    }
+
+    /**
+     * Returns the maximum number of connections in the pool
+     */
+    public int getMaxTotalConnections() {
+        return mMaxTotalConnections;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a connection is kept alive when the
+     * server does not specify a Keep-Alive timeout
+     */
+    public long getKeepAliveMillis() {
+        return mKeepAliveMillis;
+    }
+
+    /**
+     * Returns the time, in milliseconds, after which an idle connection is
+     * evicted from the pool
+     */
+    public long getIdleTimeoutMillis() {
+        return mIdleTimeoutMillis;
+    }
+
+    /**
+     * Returns the number of requests executed through the pool
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of connections opened by the pool. The difference
+     * with the request count is the number of requests that reused a
+     * connection.
+     */
+    public long getConnectionsCreated() {
+        return mConnectionsCreated.get();
+    }
+
+    /**
+     * Returns the number of connections evicted because they were idle or
+     * expired
+     */
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    /**
+     * Returns the number of connections currently held by the pool, either
+     * leased or idle
+     */
+    public synchronized int getConnectionsInPool() {
+        return mConnectionManager != null ? mConnectionManager.getConnectionsInPool() : 0;
+    }
+
+    /**
+     * Returns the HttpClient bound to the pool, creating it if needed
+     */
+    private synchronized DefaultHttpClient getHttpClient() {
+        if (mHttpClient == null) {
+            HttpParams params = new BasicHttpParams();
+
+            HttpConnectionParams.setStaleCheckingEnabled(params, true);
+            HttpConnectionParams.setConnectionTimeout(params, SOCKET_OPERATION_TIMEOUT);
+            HttpConnectionParams.setSoTimeout(params, SOCKET_OPERATION_TIMEOUT);
+            HttpConnectionParams.setSocketBufferSize(params, 8192);
+
+            HttpProtocolParams.setUserAgent(params, MobileServiceConnection.getUserAgent());
+            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(mMaxConnectionsPerRoute));
+            ConnManagerParams.setMaxTotalConnections(params, mMaxTotalConnections);
+            ConnManagerParams.setTimeout(params, SOCKET_OPERATION_TIMEOUT);
+
+            SchemeRegistry schemeRegistry = new SchemeRegistry();
+            schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+            // Same behaviour as AndroidHttpClient: no redirects, no cookies
+            // and no retries, so non-idempotent requests are sent only once
+            HttpClientParams.setRedirecting(params, false);
+
+            mConnectionManager = new CountingConnManager(params, schemeRegistry);
+            mHttpClient = new DefaultHttpClient(mConnectionManager, params) {
+                @Override
+                protected HttpContext createHttpContext() {
+                    // Leaves out the cookie store and the auth state
+                    HttpContext context = new BasicHttpContext();
+                    context.setAttribute(ClientContext.AUTHSCHEME_REGISTRY, getAuthSchemes());
+                    context.setAttribute(ClientContext.COOKIESPEC_REGISTRY, getCookieSpecs());
+                    context.setAttribute(ClientContext.CREDS_PROVIDER, getCredentialsProvider());
+
+                    return context;
+                }
+            };
+            mHttpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+            mHttpClient.setKeepAliveStrategy(new KeepAliveStrategy());
+        }
+
+        return mHttpClient;
+    }
+
+    /**
+     * Evicts idle connections if the idle timeout elapsed since the last
+     * eviction
+     */
+    private void evictIdleConnectionsIfNeeded() {
+        if (System.currentTimeMillis() - mLastEviction >= mIdleTimeoutMillis) {
+            evictIdleConnections();
+        }
+    }
+
+    /**
+     * Keep-alive strategy that honors the server Keep-Alive timeout and falls
+     * back to the pool keep-alive time
+     */
+    private class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(KEEP_ALIVE_HEADER));
+
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+
+                if (element.getValue() != null && element.getName().equalsIgnoreCase("timeout")) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, mKeepAliveMillis);
+                    } catch (NumberFormatException e) {
+                        // Ignore the malformed value and use the default
+                    }
+                }
+            }
+
+            return mKeepAliveMillis;
+        }
+    }
+
+    /**
+     * Connection manager that counts the connections it opens
+     */
+    private class CountingConnManager extends ThreadSafeClientConnManager {
+        private CountingConnManager(HttpParams params, SchemeRegistry schemeRegistry) {
+            super(params, schemeRegistry);
+        }
+
+        @Override
+        protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemeRegistry) {
+            return new DefaultClientConnectionOperator(schemeRegistry) {
+                @Override
+                public OperatedClientConnection createConnection() {
+                    mConnectionsCreated.incrementAndGet();
+                    return super.createConnection();
+                }
+            };
+        }
+    }
+}
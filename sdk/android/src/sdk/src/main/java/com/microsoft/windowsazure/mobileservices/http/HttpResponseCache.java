@@ -0,0 +1,792 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * HttpResponseCache.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of GET responses that carry an ETag header, used to
+ * revalidate them with conditional requests.
+ * <p/>
+ * A GET request with a cached response is sent with an If-None-Match header,
+ * and a 304 (Not Modified) response is completed with the cached content.
+ * Responses are kept in memory and, optionally, in a directory on disk. Each
+ * tier evicts its least recently used responses once it exceeds its size.
+ * <p/>
+ * Request keys include the authentication token of the request, so the cache
+ * only keeps their SHA-256 hash. Responses with a Cache-Control header of
+ * no-store or private are never cached.
+ */
+public class HttpResponseCache {
+
+    /**
+     * Default maximum size, in bytes, of the responses kept in memory
+     */
+    public static final int DEFAULT_MAX_MEMORY_SIZE = 1024 * 1024;
+
+    /**
+     * Request header used to revalidate a cached response
+     */
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    /**
+     * Response header with the entity tag of the response
+     */
+    private static final String ETAG_HEADER = "ETag";
+
+    /**
+     * Response header with the caching directives of the response
+     */
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+
+    /**
+     * Extension of the files of the disk tier
+     */
+    private static final String FILE_EXTENSION = ".response";
+
+    /**
+     * Length of the hexadecimal SHA-256 hash of a request key
+     */
+    private static final int HASH_LENGTH = 64;
+
+    /**
+     * Cached responses kept in memory by request key hash, from least to most
+     * recently used
+     */
+    private final LinkedHashMap<String, Entry> mMemoryEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Maximum size, in bytes, of the responses kept in memory
+     */
+    private int mMaxMemorySize;
+
+    /**
+     * Size, in bytes, of the responses kept in memory
+     */
+    private int mMemorySize;
+
+    /**
+     * Directory of the disk tier, or null if responses are only kept in
+     * memory
+     */
+    private File mDirectory;
+
+    /**
+     * Maximum size, in bytes, of the responses kept on disk
+     */
+    private long mMaxDiskSize;
+
+    /**
+     * Number of requests completed with a cached response
+     */
+    private AtomicLong mHitCount = new AtomicLong();
+
+    /**
+     * Number of cacheable requests whose response was downloaded
+     */
+    private AtomicLong mMissCount = new AtomicLong();
+
+    /**
+     * Number of content bytes served from the cache instead of downloaded
+     */
+    private AtomicLong mHitBytes = new AtomicLong();
+
+    /**
+     * Constructor for a memory only HttpResponseCache of the default size
+     */
+    public HttpResponseCache() {
+        this(DEFAULT_MAX_MEMORY_SIZE);
+    }
+
+    /**
+     * Constructor for a memory only HttpResponseCache
+     *
+     * @param maxMemorySize Maximum size, in bytes, of the responses kept in memory
+     */
+    public HttpResponseCache(int maxMemorySize) {
+        this(maxMemorySize, null, 0);
+    }
+
+    /**
+     * Constructor for an HttpResponseCache with a disk tier
+     *
+     * @param maxMemorySize Maximum size, in bytes, of the responses kept in memory
+     * @param directory     Directory where responses are kept on disk, or null to
+     *                      keep them only in memory
+     * @param maxDiskSize   Maximum size, in bytes, of the responses kept on disk
+     */
+    public HttpResponseCache(int maxMemorySize, File directory, long maxDiskSize) {
+        if (maxMemorySize < 0) {
+            throw new IllegalArgumentException("maxMemorySize cannot be negative");
+        }
+
+        if (directory != null) {
+            if (maxDiskSize <= 0) {
+                throw new IllegalArgumentException("maxDiskSize must be greater than zero");
+            }
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IllegalArgumentException("directory cannot be created");
+            }
+        }
+
+        mMaxMemorySize = maxMemorySize;
+        mDirectory = directory;
+        mMaxDiskSize = maxDiskSize;
+
+        if (mDirectory != null) {
+            deleteLegacyFiles();
+        }
+    }
+
+    /**
+     * Returns the cached response for a request key
+     *
+     * @param key The request key, returned by RequestCoalescer.getKey
+     * @return The cached response, or null if there is none
+     */
+    Entry get(String key) {
+        String keyHash = hash(key);
+
+        synchronized (mMemoryEntries) {
+            Entry entry = mMemoryEntries.get(keyHash);
+
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        if (mDirectory == null) {
+            return null;
+        }
+
+        Entry entry = readEntry(keyHash);
+
+        if (entry != null) {
+            putInMemory(keyHash, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Adds the If-None-Match header for the cached response to the request
+     *
+     * @param request The request to revalidate the response
+     * @param entry   The cached response
+     */
+    void addConditionalHeader(ServiceFilterRequest request, Entry entry) {
+        request.addHeader(IF_NONE_MATCH_HEADER, entry.mETag);
+    }
+
+    /**
+     * Processes the response of a cacheable request. A 304 response is
+     * replaced by the cached response, and a successful response with an
+     * ETag header is cached unless its Cache-Control header forbids it.
+     *
+     * @param key      The request key
+     * @param entry    The cached response the request was revalidating, or null
+     * @param response The received response
+     * @return The response used to complete the request
+     */
+    ServiceFilterResponse processResponse(String key, Entry entry, ServiceFilterResponse response) {
+        int statusCode = response.getStatus().getStatusCode();
+
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+            // Release the connection of the empty response
+            response.getRawContent();
+
+            mHitCount.incrementAndGet();
+            mHitBytes.addAndGet(entry.mContent.length);
+
+            return new CachedServiceFilterResponse(entry);
+        }
+
+        mMissCount.incrementAndGet();
+
+        if (statusCode >= 200 && statusCode < 300) {
+            String keyHash = hash(key);
+            String eTag = getHeaderValue(response.getHeaders(), ETAG_HEADER);
+            boolean storable = isStorable(response.getHeaders());
+            byte[] content = eTag != null && storable ? response.getRawContent() : null;
+
+            if (content != null) {
+                Entry newEntry = new Entry(eTag, response.getHeaders(), content);
+                putInMemory(keyHash, newEntry);
+
+                if (mDirectory != null) {
+                    writeEntry(keyHash, newEntry);
+                }
+            } else if (entry != null || !storable) {
+                remove(keyHash);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Removes all the cached responses, in memory and on disk
+     */
+    public void evictAll() {
+        synchronized (mMemoryEntries) {
+            mMemoryEntries.clear();
+            mMemorySize = 0;
+        }
+
+        if (mDirectory != null) {
+            synchronized (mDirectory) {
+                for (File file : getDiskFiles()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests completed with a cached response
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns the number of cacheable requests whose response was downloaded
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns the number of content bytes served from the cache instead of
+     * downloaded
+     */
+    public long getHitBytes() {
+        return mHitBytes.get();
+    }
+
+    /**
+     * Returns the size, in bytes, of the responses kept in memory
+     */
+    public int getMemorySize() {
+        synchronized (mMemoryEntries) {
+            return mMemorySize;
+        }
+    }
+
+    /**
+     * Returns the maximum size, in bytes, of the responses kept in memory
+     */
+    public int getMaxMemorySize() {
+        return mMaxMemorySize;
+    }
+
+    /**
+     * Returns the size, in bytes, of the responses kept on disk
+     */
+    public long getDiskSize() {
+        if (mDirectory == null) {
+            return 0;
+        }
+
+        synchronized (mDirectory) {
+            long size = 0;
+
+            for (File file : getDiskFiles()) {
+                size += file.length();
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * Returns the maximum size, in bytes, of the responses kept on disk
+     */
+    public long getMaxDiskSize() {
+        return mMaxDiskSize;
+    }
+
+    /**
+     * Removes a cached response
+     *
+     * @param keyHash The request key hash
+     */
+    private void remove(String keyHash) {
+        synchronized (mMemoryEntries) {
+            Entry entry = mMemoryEntries.remove(keyHash);
+
+            if (entry != null) {
+                mMemorySize -= entry.getSize();
+            }
+        }
+
+        if (mDirectory != null) {
+            synchronized (mDirectory) {
+                getFile(keyHash).delete();
+            }
+        }
+    }
+
+    /**
+     * Keeps a response in memory, evicting the least recently used ones if
+     * the maximum size is exceeded
+     *
+     * @param keyHash The request key hash
+     * @param entry   The response to keep
+     */
+    private void putInMemory(String keyHash, Entry entry) {
+        synchronized (mMemoryEntries) {
+            Entry previous = mMemoryEntries.remove(keyHash);
+
+            if (previous != null) {
+                mMemorySize -= previous.getSize();
+            }
+
+            if (entry.getSize() > mMaxMemorySize) {
+                return;
+            }
+
+            mMemoryEntries.put(keyHash, entry);
+            mMemorySize += entry.getSize();
+
+            Iterator<Entry> iterator = mMemoryEntries.values().iterator();
+
+            while (mMemorySize > mMaxMemorySize && iterator.hasNext()) {
+                mMemorySize -= iterator.next().getSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads a response from the disk tier
+     *
+     * @param keyHash The request key hash
+     * @return The response, or null if it is not on disk or cannot be read
+     */
+    private Entry readEntry(String keyHash) {
+        synchronized (mDirectory) {
+            File file = getFile(keyHash);
+
+            if (!file.exists()) {
+                return null;
+            }
+
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+                // Entries of other keys with the same file name are ignored
+                if (!keyHash.equals(in.readUTF())) {
+                    return null;
+                }
+
+                String eTag = in.readUTF();
+                Header[] headers = new Header[in.readInt()];
+
+                for (int i = 0; i < headers.length; i++) {
+                    headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+                }
+
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+
+                // The modification time is used to evict the least recently
+                // used responses
+                file.setLastModified(System.currentTimeMillis());
+
+                return new Entry(eTag, headers, content);
+            } catch (IOException e) {
+                file.delete();
+                return null;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Writes a response to the disk tier, evicting the least recently used
+     * ones if the maximum size is exceeded
+     *
+     * @param keyHash The request key hash
+     * @param entry   The response to write
+     */
+    private void writeEntry(String keyHash, Entry entry) {
+        synchronized (mDirectory) {
+            File file = getFile(keyHash);
+            File tempFile = new File(mDirectory, file.getName() + ".tmp");
+            DataOutputStream out = null;
+
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+                out.writeUTF(keyHash);
+                out.writeUTF(entry.mETag);
+                out.writeInt(entry.mHeaders.length);
+
+                for (Header header : entry.mHeaders) {
+                    out.writeUTF(header.getName());
+                    out.writeUTF(header.getValue() != null ? header.getValue() : "");
+                }
+
+                out.writeInt(entry.mContent.length);
+                out.write(entry.mContent);
+                out.close();
+                out = null;
+
+                if (!tempFile.renameTo(file)) {
+                    tempFile.delete();
+                    return;
+                }
+            } catch (IOException e) {
+                closeQuietly(out);
+                tempFile.delete();
+                return;
+            }
+
+            trimDisk();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files of the disk tier until it does
+     * not exceed its maximum size
+     */
+    private void trimDisk() {
+        File[] files = getDiskFiles();
+        long size = 0;
+
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size <= mMaxDiskSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && size > mMaxDiskSize; i++) {
+            long length = files[i].length();
+
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns the files of the disk tier
+     */
+    private File[] getDiskFiles() {
+        File[] files = mDirectory.listFiles();
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        int count = 0;
+
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_EXTENSION)) {
+                files[count++] = file;
+            }
+        }
+
+        File[] diskFiles = new File[count];
+        System.arraycopy(files, 0, diskFiles, 0, count);
+
+        return diskFiles;
+    }
+
+    /**
+     * Deletes the files of the disk tier written by previous versions, which
+     * are not named by the SHA-256 hash of their request key and keep the key
+     * itself
+     */
+    private void deleteLegacyFiles() {
+        synchronized (mDirectory) {
+            for (File file : getDiskFiles()) {
+                if (file.getName().length() != HASH_LENGTH + FILE_EXTENSION.length()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the disk tier file for a request key hash
+     *
+     * @param keyHash The request key hash
+     */
+    private File getFile(String keyHash) {
+        return new File(mDirectory, keyHash + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 hash of a request key
+     *
+     * @param key The request key
+     */
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.getBytes(MobileServiceClient.UTF8_ENCODING));
+            StringBuilder builder = new StringBuilder();
+
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b & 0xff));
+            }
+
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indicates if a response may be cached, according to its Cache-Control
+     * header
+     *
+     * @param headers The response headers
+     * @return false if the response is marked as no-store or private
+     */
+    private static boolean isStorable(Header[] headers) {
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(CACHE_CONTROL_HEADER) && header.getValue() != null) {
+                    for (String directive : header.getValue().split(",")) {
+                        String name = directive.trim().toLowerCase(Locale.US);
+                        int equalsIndex = name.indexOf('=');
+
+                        if (equalsIndex >= 0) {
+                            name = name.substring(0, equalsIndex).trim();
+                        }
+
+                        if (name.equals("no-store") || name.equals("private")) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes a stream, ignoring errors
+     *
+     * @param stream The stream to close, or null
+     */
+    private static void closeQuietly(java.io.Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a header
+     *
+     * @param headers    The headers
+     * @param headerName The header name
+     * @return The header value, or null if it is not present
+     */
+    private static String getHeaderValue(Header[] headers, String headerName) {
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(headerName)) {
+                    return header.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Cached response
+     */
+    static class Entry {
+
+        /**
+         * The entity tag of the response
+         */
+        private final String mETag;
+
+        /**
+         * The response headers
+         */
+        private final Header[] mHeaders;
+
+        /**
+         * The response content
+         */
+        private final byte[] mContent;
+
+        /**
+         * Constructor for Entry
+         *
+         * @param eTag    The entity tag of the response
+         * @param headers The response headers
+         * @param content The response content
+         */
+        Entry(String eTag, Header[] headers, byte[] content) {
+            mETag = eTag;
+            mHeaders = getContentHeaders(headers, content.length);
+            mContent = content;
+        }
+
+        /**
+         * Returns the headers of the stored content. The content is stored
+         * decoded, so the headers describing how it was transferred are
+         * replaced by its stored length.
+         *
+         * @param headers       The response headers
+         * @param contentLength The length of the stored content
+         */
+        private static Header[] getContentHeaders(Header[] headers, int contentLength) {
+            List<Header> result = new ArrayList<Header>();
+
+            if (headers != null) {
+                for (Header header : headers) {
+                    String name = header.getName();
+
+                    if (!name.equalsIgnoreCase(HTTP.CONTENT_ENCODING) && !name.equalsIgnoreCase(HTTP.CONTENT_LEN)
+                            && !name.equalsIgnoreCase(HTTP.TRANSFER_ENCODING)) {
+                        result.add(header);
+                    }
+                }
+            }
+
+            result.add(new BasicHeader(HTTP.CONTENT_LEN, String.valueOf(contentLength)));
+
+            return result.toArray(new Header[result.size()]);
+        }
+
+        /**
+         * Returns the size, in bytes, of the response content
+         */
+        int getSize() {
+            return mContent.length;
+        }
+    }
+
+    /**
+     * Response completed from the cache
+     */
+    private static class CachedServiceFilterResponse implements StreamingServiceFilterResponse {
+
+        /**
+         * The cached response
+         */
+        private final Entry mEntry;
+
+        /**
+         * Constructor for CachedServiceFilterResponse
+         *
+         * @param entry The cached response
+         */
+        CachedServiceFilterResponse(Entry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public Header[] getHeaders() {
+            return mEntry.mHeaders;
+        }
+
+        @Override
+        public String getContent() {
+            try {
+                return new String(mEntry.mContent, MobileServiceClient.UTF8_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] getRawContent() {
+            return mEntry.mContent;
+        }
+
+        @Override
+        public InputStream getContentStream() {
+            return new ByteArrayInputStream(mEntry.mContent);
+        }
+
+        @Override
+        public StatusLine getStatus() {
+            return new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        }
+    }
+}
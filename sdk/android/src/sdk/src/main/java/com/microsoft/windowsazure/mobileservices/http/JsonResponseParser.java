@@ -0,0 +1,117 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonResponseParser.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Parses the JSON content of a ServiceFilterResponse, reading it as a stream
+ * when the response supports it
+ */
+public class JsonResponseParser {
+
+    /**
+     * Size of the buffer used to read the response content
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Opens a Reader over the response content. Streamed responses are read
+     * directly from the connection, other responses from their raw content,
+     * without creating an intermediate string.
+     *
+     * @param response The response to read
+     * @return A Reader over the response content, or null if the response has
+     * no content. The caller must close the reader.
+     * @throws java.io.IOException
+     */
+    public static Reader openContentReader(ServiceFilterResponse response) throws IOException {
+        InputStream stream;
+
+        if (response instanceof StreamingServiceFilterResponse) {
+            stream = ((StreamingServiceFilterResponse) response).getContentStream();
+        } else {
+            byte[] content = response.getRawContent();
+            stream = content != null ? new ByteArrayInputStream(content) : null;
+        }
+
+        if (stream == null) {
+            return null;
+        }
+
+        return new BufferedReader(new InputStreamReader(stream, MobileServiceClient.UTF8_ENCODING), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a JsonReader over the response content
+     *
+     * @param response The response to read
+     * @return A JsonReader over the response content, or null if the response
+     * has no content. The caller must close the reader.
+     * @throws java.io.IOException
+     */
+    public static JsonReader openReader(ServiceFilterResponse response) throws IOException {
+        Reader contentReader = openContentReader(response);
+
+        if (contentReader == null) {
+            return null;
+        }
+
+        JsonReader reader = new JsonReader(contentReader);
+        reader.setLenient(true);
+
+        return reader;
+    }
+
+    /**
+     * Parses the response content into a JsonElement
+     *
+     * @param response The response to parse
+     * @return The parsed JsonElement, or null if the response has no content
+     * @throws java.io.IOException
+     */
+    public static JsonElement parse(ServiceFilterResponse response) throws IOException {
+        JsonReader reader = openReader(response);
+
+        if (reader == null) {
+            return null;
+        }
+
+        try {
+            return new JsonParser().parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
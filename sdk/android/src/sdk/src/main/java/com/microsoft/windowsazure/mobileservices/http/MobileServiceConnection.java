@@ -38,6 +38,9 @@ import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUse
 import org.apache.http.Header;
 import org.apache.http.protocol.HTTP;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
 /**
  * Class for handling communication with Microsoft Azure Mobile Services REST APIs
  */
@@ -89,6 +92,20 @@ public class MobileServiceConnection {
         mClient = client;
     }
 
+    /**
+     * Gets the dispatcher used to execute requests
+     */
+    RequestDispatcher getRequestDispatcher() {
+        return mClient.getRequestDispatcher();
+    }
+
+    /**
+     * Gets the executor used to deliver the completion of requests
+     */
+    Executor getCallbackExecutor() {
+        return mClient.getCallbackExecutor();
+    }
+
     /**
      * Generates the User-Agent
      */
@@ -116,36 +133,123 @@ public class MobileServiceConnection {
         return filter.handleRequest(request, new NextServiceFilterCallback() {
 
             @Override
-            public ListenableFuture<ServiceFilterResponse> onNext(ServiceFilterRequest request) {
-                SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
-                ServiceFilterResponse response = null;
-
-                try {
-                    response = request.execute();
-                    int statusCode = response.getStatus().getStatusCode();
-
-                    // If the response has error throw exception
-                    if (statusCode < 200 || statusCode >= 300) {
-                        String responseContent = response.getContent();
-                        if (responseContent != null && !responseContent.trim().equals("")) {
-                            throw new MobileServiceException(responseContent, response);
-                        } else {
-                            throw new MobileServiceException(String.format("{'code': %d}", statusCode), response);
-                        }
-                    }
+            public ListenableFuture<ServiceFilterResponse> onNext(final ServiceFilterRequest request) {
+                RequestCoalescer coalescer = mClient.getRequestCoalescer();
+                String key = coalescer != null ? RequestCoalescer.getKey(request) : null;
 
-                    future.set(response);
-                } catch (MobileServiceException e) {
-                    future.setException(e);
-                } catch (Exception e) {
-                    future.setException(new MobileServiceException("Error while processing request.", e, response));
+                if (key == null) {
+                    return executeRequest(request, false);
                 }
 
-                return future;
+                // Identical GET requests in flight share the response, so its
+                // content is buffered to be read by each of them
+                return coalescer.execute(key, new Callable<ListenableFuture<ServiceFilterResponse>>() {
+                    @Override
+                    public ListenableFuture<ServiceFilterResponse> call() {
+                        return executeRequest(request, true);
+                    }
+                });
             }
         });
     }
 
+    /**
+     * Executes the request, in the calling thread or in an I/O thread of the
+     * dispatcher if there is one. If the client has an HttpResponseCache,
+     * a cached response is revalidated instead of downloaded again.
+     *
+     * @param request       The request to execute
+     * @param bufferContent If true, the response content is buffered before
+     *                      the future is completed
+     * @return A ListenableFuture that is completed with the response
+     */
+    private ListenableFuture<ServiceFilterResponse> executeRequest(ServiceFilterRequest request, final boolean bufferContent) {
+        final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+        RequestDispatcher dispatcher = mClient.getRequestDispatcher();
+
+        // Revalidate the cached response of the request, if any
+        final HttpResponseCache cache = mClient.getHttpResponseCache();
+        final String cacheKey = cache != null ? RequestCoalescer.getKey(request) : null;
+        final HttpResponseCache.Entry cacheEntry = cacheKey != null ? cache.get(cacheKey) : null;
+
+        if (cacheEntry != null) {
+            cache.addConditionalHeader(request, cacheEntry);
+        }
+
+        if (dispatcher == null) {
+            // Execute the request in the calling thread
+            ServiceFilterResponse response = null;
+
+            try {
+                response = request.execute();
+            } catch (Exception e) {
+                future.setException(new MobileServiceException("Error while processing request.", e, response));
+                return future;
+            }
+
+            if (cacheKey != null) {
+                response = cache.processResponse(cacheKey, cacheEntry, response);
+            }
+
+            processResponse(response, future, bufferContent);
+        } else {
+            // Execute the request in an I/O thread of the dispatcher,
+            // without blocking the calling thread
+            Futures.addCallback(dispatcher.execute(request), new FutureCallback<ServiceFilterResponse>() {
+                @Override
+                public void onFailure(Throwable exception) {
+                    future.setException(new MobileServiceException("Error while processing request.", exception, null));
+                }
+
+                @Override
+                public void onSuccess(ServiceFilterResponse response) {
+                    if (cacheKey != null) {
+                        response = cache.processResponse(cacheKey, cacheEntry, response);
+                    }
+
+                    processResponse(response, future, bufferContent);
+                }
+            });
+        }
+
+        return future;
+    }
+
+    /**
+     * Completes the future with the response, or with an exception if the
+     * response has an error status code
+     *
+     * @param response      The response of the request
+     * @param future        The future to complete
+     * @param bufferContent If true, the response content is buffered before
+     *                      the future is completed
+     */
+    private static void processResponse(ServiceFilterResponse response, SettableFuture<ServiceFilterResponse> future, boolean bufferContent) {
+        try {
+            int statusCode = response.getStatus().getStatusCode();
+
+            // If the response has error throw exception
+            if (statusCode < 200 || statusCode >= 300) {
+                String responseContent = response.getContent();
+                if (responseContent != null && !responseContent.trim().equals("")) {
+                    throw new MobileServiceException(responseContent, response);
+                } else {
+                    throw new MobileServiceException(String.format("{'code': %d}", statusCode), response);
+                }
+            }
+
+            if (bufferContent) {
+                response.getRawContent();
+            }
+
+            future.set(response);
+        } catch (MobileServiceException e) {
+            future.setException(e);
+        } catch (Exception e) {
+            future.setException(new MobileServiceException("Error while processing request.", e, response));
+        }
+    }
+
     /**
      * Execute a request-response operation with a Mobile Service
      *
@@ -26,8 +26,11 @@ package com.microsoft.windowsazure.mobileservices.http;
 import android.net.Uri;
 import android.util.Pair;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 
@@ -57,6 +60,17 @@ public class MobileServiceHttpClient {
      */
     MobileServiceClient mClient;
 
+    /**
+     * The priority of the requests made by this HTTP caller.
+     */
+    private RequestPriority mRequestPriority = RequestPriority.Normal;
+
+    /**
+     * Indicates if the content of the requests made by this HTTP caller is
+     * compressed, or null to use the client request compression.
+     */
+    private Boolean mRequestCompressionEnabled;
+
     /**
      * Constructor
      *
@@ -66,6 +80,65 @@ public class MobileServiceHttpClient {
         this.mClient = client;
     }
 
+    /**
+     * Returns the priority of the requests made by this HTTP caller.
+     */
+    public RequestPriority getRequestPriority() {
+        return mRequestPriority;
+    }
+
+    /**
+     * Sets the priority of the requests made by this HTTP caller.
+     *
+     * @param requestPriority The priority of the requests
+     */
+    public void setRequestPriority(RequestPriority requestPriority) {
+        if (requestPriority == null) {
+            throw new IllegalArgumentException("requestPriority cannot be null");
+        }
+
+        this.mRequestPriority = requestPriority;
+    }
+
+    /**
+     * Indicates if the content of the requests made by this HTTP caller is
+     * compressed, or returns null if the client request compression is used.
+     */
+    public Boolean getRequestCompressionEnabled() {
+        return mRequestCompressionEnabled;
+    }
+
+    /**
+     * Sets whether the content of the requests made by this HTTP caller is
+     * compressed. When enabled and the client has no request compression, the
+     * default RequestCompression settings are used.
+     *
+     * @param requestCompressionEnabled True to compress the request content, false
+     *                                  to send it uncompressed, or null to use the
+     *                                  client request compression
+     */
+    public void setRequestCompressionEnabled(Boolean requestCompressionEnabled) {
+        this.mRequestCompressionEnabled = requestCompressionEnabled;
+    }
+
+    /**
+     * Returns the compression applied to the content of the requests made by
+     * this HTTP caller, or null if the content is sent uncompressed.
+     */
+    private RequestCompression getRequestCompression() {
+        RequestCompression requestCompression = mClient.getRequestCompression();
+
+        if (mRequestCompressionEnabled == null) {
+            return requestCompression;
+        } else if (!mRequestCompressionEnabled) {
+            return null;
+        } else if (requestCompression == null) {
+            requestCompression = mClient.getDefaultRequestCompression();
+        }
+
+        return requestCompression;
+    }
+
     /**
      * Makes a request over HTTP
      *
@@ -124,16 +197,145 @@ public class MobileServiceHttpClient {
                                                            EnumSet<MobileServiceFeatures> features) {
         final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
 
-        if (path == null || path.trim().equals("")) {
-            future.setException(new IllegalArgumentException("request path cannot be null"));
+        ServiceFilterRequestImpl request;
+
+        try {
+            request = createRequest(path, content, httpMethod, requestHeaders, parameters, features);
+        } catch (Exception e) {
+            future.setException(e);
             return future;
         }
 
-        if (httpMethod == null || httpMethod.trim().equals("")) {
-            future.setException(new IllegalArgumentException("httpMethod cannot be null"));
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            @Override
+            protected void onRequestCompleted(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(response);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Makes a request over HTTP and parses the JSON response content. The
+     * content is streamed from the connection into the parser in the
+     * background, without buffering it.
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     * @return A ListenableFuture with the parsed content, or null if the response
+     * has no content
+     */
+    public ListenableFuture<JsonElement> requestJson(String path, byte[] content, String httpMethod,
+                                                     List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                     EnumSet<MobileServiceFeatures> features) {
+        final SettableFuture<JsonElement> future = SettableFuture.create();
+
+        ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> internalFuture = requestJsonResponse(path, content, httpMethod, requestHeaders,
+                parameters, features);
+
+        Futures.addCallback(internalFuture, new FutureCallback<Pair<JsonElement, ServiceFilterResponse>>() {
+            @Override
+            public void onFailure(Throwable exc) {
+                future.setException(exc);
+            }
+
+            @Override
+            public void onSuccess(Pair<JsonElement, ServiceFilterResponse> result) {
+                future.set(result.first);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Makes a request over HTTP and parses the JSON response content in the
+     * background. The content is streamed from the connection into the
+     * parser, without buffering it.
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     * @return A ListenableFuture with the parsed content, or null if the response
+     * has no content, and the response
+     */
+    public ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> requestJsonResponse(String path, byte[] content, String httpMethod,
+                                                                                         List<Pair<String, String>> requestHeaders,
+                                                                                         List<Pair<String, String>> parameters,
+                                                                                         EnumSet<MobileServiceFeatures> features) {
+        final SettableFuture<Pair<JsonElement, ServiceFilterResponse>> future = SettableFuture.create();
+
+        ServiceFilterRequestImpl request;
+
+        try {
+            request = createRequest(path, content, httpMethod, requestHeaders, parameters, features);
+        } catch (Exception e) {
+            future.setException(e);
             return future;
         }
 
+        request.setStreamingResponse(true);
+
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            private JsonElement mResult;
+
+            @Override
+            protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+                mResult = JsonResponseParser.parse(response);
+            }
+
+            @Override
+            protected void onRequestCompleted(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(Pair.create(mResult, response));
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Creates the request to send over HTTP
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     * @return The request
+     * @throws Exception
+     */
+    private ServiceFilterRequestImpl createRequest(String path, byte[] content, String httpMethod,
+                                                   List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                   EnumSet<MobileServiceFeatures> features) throws Exception {
+        if (path == null || path.trim().equals("")) {
+            throw new IllegalArgumentException("request path cannot be null");
+        }
+
+        if (httpMethod == null || httpMethod.trim().equals("")) {
+            throw new IllegalArgumentException("httpMethod cannot be null");
+        }
+
         Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
         uriBuilder.path(path);
 
@@ -147,20 +349,21 @@ public class MobileServiceHttpClient {
         String url = uriBuilder.build().toString();
 
         if (httpMethod.equalsIgnoreCase(HttpGet.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         } else if (httpMethod.equalsIgnoreCase(HttpPost.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPost(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         } else if (httpMethod.equalsIgnoreCase(HttpPut.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPut(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPut(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         } else if (httpMethod.equalsIgnoreCase(HttpPatch.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpPatch(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpPatch(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         } else if (httpMethod.equalsIgnoreCase(HttpDelete.METHOD_NAME)) {
-            request = new ServiceFilterRequestImpl(new HttpDelete(url), mClient.getAndroidHttpClientFactory());
+            request = new ServiceFilterRequestImpl(new HttpDelete(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
         } else {
-            future.setException(new IllegalArgumentException("httpMethod not supported"));
-            return future;
+            throw new IllegalArgumentException("httpMethod not supported");
         }
 
+        request.setPriority(mRequestPriority);
+
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
         if (featuresHeader != null) {
             if (requestHeaders == null) {
@@ -189,27 +392,10 @@ public class MobileServiceHttpClient {
         }
 
         if (content != null) {
-            try {
-                request.setContent(content);
-            } catch (Exception e) {
-                future.setException(e);
-                return future;
-            }
+            request.setContent(content);
+            request.setRequestCompression(getRequestCompression());
         }
 
-        MobileServiceConnection conn = mClient.createConnection();
-
-        new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException != null) {
-                    future.setException(mTaskException);
-                } else {
-                    future.set(response);
-                }
-            }
-        }.executeTask();
-
-        return future;
+        return request;
     }
 }
@@ -0,0 +1,391 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MultipartBatchContent.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes and reads the multipart/mixed content of OData $batch requests,
+ * where each part is a complete HTTP request or response
+ */
+public class MultipartBatchContent {
+
+    /**
+     * Content type of batch requests and responses
+     */
+    public static final String MULTIPART_CONTENTTYPE = "multipart/mixed";
+
+    /**
+     * Content type of each part
+     */
+    private static final String HTTP_CONTENTTYPE = "application/http";
+
+    /**
+     * Encoding used to read and write the multipart structure. It maps every
+     * byte to a char, so part bodies keep their original bytes.
+     */
+    private static final String MULTIPART_ENCODING = "ISO-8859-1";
+
+    /**
+     * Line separator of the multipart structure
+     */
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Headers of the parts that are not sent, since they apply to the batch
+     * request as a whole
+     */
+    private static final String[] EXCLUDED_PART_HEADERS = new String[]{"Accept-Encoding", "Content-Length"};
+
+    /**
+     * Creates a new boundary for a batch request
+     */
+    public static String createBoundary() {
+        return "batch_" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * Returns the Content-Type header value of a batch request
+     *
+     * @param boundary The boundary of the batch request
+     */
+    public static String getContentType(String boundary) {
+        return MULTIPART_CONTENTTYPE + "; boundary=" + boundary;
+    }
+
+    /**
+     * Writes the content of a batch request
+     *
+     * @param boundary The boundary of the batch request
+     * @param requests The requests to include, in order
+     * @return The content of the batch request
+     * @throws java.io.UnsupportedEncodingException
+     */
+    public static byte[] write(String boundary, List<ServiceFilterRequest> requests) throws UnsupportedEncodingException {
+        StringBuilder builder = new StringBuilder();
+
+        for (ServiceFilterRequest request : requests) {
+            builder.append("--").append(boundary).append(CRLF);
+            builder.append("Content-Type: ").append(HTTP_CONTENTTYPE).append(CRLF);
+            builder.append("Content-Transfer-Encoding: binary").append(CRLF);
+            builder.append(CRLF);
+
+            builder.append(request.getMethod()).append(' ').append(request.getUrl()).append(" HTTP/1.1").append(CRLF);
+
+            Header[] headers = request.getHeaders();
+
+            if (headers != null) {
+                for (Header header : headers) {
+                    if (!isExcludedPartHeader(header.getName())) {
+                        builder.append(header.getName()).append(": ").append(header.getValue()).append(CRLF);
+                    }
+                }
+            }
+
+            builder.append(CRLF);
+
+            byte[] content = request.getRawContent();
+
+            if (content != null) {
+                builder.append(new String(content, MULTIPART_ENCODING));
+            }
+
+            builder.append(CRLF);
+        }
+
+        builder.append("--").append(boundary).append("--").append(CRLF);
+
+        return builder.toString().getBytes(MULTIPART_ENCODING);
+    }
+
+    /**
+     * Reads the responses of a batch request
+     *
+     * @param response The response of the batch request
+     * @return The responses of the parts, in order
+     * @throws IllegalArgumentException if the response is not a valid batch response
+     * @throws java.io.UnsupportedEncodingException
+     */
+    public static List<ServiceFilterResponse> read(ServiceFilterResponse response) throws UnsupportedEncodingException {
+        String boundary = getBoundary(getHeaderValue(response.getHeaders(), "Content-Type"));
+
+        if (boundary == null) {
+            throw new IllegalArgumentException("The batch response is not a multipart response.");
+        }
+
+        byte[] content = response.getRawContent();
+        List<ServiceFilterResponse> responses = new ArrayList<ServiceFilterResponse>();
+
+        if (content != null) {
+            readParts(new String(content, MULTIPART_ENCODING), boundary, responses);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Reads the parts of a multipart content, including the parts of nested
+     * change sets
+     *
+     * @param content   The multipart content
+     * @param boundary  The boundary of the multipart content
+     * @param responses The list where the responses are added
+     * @throws java.io.UnsupportedEncodingException
+     */
+    private static void readParts(String content, String boundary, List<ServiceFilterResponse> responses) throws UnsupportedEncodingException {
+        String delimiter = "--" + boundary;
+        int index = content.indexOf(delimiter);
+
+        while (index >= 0) {
+            int partStart = index + delimiter.length();
+
+            // The closing delimiter ends the multipart content
+            if (content.startsWith("--", partStart)) {
+                break;
+            }
+
+            int next = content.indexOf(CRLF + delimiter, partStart);
+
+            if (next < 0) {
+                break;
+            }
+
+            String part = trimLeadingLineBreak(content.substring(partStart, next));
+            int headersEnd = part.indexOf(CRLF + CRLF);
+
+            if (headersEnd >= 0) {
+                String[] partHeaders = part.substring(0, headersEnd).split(CRLF);
+                String body = part.substring(headersEnd + CRLF.length() * 2);
+                String partContentType = null;
+
+                for (String partHeader : partHeaders) {
+                    int separator = partHeader.indexOf(':');
+
+                    if (separator > 0 && partHeader.substring(0, separator).trim().equalsIgnoreCase("Content-Type")) {
+                        partContentType = partHeader.substring(separator + 1).trim();
+                    }
+                }
+
+                String changeSetBoundary = getBoundary(partContentType);
+
+                if (changeSetBoundary != null) {
+                    readParts(body, changeSetBoundary, responses);
+                } else {
+                    responses.add(readResponse(body));
+                }
+            }
+
+            index = next + CRLF.length();
+        }
+    }
+
+    /**
+     * Reads the HTTP response of a part
+     *
+     * @param part The content of the part
+     * @return The response
+     * @throws java.io.UnsupportedEncodingException
+     */
+    private static ServiceFilterResponse readResponse(String part) throws UnsupportedEncodingException {
+        int headersEnd = part.indexOf(CRLF + CRLF);
+        String head = headersEnd >= 0 ? part.substring(0, headersEnd) : part;
+        String body = headersEnd >= 0 ? part.substring(headersEnd + CRLF.length() * 2) : "";
+
+        String[] lines = head.split(CRLF);
+
+        // Status line, such as HTTP/1.1 201 Created
+        String[] statusLine = lines[0].split(" ", 3);
+
+        if (statusLine.length < 2) {
+            throw new IllegalArgumentException("The batch response contains an invalid status line.");
+        }
+
+        int statusCode;
+
+        try {
+            statusCode = Integer.parseInt(statusLine[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The batch response contains an invalid status line.");
+        }
+
+        List<Header> headers = new ArrayList<Header>();
+
+        for (int i = 1; i < lines.length; i++) {
+            int separator = lines[i].indexOf(':');
+
+            if (separator > 0) {
+                headers.add(new BasicHeader(lines[i].substring(0, separator).trim(), lines[i].substring(separator + 1).trim()));
+            }
+        }
+
+        byte[] content = body.length() > 0 ? body.getBytes(MULTIPART_ENCODING) : null;
+        StatusLine status = new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, statusLine.length > 2 ? statusLine[2] : "");
+
+        return new PartResponse(status, headers.toArray(new Header[headers.size()]), content);
+    }
+
+    /**
+     * Returns the boundary parameter of a multipart content type
+     *
+     * @param contentType The content type
+     * @return The boundary, or null if the content type is not multipart
+     */
+    private static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.trim().toLowerCase().startsWith(MULTIPART_CONTENTTYPE)) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            int separator = parameter.indexOf('=');
+
+            if (separator > 0 && parameter.substring(0, separator).trim().equalsIgnoreCase("boundary")) {
+                String boundary = parameter.substring(separator + 1).trim();
+
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+
+                return boundary;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the line break that follows a boundary delimiter
+     *
+     * @param part The part content
+     */
+    private static String trimLeadingLineBreak(String part) {
+        return part.startsWith(CRLF) ? part.substring(CRLF.length()) : part;
+    }
+
+    /**
+     * Indicates if a header is not sent in the parts of a batch request
+     *
+     * @param headerName The header name
+     */
+    private static boolean isExcludedPartHeader(String headerName) {
+        for (String excludedHeader : EXCLUDED_PART_HEADERS) {
+            if (excludedHeader.equalsIgnoreCase(headerName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the value of a header
+     *
+     * @param headers    The headers
+     * @param headerName The header name
+     * @return The header value, or null if it is not present
+     */
+    private static String getHeaderValue(Header[] headers, String headerName) {
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(headerName)) {
+                    return header.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Response of a part of a batch response
+     */
+    private static class PartResponse implements ServiceFilterResponse {
+
+        /**
+         * The response status
+         */
+        private final StatusLine mStatus;
+
+        /**
+         * The response headers
+         */
+        private final Header[] mHeaders;
+
+        /**
+         * The response content
+         */
+        private final byte[] mContent;
+
+        /**
+         * Constructor for PartResponse
+         *
+         * @param status  The response status
+         * @param headers The response headers
+         * @param content The response content
+         */
+        PartResponse(StatusLine status, Header[] headers, byte[] content) {
+            mStatus = status;
+            mHeaders = headers;
+            mContent = content;
+        }
+
+        @Override
+        public Header[] getHeaders() {
+            return mHeaders;
+        }
+
+        @Override
+        public String getContent() {
+            if (mContent == null) {
+                return null;
+            }
+
+            try {
+                return new String(mContent, MobileServiceClient.UTF8_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] getRawContent() {
+            return mContent;
+        }
+
+        @Override
+        public StatusLine getStatus() {
+            return mStatus;
+        }
+    }
+}
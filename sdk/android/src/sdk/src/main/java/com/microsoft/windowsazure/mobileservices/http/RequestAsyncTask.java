@@ -26,11 +26,18 @@ package com.microsoft.windowsazure.mobileservices.http;
 import android.annotation.SuppressLint;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 
+import java.util.concurrent.Executor;
+
 /**
- * Default implementation for performing requests using AsyncTask
+ * Default implementation for performing requests. Requests are executed by
+ * the RequestDispatcher of the client, or using AsyncTask if there is none.
  */
 public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilterResponse> {
     /**
@@ -48,6 +55,17 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
      */
     private ServiceFilterRequest mRequest;
 
+    /**
+     * Executor used to deliver the completion of the request, or null to
+     * deliver it on the main thread
+     */
+    private Executor mCallbackExecutor;
+
+    /**
+     * Handler used to deliver completions on the main thread
+     */
+    private static Handler sMainHandler;
+
     /**
      * Constructor that specifies request and connection
      *
@@ -57,13 +75,48 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
     public RequestAsyncTask(ServiceFilterRequest request, MobileServiceConnection connection) {
         mRequest = request;
         mConnection = connection;
+        mCallbackExecutor = connection.getCallbackExecutor();
     }
 
     @SuppressLint("NewApi")
     public void executeTask() {
-        // If it's running with Honeycomb or greater, it must execute each
-        // request in a different thread
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+        RequestDispatcher dispatcher = mConnection.getRequestDispatcher();
+
+        if (dispatcher != null) {
+            // Start the request without parking a thread until the response
+            // is received. The response is processed on the thread that
+            // completes the request.
+            Futures.addCallback(dispatcher.start(mConnection, mRequest), new FutureCallback<ServiceFilterResponse>() {
+                @Override
+                public void onFailure(Throwable exception) {
+                    setTaskException(exception);
+                    deliverCompletion(processResponse(null));
+                }
+
+                @Override
+                public void onSuccess(ServiceFilterResponse response) {
+                    deliverCompletion(processResponse(response));
+                }
+            });
+        } else if (mCallbackExecutor != null) {
+            // The completion is delivered on the callback executor, so the
+            // request runs outside of AsyncTask, whose onPostExecute would
+            // also be called on the main thread
+            Runnable request = new Runnable() {
+                @Override
+                public void run() {
+                    deliverCompletion(runRequest());
+                }
+            };
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(request);
+            } else {
+                new Thread(request).start();
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // If it's running with Honeycomb or greater, it must execute each
+            // request in a different thread
             this.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         } else {
             this.execute();
@@ -72,19 +125,145 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
 
     @Override
     protected ServiceFilterResponse doInBackground(Void... params) {
-        // Call start method that executes the request
+        return runRequest();
+    }
+
+    /**
+     * Method called when the request is completed, either on the callback
+     * executor of the client or on the main thread if there is none. It is
+     * called exactly once for every request, and calls onRequestCompleted.
+     * Subclasses overriding it must call the base implementation, unless
+     * they complete the request themselves.
+     *
+     * @param response The received response, or null if the request failed
+     */
+    @Override
+    protected void onPostExecute(ServiceFilterResponse response) {
+        onRequestCompleted(response);
+    }
+
+    /**
+     * Executes the request and runs the background stage for its result
+     *
+     * @return The received response, or null if the request failed
+     */
+    private ServiceFilterResponse runRequest() {
         ServiceFilterResponse response = null;
+
         try {
             response = mConnection.start(mRequest).get();
-            return response;
         } catch (Exception e) {
-            if (e.getCause() instanceof MobileServiceException) {
-                mTaskException = (MobileServiceException) e.getCause();
-            } else {
-                mTaskException = new MobileServiceException(e);
+            setTaskException(e.getCause() != null ? e.getCause() : e);
+        }
+
+        return processResponse(response);
+    }
+
+    /**
+     * Sets the task exception from the exception thrown by the request
+     *
+     * @param exception The exception thrown by the request
+     */
+    private void setTaskException(Throwable exception) {
+        if (exception instanceof MobileServiceException) {
+            mTaskException = (MobileServiceException) exception;
+        } else {
+            mTaskException = new MobileServiceException(exception);
+        }
+    }
+
+    /**
+     * Runs the background stage for the result of the request
+     *
+     * @param response The received response, or null if the request failed
+     * @return The received response
+     */
+    private ServiceFilterResponse processResponse(ServiceFilterResponse response) {
+        try {
+            if (mTaskException == null) {
+                try {
+                    onResponseReceived(response);
+                } catch (Exception e) {
+                    mTaskException = new MobileServiceException("Error while retrieving data from response.", e, response);
+                }
+            }
+
+            if (mTaskException != null) {
+                onRequestFailed(mTaskException);
+            }
+        } finally {
+            if (response instanceof StreamingServiceFilterResponse) {
+                // Buffers the content that was not streamed, or closes the
+                // stream handed out, which releases the connection
+                response.getRawContent();
             }
         }
 
         return response;
     }
+
+    /**
+     * Delivers the completion of the request on the callback executor or, if
+     * there is none, on the main thread
+     *
+     * @param response The received response
+     */
+    private void deliverCompletion(final ServiceFilterResponse response) {
+        if (mCallbackExecutor != null) {
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onPostExecute(response);
+                }
+            });
+        } else {
+            getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    onPostExecute(response);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the Handler used to deliver completions on the main thread
+     */
+    private static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+
+        return sMainHandler;
+    }
+
+    /**
+     * Method called in the background thread after a successful response is
+     * received, before onRequestCompleted. Response content must be parsed
+     * here, since onRequestCompleted may run on the main thread.
+     *
+     * @param response The received response
+     * @throws Exception
+     */
+    protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+    }
+
+    /**
+     * Method called in the background thread if the request fails, before
+     * onRequestCompleted. Error response content must be parsed here.
+     *
+     * @param exception The exception thrown by the request
+     */
+    protected void onRequestFailed(MobileServiceException exception) {
+    }
+
+    /**
+     * Method called by onPostExecute when the request is completed, either
+     * on the callback executor of the client or on the main thread if there
+     * is none. Subclasses complete their futures here.
+     *
+     * @param response The received response, or null if the request failed
+     */
+    protected void onRequestCompleted(ServiceFilterResponse response) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestCoalescer.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the response of identical GET requests that are in flight at the
+ * same time, so a single request goes to the network.
+ * <p/>
+ * Requests are identical when they have the same URL, authentication token
+ * and features header. The shared response has its content buffered, so it
+ * can be read by every request, and it must not be modified.
+ */
+public class RequestCoalescer {
+
+    /**
+     * Request header with the Mobile Service user authentication token
+     */
+    private static final String X_ZUMO_AUTH_HEADER = "X-ZUMO-AUTH";
+
+    /**
+     * Responses of the requests in flight, by request key
+     */
+    private final Map<String, ListenableFuture<ServiceFilterResponse>> mInFlightRequests = new HashMap<String, ListenableFuture<ServiceFilterResponse>>();
+
+    /**
+     * Number of requests that were completed with the response of another
+     * request
+     */
+    private AtomicLong mCoalescedRequestCount = new AtomicLong();
+
+    /**
+     * Returns the key that identifies identical requests
+     *
+     * @param request The request
+     * @return The request key, or null if the request cannot be coalesced
+     */
+    public static String getKey(ServiceFilterRequest request) {
+        if (!HttpGet.METHOD_NAME.equals(request.getMethod()) || request.getUrl() == null) {
+            return null;
+        }
+
+        String authToken = getHeaderValue(request, X_ZUMO_AUTH_HEADER);
+        String features = getHeaderValue(request, MobileServiceHttpClient.X_ZUMO_FEATURES);
+
+        return request.getUrl() + "\n" + (authToken != null ? authToken : "") + "\n" + (features != null ? features : "");
+    }
+
+    /**
+     * Returns the value of a request header
+     *
+     * @param request    The request
+     * @param headerName The header name
+     * @return The header value, or null if the request does not contain it
+     */
+    private static String getHeaderValue(ServiceFilterRequest request, String headerName) {
+        Header[] headers = request.getHeaders();
+
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(headerName)) {
+                    return header.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Executes a request, unless an identical one is in flight
+     *
+     * @param key     The key of the request, returned by getKey
+     * @param request Callable that executes the request. The response it
+     *                returns must have its content buffered
+     * @return A ListenableFuture that is completed with the response, shared
+     * by all the identical requests in flight
+     */
+    public ListenableFuture<ServiceFilterResponse> execute(final String key, Callable<ListenableFuture<ServiceFilterResponse>> request) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+
+        final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+
+        synchronized (mInFlightRequests) {
+            ListenableFuture<ServiceFilterResponse> inFlight = mInFlightRequests.get(key);
+
+            if (inFlight != null) {
+                mCoalescedRequestCount.incrementAndGet();
+                return inFlight;
+            }
+
+            mInFlightRequests.put(key, future);
+        }
+
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mInFlightRequests) {
+                    if (mInFlightRequests.get(key) == future) {
+                        mInFlightRequests.remove(key);
+                    }
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        try {
+            Futures.addCallback(request.call(), new FutureCallback<ServiceFilterResponse>() {
+                @Override
+                public void onFailure(Throwable exception) {
+                    future.setException(exception);
+                }
+
+                @Override
+                public void onSuccess(ServiceFilterResponse response) {
+                    future.set(response);
+                }
+            });
+        } catch (Exception e) {
+            future.setException(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the number of distinct requests in flight
+     */
+    public int getInFlightRequestCount() {
+        synchronized (mInFlightRequests) {
+            return mInFlightRequests.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests that were completed with the response
+     * of another request
+     */
+    public long getCoalescedRequestCount() {
+        return mCoalescedRequestCount.get();
+    }
+}
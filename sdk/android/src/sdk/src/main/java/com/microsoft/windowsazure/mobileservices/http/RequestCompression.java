@@ -0,0 +1,244 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestCompression.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import org.apache.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses request bodies with gzip before they are sent.
+ * <p/>
+ * Only bodies of at least the minimum size are compressed, and only if the
+ * compressed body is smaller. Requests whose body already has a
+ * Content-Encoding are sent as they are. If the server rejects a compressed
+ * request with a 415 (Unsupported Media Type) response, the request is sent
+ * again uncompressed and no further request to the same host is compressed
+ * until the rejection timeout elapses. Other error responses, like the 400
+ * responses of server script validations, are returned as they are, since
+ * sending the request again would run its side effects twice.
+ */
+public class RequestCompression {
+
+    /**
+     * Default minimum size, in bytes, of the compressed request bodies
+     */
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    /**
+     * Default time, in milliseconds, request bodies are sent uncompressed to
+     * a host that rejected a compressed body
+     */
+    public static final long DEFAULT_REJECTION_TIMEOUT_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Content-Encoding header value of compressed bodies
+     */
+    public static final String GZIP_CONTENTENCODING = "gzip";
+
+    /**
+     * Minimum size, in bytes, of the compressed request bodies
+     */
+    private int mMinimumSize;
+
+    /**
+     * Time, in milliseconds, request bodies are sent uncompressed to a host
+     * that rejected a compressed body
+     */
+    private long mRejectionTimeoutMillis;
+
+    /**
+     * Time each host rejected a compressed request body, by host
+     */
+    private final Map<String, Long> mRejectingHosts = new HashMap<String, Long>();
+
+    /**
+     * Number of requests sent with a compressed body
+     */
+    private AtomicLong mCompressedRequestCount = new AtomicLong();
+
+    /**
+     * Number of bytes saved by compressing request bodies
+     */
+    private AtomicLong mSavedBytes = new AtomicLong();
+
+    /**
+     * Constructor for RequestCompression, using the default minimum size
+     */
+    public RequestCompression() {
+        this(DEFAULT_MINIMUM_SIZE);
+    }
+
+    /**
+     * Constructor for RequestCompression, using the default rejection timeout
+     *
+     * @param minimumSize Minimum size, in bytes, of the compressed request bodies
+     */
+    public RequestCompression(int minimumSize) {
+        this(minimumSize, DEFAULT_REJECTION_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for RequestCompression
+     *
+     * @param minimumSize            Minimum size, in bytes, of the compressed request bodies
+     * @param rejectionTimeoutMillis Time, in milliseconds, request bodies are sent
+     *                               uncompressed to a host that rejected a compressed body
+     */
+    public RequestCompression(int minimumSize, long rejectionTimeoutMillis) {
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("minimumSize cannot be negative");
+        }
+
+        if (rejectionTimeoutMillis < 0) {
+            throw new IllegalArgumentException("rejectionTimeoutMillis cannot be negative");
+        }
+
+        mMinimumSize = minimumSize;
+        mRejectionTimeoutMillis = rejectionTimeoutMillis;
+    }
+
+    /**
+     * Returns the minimum size, in bytes, of the compressed request bodies
+     */
+    public int getMinimumSize() {
+        return mMinimumSize;
+    }
+
+    /**
+     * Returns the time, in milliseconds, request bodies are sent uncompressed
+     * to a host that rejected a compressed body
+     */
+    public long getRejectionTimeoutMillis() {
+        return mRejectionTimeoutMillis;
+    }
+
+    /**
+     * Indicates if a host has rejected a compressed request body, so request
+     * bodies sent to it are not compressed
+     *
+     * @param host The host, with its port if it is not the default one
+     */
+    public boolean isRejectedByServer(String host) {
+        synchronized (mRejectingHosts) {
+            Long rejectionTime = mRejectingHosts.get(host);
+
+            if (rejectionTime == null) {
+                return false;
+            }
+
+            if (System.currentTimeMillis() - rejectionTime >= mRejectionTimeoutMillis) {
+                mRejectingHosts.remove(host);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of requests sent with a compressed body
+     */
+    public long getCompressedRequestCount() {
+        return mCompressedRequestCount.get();
+    }
+
+    /**
+     * Returns the number of bytes saved by compressing request bodies
+     */
+    public long getSavedBytes() {
+        return mSavedBytes.get();
+    }
+
+    /**
+     * Compresses a request body
+     *
+     * @param host    The host the request is sent to
+     * @param content The request body
+     * @return The compressed body, or null if the body must be sent
+     * uncompressed
+     * @throws java.io.IOException
+     */
+    byte[] compress(String host, byte[] content) throws IOException {
+        if (content == null || content.length < mMinimumSize || isRejectedByServer(host)) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+
+        try {
+            gzip.write(content);
+        } finally {
+            gzip.close();
+        }
+
+        byte[] compressed = out.toByteArray();
+
+        if (compressed.length >= content.length) {
+            return null;
+        }
+
+        mCompressedRequestCount.incrementAndGet();
+        mSavedBytes.addAndGet(content.length - compressed.length);
+
+        return compressed;
+    }
+
+    /**
+     * Checks if the response of a compressed request rejects the encoding,
+     * which is a 415 response. No further request body is compressed for the
+     * host until the rejection timeout elapses.
+     *
+     * @param host     The host the request was sent to
+     * @param response The response of the compressed request
+     * @return True if the request must be sent again uncompressed
+     */
+    boolean isRejected(String host, ServiceFilterResponse response) {
+        if (response.getStatus().getStatusCode() != HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+            return false;
+        }
+
+        setRejectedByServer(host);
+
+        return true;
+    }
+
+    /**
+     * Stops compressing request bodies sent to a host until the rejection
+     * timeout elapses
+     *
+     * @param host The host
+     */
+    private void setRejectedByServer(String host) {
+        synchronized (mRejectingHosts) {
+            mRejectingHosts.put(host, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * RequestDispatcher.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.windowsazure.mobileservices.threading.NamedThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the requests of a MobileServiceClient, and of all the clients
+ * created from it using withFilter, without blocking the calling thread.
+ * <p/>
+ * The service filters run on a bounded pool of filter threads; a filter
+ * thread is released as soon as the filter chain returns its future, and
+ * the chains waiting for a filter thread are queued. The HTTP requests run
+ * on a bounded
+ * pool of I/O threads, so at most the configured number of requests is in
+ * flight at a time and the rest wait in a queue without holding a thread.
+ * Queued requests are executed by priority, and in order within the same
+ * priority.
+ */
+public class RequestDispatcher {
+
+    /**
+     * Default maximum number of requests executed at the same time
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    /**
+     * Default maximum number of filter chains run at the same time, the
+     * default size of the connection pool
+     */
+    public static final int DEFAULT_MAX_FILTER_THREADS = HttpConnectionPool.DEFAULT_MAX_TOTAL_CONNECTIONS;
+
+    /**
+     * Time, in seconds, an idle thread is kept alive
+     */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Maximum number of requests executed at the same time
+     */
+    private int mMaxConcurrentRequests;
+
+    /**
+     * Maximum number of filter chains run at the same time
+     */
+    private int mMaxFilterThreads;
+
+    /**
+     * Executor that runs the service filter chains
+     */
+    private ThreadPoolExecutor mFilterExecutor;
+
+    /**
+     * Executor that runs the HTTP requests
+     */
+    private ThreadPoolExecutor mRequestExecutor;
+
+    /**
+     * ListeningExecutorService wrapping the filter executor
+     */
+    private ListeningExecutorService mListeningFilterExecutor;
+
+    /**
+     * Sequence number of the submitted requests, used to keep the order of
+     * requests with the same priority
+     */
+    private AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Indicates if the threads are owned by another dispatcher
+     */
+    private boolean mShared;
+
+    /**
+     * Constructor for the RequestDispatcher, using the default limit of
+     * concurrent requests
+     */
+    public RequestDispatcher() {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Constructor for the RequestDispatcher
+     *
+     * @param maxConcurrentRequests Maximum number of requests executed at the same time
+     */
+    public RequestDispatcher(int maxConcurrentRequests) {
+        this(maxConcurrentRequests, DEFAULT_MAX_FILTER_THREADS);
+    }
+
+    /**
+     * Constructor for the RequestDispatcher. Filters that block waiting for
+     * other requests hold their filter thread meanwhile, so maxFilterThreads
+     * must be greater than the number of such filters running at a time.
+     *
+     * @param maxConcurrentRequests Maximum number of requests executed at the same time
+     * @param maxFilterThreads      Maximum number of filter chains run at the same time
+     */
+    public RequestDispatcher(int maxConcurrentRequests, int maxFilterThreads) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be greater than zero");
+        }
+
+        if (maxFilterThreads < 1) {
+            throw new IllegalArgumentException("maxFilterThreads must be greater than zero");
+        }
+
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mMaxFilterThreads = maxFilterThreads;
+
+        mFilterExecutor = new ThreadPoolExecutor(maxFilterThreads, maxFilterThreads, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("MobileServiceFilter"));
+        allowCoreThreadTimeOut(mFilterExecutor);
+
+        mRequestExecutor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("MobileServiceRequest"));
+        allowCoreThreadTimeOut(mRequestExecutor);
+
+        mListeningFilterExecutor = MoreExecutors.listeningDecorator(mFilterExecutor);
+    }
+
+    /**
+     * Constructor for a RequestDispatcher that shares the threads and the
+     * limits of another dispatcher. Shutting down the new dispatcher does not
+     * stop the shared threads.
+     *
+     * @param dispatcher The dispatcher whose threads are shared
+     */
+    protected RequestDispatcher(RequestDispatcher dispatcher) {
+        if (dispatcher == null) {
+            throw new IllegalArgumentException("dispatcher cannot be null");
+        }
+
+        mMaxConcurrentRequests = dispatcher.mMaxConcurrentRequests;
+        mMaxFilterThreads = dispatcher.mMaxFilterThreads;
+        mFilterExecutor = dispatcher.mFilterExecutor;
+        mRequestExecutor = dispatcher.mRequestExecutor;
+        mListeningFilterExecutor = dispatcher.mListeningFilterExecutor;
+        mSequence = dispatcher.mSequence;
+        mShared = true;
+    }
+
+    /**
+     * Runs the service filter chain of the request on a filter thread
+     *
+     * @param connection The connection used to start the request
+     * @param request    The request to start
+     * @return A ListenableFuture that is completed with the response when the
+     * request is executed
+     */
+    public ListenableFuture<ServiceFilterResponse> start(final MobileServiceConnection connection, final ServiceFilterRequest request) {
+        try {
+            return Futures.dereference(mListeningFilterExecutor.submit(new Callable<ListenableFuture<ServiceFilterResponse>>() {
+                @Override
+                public ListenableFuture<ServiceFilterResponse> call() throws Exception {
+                    return connection.start(request);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Executes the HTTP request on an I/O thread, once one is available and
+     * the queued requests with higher priority have been executed
+     *
+     * @param request The request to execute
+     * @return A ListenableFuture that is completed with the response
+     */
+    public ListenableFuture<ServiceFilterResponse> execute(final ServiceFilterRequest request) {
+        ListenableFutureTask<ServiceFilterResponse> task = ListenableFutureTask.create(new Callable<ServiceFilterResponse>() {
+            @Override
+            public ServiceFilterResponse call() throws Exception {
+                return request.execute();
+            }
+        });
+
+        RequestPriority priority = request.getPriority();
+
+        if (priority == null) {
+            priority = RequestPriority.Normal;
+        }
+
+        try {
+            mRequestExecutor.execute(new PrioritizedTask(task, priority, mSequence.getAndIncrement()));
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return task;
+    }
+
+    /**
+     * Returns the maximum number of requests executed at the same time
+     */
+    public int getMaxConcurrentRequests() {
+        return mMaxConcurrentRequests;
+    }
+
+    /**
+     * Returns the maximum number of filter chains run at the same time
+     */
+    public int getMaxFilterThreads() {
+        return mMaxFilterThreads;
+    }
+
+    /**
+     * Returns the number of requests being executed
+     */
+    public int getActiveRequestCount() {
+        return mRequestExecutor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of requests waiting for an I/O thread
+     */
+    public int getQueuedRequestCount() {
+        return mRequestExecutor.getQueue().size();
+    }
+
+    /**
+     * Stops the dispatcher. Requests already submitted are completed, new
+     * ones are rejected. A dispatcher that shares the threads of another one
+     * leaves them running.
+     */
+    public void shutdown() {
+        if (mShared) {
+            return;
+        }
+
+        mFilterExecutor.shutdown();
+        mRequestExecutor.shutdown();
+    }
+
+    /**
+     * Lets the idle threads of the executor time out. Older platforms keep
+     * them alive.
+     *
+     * @param executor The executor
+     */
+    private static void allowCoreThreadTimeOut(ThreadPoolExecutor executor) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            allowCoreThreadTimeOutGingerbread(executor);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOutGingerbread(ThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Task queued in the request executor, ordered by priority and then by
+     * sequence number
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        /**
+         * The task to run
+         */
+        private final Runnable mTask;
+
+        /**
+         * The priority of the task
+         */
+        private final RequestPriority mPriority;
+
+        /**
+         * The sequence number of the task
+         */
+        private final long mSequence;
+
+        /**
+         * Constructor for PrioritizedTask
+         *
+         * @param task     The task to run
+         * @param priority The priority of the task
+         * @param sequence The sequence number of the task
+         */
+        PrioritizedTask(Runnable task, RequestPriority priority, long sequence) {
+            mTask = task;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mTask.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask another) {
+            int result = mPriority.compareTo(another.mPriority);
+
+            if (result == 0) {
+                result = mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+            }
+
+            return result;
+        }
+    }
+}
@@ -95,6 +95,19 @@ public interface ServiceFilterRequest {
      */
     public String getMethod();
 
+    /**
+     * Gets the request's priority
+     */
+    public RequestPriority getPriority();
+
+    /**
+     * Sets the request's priority, used to order the requests waiting to be
+     * executed
+     *
+     * @param priority The priority of the request
+     */
+    public void setPriority(RequestPriority priority);
+
     /**
      * Executes the request
      *
@@ -28,6 +28,7 @@ import android.net.http.AndroidHttpClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -38,6 +39,7 @@ import org.apache.http.protocol.HTTP;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Locale;
 
 /**
  * ServiceFilterRequest implementation
@@ -56,6 +58,29 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
 
     private AndroidHttpClientFactory mAndroidHttpClientFactory;
 
+    /**
+     * The connection pool used to execute the request. If null, a new
+     * AndroidHttpClient is created and closed for the request
+     */
+    private HttpConnectionPool mConnectionPool;
+
+    /**
+     * Flag to indicate the response content should be streamed instead of
+     * buffered
+     */
+    private boolean mStreamingResponse;
+
+    /**
+     * The request priority
+     */
+    private RequestPriority mPriority = RequestPriority.Normal;
+
+    /**
+     * The compression applied to the request content, or null to send it
+     * uncompressed
+     */
+    private RequestCompression mRequestCompression;
+
     /**
      * @param request
      *            The request to use
@@ -69,12 +94,89 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
      *                AndroidHttpClient objects
      */
     public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientFactory factory) {
+        this(request, factory, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param request        The request to use
+     * @param factory        The AndroidHttpClientFactory instance used to create
+     *                       AndroidHttpClient objects when no connection pool is
+     *                       specified
+     * @param connectionPool The connection pool used to execute the request, or null
+     *                       to use a new AndroidHttpClient for the request
+     */
+    public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientFactory factory, HttpConnectionPool connectionPool) {
         mRequest = request;
         mAndroidHttpClientFactory = factory;
+        mConnectionPool = connectionPool;
     }
 
     @Override
     public ServiceFilterResponse execute() throws Exception {
+        byte[] compressedContent = null;
+        String host = getHost();
+
+        // Content already encoded by the caller is sent as it is
+        if (mRequestCompression != null && mContent != null && mRequest instanceof HttpEntityEnclosingRequestBase
+                && mRequest.getFirstHeader(HTTP.CONTENT_ENCODING) == null) {
+            compressedContent = mRequestCompression.compress(host, mContent);
+        }
+
+        if (compressedContent == null) {
+            return executeRequest();
+        }
+
+        HttpEntityEnclosingRequestBase request = (HttpEntityEnclosingRequestBase) mRequest;
+        HttpEntity entity = request.getEntity();
+
+        request.setEntity(new ByteArrayEntity(compressedContent));
+        request.setHeader(HTTP.CONTENT_ENCODING, RequestCompression.GZIP_CONTENTENCODING);
+
+        try {
+            ServiceFilterResponse response = executeRequest();
+
+            if (!mRequestCompression.isRejected(host, response)) {
+                return response;
+            }
+
+            // Releases the connection of the rejected response
+            response.getRawContent();
+        } finally {
+            request.setEntity(entity);
+            request.removeHeaders(HTTP.CONTENT_ENCODING);
+        }
+
+        // The server does not accept compressed content
+        return executeRequest();
+    }
+
+    /**
+     * Returns the host the request is sent to, with its port if it is not the
+     * default one
+     */
+    private String getHost() {
+        URI uri = mRequest.getURI();
+        String host = uri != null ? uri.getAuthority() : null;
+
+        return host != null ? host.toLowerCase(Locale.US) : "";
+    }
+
+    /**
+     * Executes the request with its current content
+     *
+     * @return The response
+     * @throws Exception
+     */
+    private ServiceFilterResponse executeRequest() throws Exception {
+        if (mConnectionPool != null) {
+            // The connection goes back to the pool once the response content
+            // has been fully read, either buffered or through its stream
+            final HttpResponse response = mConnectionPool.execute(mRequest);
+            return new ServiceFilterResponseImpl(response, mStreamingResponse);
+        }
+
         // Execute request
         AndroidHttpClient client = mAndroidHttpClientFactory.createAndroidHttpClient();
         client.getParams().setParameter(HTTP.USER_AGENT, MobileServiceConnection.getUserAgent());
@@ -88,6 +190,46 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
         }
     }
 
+    /**
+     * Returns the compression applied to the request content, or null if it
+     * is sent uncompressed
+     */
+    public RequestCompression getRequestCompression() {
+        return mRequestCompression;
+    }
+
+    /**
+     * Sets the compression applied to the request content. The content is
+     * compressed when the request is executed, so service filters always
+     * see the uncompressed content.
+     *
+     * @param requestCompression The compression to apply, or null to send the
+     *                           content uncompressed
+     */
+    public void setRequestCompression(RequestCompression requestCompression) {
+        mRequestCompression = requestCompression;
+    }
+
+    /**
+     * Indicates if the response content will be streamed instead of buffered
+     */
+    public boolean isStreamingResponse() {
+        return mStreamingResponse;
+    }
+
+    /**
+     * Sets whether the response content should be streamed instead of
+     * buffered. Streaming requires a connection pool, since the connection
+     * must stay open until the content is read; without one the content is
+     * always buffered. The consumer of a streamed response must read its
+     * content stream, or call getContent, to release the connection.
+     *
+     * @param streamingResponse True to stream the response content
+     */
+    public void setStreamingResponse(boolean streamingResponse) {
+        mStreamingResponse = streamingResponse;
+    }
+
     @Override
     public Header[] getHeaders() {
         return mRequest.getAllHeaders();
@@ -149,4 +291,18 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
     public String getMethod() {
         return mRequest.getMethod();
     }
+
+    @Override
+    public RequestPriority getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public void setPriority(RequestPriority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority cannot be null");
+        }
+
+        mPriority = priority;
+    }
 }
\ No newline at end of file
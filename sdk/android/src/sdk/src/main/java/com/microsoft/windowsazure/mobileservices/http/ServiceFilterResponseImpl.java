@@ -32,7 +32,9 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -40,7 +42,7 @@ import java.io.UnsupportedEncodingException;
 /**
  * ServiceFilterResponse implementation
  */
-public class ServiceFilterResponseImpl implements ServiceFilterResponse {
+public class ServiceFilterResponseImpl implements StreamingServiceFilterResponse {
     /**
      * The original response
      */
@@ -51,6 +53,26 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
      */
     private byte[] mResponseContent;
 
+    /**
+     * The response content as a string, created on first use
+     */
+    private String mResponseContentString;
+
+    /**
+     * The unread response content stream, when the response is streamed
+     */
+    private InputStream mContentStream;
+
+    /**
+     * The streamed content handed out by getContentStream, which is not kept
+     */
+    private InputStream mStreamedContent;
+
+    /**
+     * Flag to indicate the content has been handed out by getContentStream
+     */
+    private boolean mStreamed;
+
     /**
      * Constructor
      *
@@ -59,6 +81,19 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
      * @throws IllegalStateException
      */
     public ServiceFilterResponseImpl(HttpResponse response) throws IllegalStateException, IOException {
+        this(response, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param response  The request's response
+     * @param streaming If true, the response's content is not read until it is
+     *                  requested, either as a stream or buffered
+     * @throws java.io.IOException
+     * @throws IllegalStateException
+     */
+    public ServiceFilterResponseImpl(HttpResponse response, boolean streaming) throws IllegalStateException, IOException {
         mResponse = response;
         mResponseContent = null;
 
@@ -67,19 +102,36 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
         if (entity != null) {
             InputStream instream = AndroidHttpClient.getUngzippedContent(entity);
 
+            if (streaming) {
+                mContentStream = instream;
+            } else {
+                mResponseContent = readContent(instream);
+            }
+        } else {
+            mResponseContent = null;
+        }
+    }
+
+    /**
+     * Reads and closes the given stream
+     *
+     * @param instream The stream to read
+     * @return byte array with the stream content
+     * @throws java.io.IOException
+     */
+    private static byte[] readContent(InputStream instream) throws IOException {
+        try {
             ByteArrayOutputStream out = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
+            byte[] buffer = new byte[8192];
             int length;
 
             while ((length = instream.read(buffer)) != -1) {
                 out.write(buffer, 0, length);
             }
 
+            return out.toByteArray();
+        } finally {
             instream.close();
-
-            mResponseContent = out.toByteArray();
-        } else {
-            mResponseContent = null;
         }
     }
 
@@ -89,26 +141,101 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
     }
 
     @Override
-    public String getContent() {
-        if (mResponseContent != null) {
-            String responseContent = null;
-            try {
-                responseContent = new String(mResponseContent, MobileServiceClient.UTF8_ENCODING);
-            } catch (UnsupportedEncodingException e) {
+    public synchronized String getContent() {
+        if (mResponseContentString == null) {
+            byte[] content = getRawContent();
+
+            if (content != null) {
+                try {
+                    mResponseContentString = new String(content, MobileServiceClient.UTF8_ENCODING);
+                } catch (UnsupportedEncodingException e) {
+                }
             }
-            return responseContent;
-        } else {
-            return null;
         }
+
+        return mResponseContentString;
     }
 
+    /**
+     * Returns the response content. A streamed content is buffered if it has
+     * not been handed out by getContentStream yet; once it has, it is not
+     * kept, and null is returned.
+     */
     @Override
-    public byte[] getRawContent() {
+    public synchronized byte[] getRawContent() {
+        if (mContentStream != null) {
+            // Lazily buffer a streamed content that has not been read yet
+            try {
+                mResponseContent = readContent(mContentStream);
+            } catch (IOException e) {
+                mResponseContent = null;
+            } finally {
+                mContentStream = null;
+            }
+        } else if (mStreamedContent != null) {
+            // Release the connection of a stream that was not closed
+            try {
+                mStreamedContent.close();
+            } catch (IOException e) {
+            } finally {
+                mStreamedContent = null;
+            }
+        }
+
         return mResponseContent;
     }
 
+    @Override
+    public synchronized InputStream getContentStream() throws IOException {
+        if (mContentStream != null) {
+            mStreamedContent = new DrainingInputStream(mContentStream);
+            mContentStream = null;
+            mStreamed = true;
+
+            return mStreamedContent;
+        }
+
+        if (mStreamed) {
+            throw new IllegalStateException("The response content has already been streamed.");
+        }
+
+        return mResponseContent != null ? new ByteArrayInputStream(mResponseContent) : null;
+    }
+
     @Override
     public StatusLine getStatus() {
         return mResponse.getStatusLine();
     }
-}
\ No newline at end of file
+
+    /**
+     * Stream over the response content that reads the rest of the content
+     * when it is closed, which releases the connection
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+        /**
+         * Flag to indicate the stream has been closed
+         */
+        private boolean mClosed;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!mClosed) {
+                mClosed = true;
+
+                try {
+                    byte[] buffer = new byte[8192];
+
+                    while (in.read(buffer) != -1) {
+                        // The rest of the content is discarded
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * StreamingServiceFilterResponse.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Represents an HTTP response whose content can be read as a stream, without
+ * buffering it in memory
+ */
+public interface StreamingServiceFilterResponse extends ServiceFilterResponse {
+    /**
+     * Gets a stream with the response's content. The stream must be closed
+     * after reading it; closing it reads the rest of the content, which
+     * releases the connection. The streamed content is not kept, so
+     * getContent and getRawContent return null afterwards; call them first to
+     * buffer the content instead.
+     *
+     * @return InputStream with the response's content, or null if the response
+     * has no content
+     * @throws java.io.IOException
+     * @throws IllegalStateException if the content has already been streamed
+     */
+    public InputStream getContentStream() throws IOException;
+}
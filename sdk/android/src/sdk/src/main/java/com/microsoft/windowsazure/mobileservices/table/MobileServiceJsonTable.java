@@ -33,20 +33,22 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.MobileServiceList;
+import com.microsoft.windowsazure.mobileservices.http.JsonResponseParser;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
-import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
 import com.microsoft.windowsazure.mobileservices.table.query.ExecutableJsonQuery;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryODataWriter;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonObjects;
 
 import org.apache.http.Header;
 import org.apache.http.client.methods.HttpGet;
@@ -57,6 +59,7 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map.Entry;
 
 /**
  * Represents a Mobile Service Table
@@ -132,23 +135,77 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
 
         String url = null;
         try {
-            String filtersUrl = QueryODataWriter.getRowFilter(query);
-            url = mClient.getAppUrl().toString() + TABLES_URL + URLEncoder.encode(mTableName, MobileServiceClient.UTF8_ENCODING);
-
-            if (filtersUrl.length() > 0) {
-                url += "?$filter=" + filtersUrl + QueryODataWriter.getRowSetModifiers(query, this);
-            } else {
-                String rowSetModifiers = QueryODataWriter.getRowSetModifiers(query, this);
-
-                if (rowSetModifiers.length() > 0) {
-                    url += "?" + QueryODataWriter.getRowSetModifiers(query, this).substring(1);
-                }
-            }
+            url = getQueryUrl(query);
         } catch (UnsupportedEncodingException e) {
             future.setException(e);
             return future;
         }
 
+        return executeUrlQuery(url, getQueryFeatures(query));
+    }
+
+    /**
+     * Retrieves a set of rows from the table using a query, and parses them
+     * directly from the response stream into typed entities
+     *
+     * @param query The query used to retrieve the rows
+     * @param clazz The class used for data serialization
+     * @return A ListenableFuture with the entities. Its total count is -1 if
+     * the response does not include it.
+     */
+    <E> ListenableFuture<MobileServiceList<E>> executeTyped(final Query query, Class<E> clazz) {
+        String url = null;
+        try {
+            url = getQueryUrl(query);
+        } catch (UnsupportedEncodingException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return executeTypedUrlQuery(url, getQueryFeatures(query), clazz);
+    }
+
+    /**
+     * Retrieves a set of rows using the Next Link Url (Continuation Token),
+     * and parses them directly from the response stream into typed entities
+     *
+     * @param nextLink The Next Link to make the request
+     * @param clazz    The class used for data serialization
+     * @return A ListenableFuture with the entities. Its total count is -1 if
+     * the response does not include it.
+     */
+    <E> ListenableFuture<MobileServiceList<E>> executeTyped(final String nextLink, Class<E> clazz) {
+        return executeTypedUrlQuery(nextLink, mFeatures.clone(), clazz);
+    }
+
+    /**
+     * Returns the URL of a query
+     *
+     * @param query The query
+     * @throws java.io.UnsupportedEncodingException
+     */
+    private String getQueryUrl(Query query) throws UnsupportedEncodingException {
+        String filtersUrl = QueryODataWriter.getRowFilter(query);
+        String url = mClient.getAppUrl().toString() + TABLES_URL + URLEncoder.encode(mTableName, MobileServiceClient.UTF8_ENCODING);
+
+        if (filtersUrl.length() > 0) {
+            url += "?$filter=" + filtersUrl + QueryODataWriter.getRowSetModifiers(query, this);
+        } else {
+            String rowSetModifiers = QueryODataWriter.getRowSetModifiers(query, this);
+
+            if (rowSetModifiers.length() > 0) {
+                url += "?" + QueryODataWriter.getRowSetModifiers(query, this).substring(1);
+            }
+        }
+
+        return url;
+    }
+
+    /**
+     * Returns the features used by a query
+     *
+     * @param query The query
+     */
+    private EnumSet<MobileServiceFeatures> getQueryFeatures(Query query) {
         EnumSet<MobileServiceFeatures> features = mFeatures.clone();
         if (query != null) {
             List<Pair<String, String>> userParameters = query.getUserDefinedParameters();
@@ -157,7 +214,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             }
         }
 
-        return executeUrlQuery(url, features);
+        return features;
     }
 
     /**
@@ -214,6 +271,49 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         return future;
     }
 
+    /**
+     * Make the request to the mobile service with the query URL, and parse
+     * the results into typed entities
+     *
+     * @param url      The query url
+     * @param features The features used in the request
+     * @param clazz    The class used for data serialization
+     */
+    private <E> ListenableFuture<MobileServiceList<E>> executeTypedUrlQuery(final String url, EnumSet<MobileServiceFeatures> features,
+                                                                          final Class<E> clazz) {
+        final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
+
+        ListenableFuture<Pair<MobileServiceList<E>, ServiceFilterResponse>> internalFuture = executeGetRecords(url, features,
+                new RecordsParser<MobileServiceList<E>>() {
+                    @Override
+                    MobileServiceList<E> parse(ServiceFilterResponse response) throws Exception {
+                        return JsonEntityParser.parseQueryResults(response, mClient.getSerializationContext(), clazz);
+                    }
+                });
+
+        Futures.addCallback(internalFuture, new FutureCallback<Pair<MobileServiceList<E>, ServiceFilterResponse>>() {
+            @Override
+            public void onFailure(Throwable exc) {
+                future.setException(exc);
+            }
+
+            @Override
+            public void onSuccess(Pair<MobileServiceList<E>, ServiceFilterResponse> result) {
+                String nextLinkHeaderValue = getHeaderValue(result.second.getHeaders(), "Link");
+
+                if (nextLinkHeaderValue != null) {
+                    String nextLink = nextLinkHeaderValue.replace("; rel=next", "");
+
+                    future.set(new MobileServiceList<E>(result.first, result.first.getTotalCount(), nextLink));
+                } else {
+                    future.set(result.first);
+                }
+            }
+        });
+
+        return future;
+    }
+
     /**
      * Retrieves a set of rows from the table using a query
      *
@@ -592,6 +692,22 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
      *                   request URI query string
      */
     public ListenableFuture<JsonObject> update(final JsonObject element, List<Pair<String, String>> parameters) {
+        return this.update(element, null, parameters);
+    }
+
+    /**
+     * Updates an element from a Mobile Service Table, sending only the
+     * properties that changed from the version of the element last returned
+     * by the Mobile Service. The element returned by the Mobile Service is
+     * merged into the given element.
+     *
+     * @param element    The JsonObject to update
+     * @param original   The version of the element last returned by the Mobile
+     *                   Service, or null to send all the properties
+     * @param parameters A list of user-defined parameters and values to include in the
+     *                   request URI query string
+     */
+    public ListenableFuture<JsonObject> update(final JsonObject element, JsonObject original, List<Pair<String, String>> parameters) {
         final SettableFuture<JsonObject> future = SettableFuture.create();
 
         Object id = null;
@@ -607,7 +723,22 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
 
         if (!isNumericType(id)) {
             version = getVersionSystemProperty(element);
-            content = removeSystemProperties(element).toString();
+            JsonObject properties = removeSystemProperties(element);
+
+            if (original != null) {
+                // The id is always sent, followed by the changed properties
+                JsonObject changes = JsonObjects.changedProperties(removeSystemProperties(original), properties);
+                changes.remove("id");
+
+                properties = new JsonObject();
+                properties.add("id", element.get("id"));
+
+                for (Entry<String, JsonElement> property : changes.entrySet()) {
+                    properties.add(property.getKey(), property.getValue());
+                }
+            }
+
+            content = properties.toString();
         } else {
             content = element.toString();
         }
@@ -907,6 +1038,9 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         final SettableFuture<Pair<JsonObject, ServiceFilterResponse>> future = SettableFuture.create();
 
         MobileServiceHttpClient httpClient = new MobileServiceHttpClient(mClient);
+        httpClient.setRequestPriority(mRequestPriority);
+        httpClient.setRequestCompressionEnabled(mRequestCompressionEnabled);
+
         if (requestHeaders == null) {
             requestHeaders = new ArrayList<Pair<String, String>>();
         }
@@ -915,24 +1049,35 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             requestHeaders.add(new Pair<String, String>(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE));
         }
 
-        ListenableFuture<ServiceFilterResponse> internalFuture = httpClient.request(path, content, httpMethod, requestHeaders, parameters, features);
+        byte[] byteContent = null;
 
-        Futures.addCallback(internalFuture, new FutureCallback<ServiceFilterResponse>() {
+        if (content != null) {
+            try {
+                byteContent = content.getBytes(MobileServiceClient.UTF8_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                future.setException(e);
+                return future;
+            }
+        }
+
+        // The response content is parsed in the background
+        ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> internalFuture = httpClient.requestJsonResponse(path, byteContent, httpMethod,
+                requestHeaders, parameters, features);
+
+        Futures.addCallback(internalFuture, new FutureCallback<Pair<JsonElement, ServiceFilterResponse>>() {
             @Override
             public void onFailure(Throwable exc) {
                 future.setException(transformHttpException(exc));
             }
 
             @Override
-            public void onSuccess(ServiceFilterResponse result) {
-                String content = null;
-                content = result.getContent();
-
-                if (content == null) {
+            public void onSuccess(Pair<JsonElement, ServiceFilterResponse> result) {
+                if (result.first == null || result.first.isJsonNull()) {
                     future.set(null);
+                } else if (!result.first.isJsonObject()) {
+                    future.setException(new MobileServiceException("The response content is not a JSON object.", result.second));
                 } else {
-                    JsonObject newEntityJson = new JsonParser().parse(content).getAsJsonObject();
-                    future.set(Pair.create(newEntityJson, result));
+                    future.set(Pair.create(result.first.getAsJsonObject(), result.second));
                 }
             }
         });
@@ -947,9 +1092,35 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
      * @param features The features used in this request
      */
     private ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> executeGetRecords(final String url, EnumSet<MobileServiceFeatures> features) {
-        final SettableFuture<Pair<JsonElement, ServiceFilterResponse>> future = SettableFuture.create();
+        return executeGetRecords(url, features, new RecordsParser<JsonElement>() {
+            @Override
+            JsonElement parse(ServiceFilterResponse response) throws Exception {
+                JsonElement results = JsonResponseParser.parse(response);
+
+                if (results == null) {
+                    throw new MobileServiceException("The response has no content.", response);
+                }
+
+                return results;
+            }
+        });
+    }
+
+    /**
+     * Retrieves a set of rows from using the specified URL
+     *
+     * @param query    The URL used to retrieve the rows
+     * @param features The features used in this request
+     * @param parser   The parser of the response, run in the background
+     */
+    private <T> ListenableFuture<Pair<T, ServiceFilterResponse>> executeGetRecords(final String url, EnumSet<MobileServiceFeatures> features,
+                                                                                  final RecordsParser<T> parser) {
+        final SettableFuture<Pair<T, ServiceFilterResponse>> future = SettableFuture.create();
+
+        ServiceFilterRequestImpl request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
+        request.setStreamingResponse(true);
+        request.setPriority(mRequestPriority);
 
-        ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpGet(url), mClient.getAndroidHttpClientFactory());
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
         if (featuresHeader != null) {
             request.addHeader(MobileServiceHttpClient.X_ZUMO_FEATURES, featuresHeader);
@@ -958,22 +1129,18 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         MobileServiceConnection conn = mClient.createConnection();
         // Create AsyncTask to execute the request and parse the results
         new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException == null && response != null) {
-                    JsonElement results = null;
+            private T mResults;
 
-                    try {
-                        // Parse the results using the given Entity class
-                        String content = response.getContent();
-                        JsonElement json = new JsonParser().parse(content);
-
-                        results = json;
+            @Override
+            protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+                // Parse the results directly from the response stream
+                mResults = parser.parse(response);
+            }
 
-                        future.set(Pair.create(results, response));
-                    } catch (Exception e) {
-                        future.setException(new MobileServiceException("Error while retrieving data from response.", e, response));
-                    }
+            @Override
+            protected void onRequestCompleted(ServiceFilterResponse response) {
+                if (mTaskException == null && response != null) {
+                    future.set(Pair.create(mResults, response));
                 } else {
                     future.setException(mTaskException);
                 }
@@ -1047,5 +1214,18 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         return null;
     }
 
+    /**
+     * Parser of the responses that contain table rows
+     */
+    private abstract static class RecordsParser<T> {
+
+        /**
+         * Parses the response content
+         *
+         * @param response The response to parse
+         * @return The parsed content
+         * @throws Exception
+         */
+        abstract T parse(ServiceFilterResponse response) throws Exception;
+    }
 }
-
@@ -29,16 +29,17 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.table.query.ExecutableQuery;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityMetadata;
 import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
 
 import java.lang.reflect.Field;
@@ -69,7 +70,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         mInternalTable.mFeatures = EnumSet.of(MobileServiceFeatures.TypedTable);
         mClazz = clazz;
 
-        mSystemProperties = getSystemProperties(clazz);
+        mSystemProperties = client.getSerializationContext().getEntityMetadata(clazz).getSystemProperties();
         mInternalTable.setSystemProperties(mSystemProperties);
     }
 
@@ -82,42 +83,26 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         this.mInternalTable.setSystemProperties(systemProperties);
     }
 
+    @Override
+    public void setRequestPriority(RequestPriority requestPriority) {
+        super.setRequestPriority(requestPriority);
+        this.mInternalTable.setRequestPriority(requestPriority);
+    }
+
+    @Override
+    public void setRequestCompressionEnabled(Boolean requestCompressionEnabled) {
+        super.setRequestCompressionEnabled(requestCompressionEnabled);
+        this.mInternalTable.setRequestCompressionEnabled(requestCompressionEnabled);
+    }
+
     /**
      * Executes a query to retrieve all the table rows
      *
      * @throws com.microsoft.windowsazure.mobileservices.MobileServiceException
      */
     public ListenableFuture<MobileServiceList<E>> execute() throws MobileServiceException {
-        final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
-        ListenableFuture<JsonElement> internalFuture = mInternalTable.execute();
-        Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
-            @Override
-            public void onFailure(Throwable exc) {
-                future.setException(exc);
-            }
-
-            @Override
-            public void onSuccess(JsonElement result) {
-                try {
-                    if (result.isJsonObject()) {
-                        JsonObject jsonObject = result.getAsJsonObject();
-
-                        int count = jsonObject.get("count").getAsInt();
-                        JsonElement elements = jsonObject.get("results");
-
-                        List<E> list = parseResults(elements);
-                        future.set(new MobileServiceList<E>(list, count));
-                    } else {
-                        List<E> list = parseResults(result);
-                        future.set(new MobileServiceList<E>(list, -1));
-                    }
-                } catch (Exception e) {
-                    future.setException(e);
-                }
-            }
-        });
-
-        return future;
+        // The results are parsed directly from the response stream
+        return mInternalTable.executeTyped(mInternalTable.where(), mClazz);
     }
 
     /**
@@ -154,21 +139,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @param query The Query instance to execute
      */
     public ListenableFuture<MobileServiceList<E>> execute(Query query) {
-        final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
-        ListenableFuture<JsonElement> internalFuture = mInternalTable.execute(query);
-        Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
-            @Override
-            public void onFailure(Throwable exc) {
-                future.setException(exc);
-            }
-
-            @Override
-            public void onSuccess(JsonElement result) {
-                processQueryResults(result, future);
-            }
-        });
-
-        return future;
+        return processQueryResults(mInternalTable.executeTyped(query, mClazz));
     }
 
     /**
@@ -177,65 +148,39 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @param nextLink The next link with the page information
      */
     public ListenableFuture<MobileServiceList<E>> execute(String nextLink) {
-        final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
-        ListenableFuture<JsonElement> internalFuture = mInternalTable.execute(nextLink);
-        Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
-            @Override
-            public void onFailure(Throwable exc) {
-                future.setException(exc);
-            }
-
-            @Override
-            public void onSuccess(JsonElement result) {
-                processQueryResults(result, future);
-            }
-        });
-
-        return future;
+        return processQueryResults(mInternalTable.executeTyped(nextLink, mClazz));
     }
 
     /**
      * Process the Results of the Query
      *
-     * @param result The Json element with the information
-     * @param future The future with the callbacks
+     * @param internalFuture The future with the entities parsed from the
+     *                       response
+     * @return A ListenableFuture with the entities and their total count
      */
-    private void processQueryResults(JsonElement result, SettableFuture<MobileServiceList<E>> future) {
-        try {
-            if (result.isJsonObject()) {
-                JsonObject jsonObject = result.getAsJsonObject();
-
-                int count = 0;
-                String nextLink = null;
-
-                if (jsonObject.has("count")) {
-                    count = jsonObject.get("count").getAsInt();
-                }
-
-                if (jsonObject.has("nextLink")) {
-                    nextLink = jsonObject.get("nextLink").getAsString();
-                }
-
-                JsonElement elements = jsonObject.get("results");
-
-                List<E> list = parseResults(elements);
+    private ListenableFuture<MobileServiceList<E>> processQueryResults(ListenableFuture<MobileServiceList<E>> internalFuture) {
+        final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
 
-                MobileServiceList<E> futureResult;
+        Futures.addCallback(internalFuture, new FutureCallback<MobileServiceList<E>>() {
+            @Override
+            public void onFailure(Throwable exc) {
+                future.setException(exc);
+            }
 
-                if (nextLink != null){
-                    futureResult = new MobileServiceList<E>(list, count, nextLink);
+            @Override
+            public void onSuccess(MobileServiceList<E> result) {
+                if (result.getTotalCount() >= 0) {
+                    future.set(result);
+                } else if (result.getNextLink() != null) {
+                    // Paged results do not include the total count
+                    future.set(new MobileServiceList<E>(result, 0, result.getNextLink()));
                 } else {
-                    futureResult = new MobileServiceList<E>(list, count);
+                    future.set(new MobileServiceList<E>(result, result.size()));
                 }
-
-                future.set(futureResult);
-            } else {
-                List<E> list = parseResults(result);
-                future.set(new MobileServiceList<E>(list, list.size()));
             }
-        } catch (Exception e) {
-            future.setException(e);
-        }
+        });
+
+        return future;
     }
 
     /**
@@ -492,15 +437,15 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         final SettableFuture<E> future = SettableFuture.create();
         JsonObject json = null;
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = mClient.getSerializationContext().toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
         }
 
-        Class<?> idClazz = getIdPropertyClass(element.getClass());
+        JsonEntityMetadata metadata = mClient.getSerializationContext().getEntityMetadata(element.getClass());
 
-        if (idClazz != null && !isIntegerClass(idClazz)) {
+        if (metadata.getIdPropertyClass() != null && !metadata.hasIntegerId()) {
             json = removeSystemProperties(json);
         }
 
@@ -599,7 +544,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         JsonObject json = null;
 
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = mClient.getSerializationContext().toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -695,7 +640,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         JsonObject json = null;
 
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = mClient.getSerializationContext().toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -793,7 +738,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
         JsonObject json = null;
 
         try {
-            json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+            json = mClient.getSerializationContext().toJsonTree(element).getAsJsonObject();
         } catch (IllegalArgumentException e) {
             future.setException(e);
             return future;
@@ -852,8 +797,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @return List of entities
      */
     private List<E> parseResults(JsonElement results) {
-        Gson gson = mClient.getGsonBuilder().create();
-        return JsonEntityParser.parseResults(results, gson, mClazz);
+        return JsonEntityParser.parseResults(results, mClient.getSerializationContext(), mClazz);
     }
 
     /**
@@ -866,8 +810,7 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      */
     private void copyFields(Object source, Object target) throws IllegalArgumentException, IllegalAccessException {
         if (source != null && target != null) {
-            for (Field field : source.getClass().getDeclaredFields()) {
-                field.setAccessible(true);
+            for (Field field : mClient.getSerializationContext().getEntityMetadata(source.getClass()).getDeclaredFields()) {
                 field.set(target, field.get(source));
             }
         }
@@ -26,6 +26,7 @@ package com.microsoft.windowsazure.mobileservices.table;
 import android.net.Uri;
 import android.util.Pair;
 
+import com.google.common.base.Predicate;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -42,9 +43,11 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonObjects;
 
 import org.apache.http.client.methods.HttpDelete;
 
@@ -121,6 +124,17 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
      */
     protected EnumSet<MobileServiceFeatures> mFeatures = EnumSet.noneOf(MobileServiceFeatures.class);
 
+    /**
+     * The priority of the requests made by this table
+     */
+    protected RequestPriority mRequestPriority = RequestPriority.Interactive;
+
+    /**
+     * Indicates if the content of the requests made by this table is
+     * compressed, or null to use the client request compression
+     */
+    protected Boolean mRequestCompressionEnabled;
+
     /**
      * Constructor
      *
@@ -151,24 +165,15 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
      * @return The instance with the system properties removed.
      */
     protected static JsonObject removeSystemProperties(JsonObject instance) {
-        boolean haveCloned = false;
-
-        for (Entry<String, JsonElement> property : instance.entrySet()) {
-            if (SystemPropertyNameToEnum.containsKey(property.getKey())) {
-                // We don't want to alter the original JsonObject passed in by
-                // the caller
-                // so if we find a system property to remove, we have to clone
-                // first
-                if (!haveCloned) {
-                    instance = (JsonObject) new JsonParser().parse(instance.toString());
-                    haveCloned = true;
-                }
-
-                instance.remove(property.getKey());
+        // We don't want to alter the original JsonObject passed in by the
+        // caller, so a copy is returned if there are system
+        // properties to remove
+        return JsonObjects.withoutProperties(instance, new Predicate<String>() {
+            @Override
+            public boolean apply(String propertyName) {
+                return SystemPropertyNameToEnum.containsKey(propertyName);
             }
-        }
-
-        return instance;
+        });
     }
 
     /**
@@ -392,6 +397,49 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
         mFeatures.add(feature);
     }
 
+    /**
+     * Returns the priority of the requests made by this table
+     */
+    public RequestPriority getRequestPriority() {
+        return mRequestPriority;
+    }
+
+    /**
+     * Sets the priority of the requests made by this table. Tables used by
+     * the application default to RequestPriority.Interactive, so they are
+     * executed before the requests queued by the sync context.
+     *
+     * @param requestPriority The priority of the requests
+     */
+    public void setRequestPriority(RequestPriority requestPriority) {
+        if (requestPriority == null) {
+            throw new IllegalArgumentException("requestPriority cannot be null");
+        }
+
+        mRequestPriority = requestPriority;
+    }
+
+    /**
+     * Indicates if the content of the requests made by this table, such as
+     * inserts and updates, is compressed, or returns null if the client
+     * request compression is used
+     */
+    public Boolean getRequestCompressionEnabled() {
+        return mRequestCompressionEnabled;
+    }
+
+    /**
+     * Sets whether the content of the requests made by this table, such as
+     * inserts and updates, is compressed
+     *
+     * @param requestCompressionEnabled True to compress the request content, false
+     *                                  to send it uncompressed, or null to use the
+     *                                  client request compression
+     */
+    public void setRequestCompressionEnabled(Boolean requestCompressionEnabled) {
+        mRequestCompressionEnabled = requestCompressionEnabled;
+    }
+
     /**
      * Returns the name of the represented table
      */
@@ -536,19 +584,29 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
 
         final SettableFuture<Void> future = SettableFuture.create();
 
-        delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory());
+        delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory(), mClient.getHttpConnectionPool());
+        delete.setPriority(mRequestPriority);
+
         if (!features.isEmpty()) {
             delete.addHeader(MobileServiceHttpClient.X_ZUMO_FEATURES, MobileServiceFeatures.featuresToString(features));
         }
 
         // Create AsyncTask to execute the request
         new RequestAsyncTask(delete, mClient.createConnection()) {
+            private Throwable mException;
+
+            @Override
+            protected void onRequestFailed(MobileServiceException exception) {
+                // Parse the conflicting entity, if any, in the background
+                mException = transformHttpException(exception);
+            }
+
             @Override
-            protected void onPostExecute(ServiceFilterResponse result) {
+            protected void onRequestCompleted(ServiceFilterResponse result) {
                 if (mTaskException == null) {
                     future.set(null);
                 } else {
-                    future.setException(transformHttpException(mTaskException));
+                    future.setException(mException);
                 }
             }
         }.executeTask();
@@ -596,7 +654,7 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
      */
     protected JsonObject patchOriginalEntityWithResponseEntity(JsonObject originalEntity, JsonObject newEntity) {
         // Patch the object to return with the new values
-        JsonObject patchedEntityJson = (JsonObject) new JsonParser().parse(originalEntity.toString());
+        JsonObject patchedEntityJson = JsonObjects.copy(originalEntity);
 
         for (Entry<String, JsonElement> entry : newEntity.entrySet()) {
             patchedEntityJson.add(entry.getKey(), entry.getValue());
@@ -624,7 +682,7 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
             if (elementOrId instanceof JsonObject) {
                 jsonObject = (JsonObject) elementOrId;
             } else {
-                jsonObject = mClient.getGsonBuilder().create().toJsonTree(elementOrId).getAsJsonObject();
+                jsonObject = mClient.getSerializationContext().toJsonTree(elementOrId).getAsJsonObject();
             }
 
             updateIdProperty(jsonObject);
@@ -713,7 +771,7 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
         } else if (elementOrId instanceof JsonObject) {
             validateId((JsonObject) elementOrId);
         } else {
-            validateId(mClient.getGsonBuilder().create().toJsonTree(elementOrId).getAsJsonObject());
+            validateId(mClient.getSerializationContext().toJsonTree(elementOrId).getAsJsonObject());
         }
     }
 
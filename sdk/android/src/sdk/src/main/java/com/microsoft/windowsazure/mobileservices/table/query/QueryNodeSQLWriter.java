@@ -25,6 +25,8 @@ package com.microsoft.windowsazure.mobileservices.table.query;
 
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -34,11 +36,29 @@ import java.util.List;
 public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     private StringBuilder mBuilder;
 
+    /**
+     * The values of the "?" placeholders written for the constants, or null
+     * if the constants are written as literals
+     */
+    private List<Object> mArguments;
+
     /**
      * Constructor for QueryNodeSQLWriter
      */
     QueryNodeSQLWriter() {
+        this(null);
+    }
+
+    /**
+     * Constructor for QueryNodeSQLWriter
+     *
+     * @param arguments The list the values of the constants are added to, in
+     *                  order, writing a "?" placeholder for each of them; or
+     *                  null to write the constants as literals
+     */
+    QueryNodeSQLWriter(List<Object> arguments) {
         this.mBuilder = new StringBuilder();
+        this.mArguments = arguments;
     }
 
     private static String getSQLOperator(UnaryOperatorNode node) {
@@ -335,7 +355,10 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         Object value = node.getValue();
         String constant = value != null ? value.toString() : "NULL";
 
-        if (value instanceof String) {
+        if (value != null && this.mArguments != null && (value instanceof String || value instanceof Date || value instanceof Boolean
+                || value instanceof Number)) {
+            constant = parameterize(value);
+        } else if (value instanceof String) {
             constant = process((String) value);
         } else if (value instanceof Date) {
             constant = process((Date) value);
@@ -348,6 +371,32 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         return node;
     }
 
+    /**
+     * Adds a constant value to the arguments, and returns its placeholder.
+     * Numbers and booleans are added as Long or Double values, to be bound
+     * with their type, so the column affinity applies as it does to literals.
+     *
+     * @param value The constant value
+     */
+    private String parameterize(Object value) {
+        if (value instanceof String) {
+            this.mArguments.add(value);
+        } else if (value instanceof Date) {
+            this.mArguments.add(DateSerializer.serialize((Date) value));
+        } else if (value instanceof Boolean) {
+            this.mArguments.add((Boolean) value ? 1L : 0L);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            this.mArguments.add(((Number) value).longValue());
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            this.mArguments.add(((BigInteger) value).longValue());
+        } else {
+            // SQLite reads integer literals out of the 64-bit range as reals
+            this.mArguments.add(((Number) value).doubleValue());
+        }
+
+        return "?";
+    }
+
     @Override
     public QueryNode visit(FieldNode node) {
         this.mBuilder.append(node.getFieldName());
@@ -398,21 +447,58 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     public QueryNode visit(FunctionCallNode node) {
         String format = getSQLOperatorFormat(node);
 
-        Object[] args = new Object[node.getArguments().size()];
         List<QueryNode> arguments = node.getArguments();
+        String[] args = new String[arguments.size()];
+        List<List<Object>> argsArguments = new ArrayList<List<Object>>(arguments.size());
 
         for (int index = 0; index < arguments.size(); index++) {
             QueryNode argument = arguments.get(index);
 
-            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter();
+            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter(this.mArguments != null ? new ArrayList<Object>() : null);
 
             argument.accept(internalVisitor);
 
             args[index] = internalVisitor.getBuilder().toString();
+            argsArguments.add(internalVisitor.mArguments);
         }
 
-        this.mBuilder.append(String.format(format, args));
+        appendFormat(format, args, argsArguments);
 
         return node;
     }
-}
\ No newline at end of file
+
+    /**
+     * Appends a format with "%n$s" argument references and "%%" escapes.
+     * Arguments can be referenced several times and in any order, so the
+     * values of their placeholders are added each time they are written.
+     *
+     * @param format        The format
+     * @param args          The SQL of the arguments
+     * @param argsArguments The values of the placeholders of each argument
+     */
+    private void appendFormat(String format, String[] args, List<List<Object>> argsArguments) {
+        int length = format.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = format.charAt(i);
+
+            if (c != '%' || i + 1 >= length) {
+                this.mBuilder.append(c);
+            } else if (format.charAt(i + 1) == '%') {
+                this.mBuilder.append('%');
+                i++;
+            } else {
+                int end = format.indexOf("$s", i);
+                int index = Integer.parseInt(format.substring(i + 1, end)) - 1;
+
+                this.mBuilder.append(args[index]);
+
+                if (this.mArguments != null) {
+                    this.mArguments.addAll(argsArguments.get(index));
+                }
+
+                i = end + 1;
+            }
+        }
+    }
+}
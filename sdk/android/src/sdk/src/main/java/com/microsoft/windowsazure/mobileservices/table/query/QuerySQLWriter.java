@@ -27,6 +27,7 @@ import android.util.Pair;
 
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 
+import java.util.List;
 import java.util.Locale;
 
 public class QuerySQLWriter {
@@ -72,6 +73,30 @@ public class QuerySQLWriter {
         return sqlWriter.getBuilder().toString();
     }
 
+    /**
+     * Returns the SQL string representation of the query's where clause, with
+     * a "?" placeholder for each constant value instead of a literal, so the
+     * same statement is used for any values
+     *
+     * @param query         The query
+     * @param selectionArgs The list the values of the placeholders are added
+     *                      to, in order: String, Long or Double values, to be
+     *                      bound with their type
+     */
+    public static String getWhereClause(Query query, List<Object> selectionArgs) throws MobileServiceException {
+        if (selectionArgs == null) {
+            throw new IllegalArgumentException("selectionArgs cannot be null");
+        }
+
+        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter(selectionArgs);
+
+        if (query != null && query.getQueryNode() != null) {
+            query.getQueryNode().accept(sqlWriter);
+        }
+
+        return sqlWriter.getBuilder().toString();
+    }
+
     /**
      * Returns the SQL string representation of the query's order by clause
      */
@@ -113,7 +138,9 @@ public class QuerySQLWriter {
         int offset = query != null ? (query.getSkip() >= 0 ? query.getSkip() : 0) : 0;
 
         if (limit > 0 || offset > 0) {
-            result = String.valueOf(offset) + "," + String.valueOf(limit);
+            // A limit of 0 returns no rows, so a query that only skips rows
+            // uses the largest limit instead
+            result = String.valueOf(offset) + "," + (limit > 0 ? String.valueOf(limit) : String.valueOf(Long.MAX_VALUE));
         }
 
         return result;
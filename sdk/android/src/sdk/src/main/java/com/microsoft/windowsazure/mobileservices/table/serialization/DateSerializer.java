@@ -23,8 +23,6 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.serialization;
 
-import android.annotation.SuppressLint;
-
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -35,72 +33,26 @@ import com.google.gson.JsonSerializer;
 
 import java.lang.reflect.Type;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Date Serializer/Deserializer to make Mobile Services and Java dates
  * compatible
  */
-@SuppressLint("SimpleDateFormat")
 public class DateSerializer implements JsonSerializer<Date>, JsonDeserializer<Date> {
 
     /**
      * Deserializes an ISO-8601 formatted date
      */
     public static Date deserialize(String strVal) throws ParseException {
-
-        String s = strVal;
-
-        // Parse the well-formatted date string
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSSZ");
-        dateFormat.setTimeZone(TimeZone.getDefault());
-
-        try {
-
-            String[] splittedByDot = strVal.split("\\.");
-
-            if (splittedByDot.length == 1) {
-                //We need to add the miliseconds
-                s = s.replace("Z", ".000Z");
-            } else {
-
-                String miliseconds = splittedByDot[splittedByDot.length - 1].replace("Z", "");
-
-                if (miliseconds.length() == 1) {
-                    miliseconds = "00" + miliseconds;
-                } else if (miliseconds.length() == 2) {
-                    miliseconds = "0" + miliseconds;
-                }
-
-                s = splittedByDot[0] + "." + miliseconds + "Z";
-            }
-
-            // Change Z to +0000 to adapt the string to a format
-            // that can be parsed in Java
-            s = s.replace("Z", "+0000");
-
-        } catch (IndexOutOfBoundsException e) {
-            throw new JsonParseException("Invalid length");
-        }
-
-        Date date = dateFormat.parse(s);
-
-        return date;
+        return new Date(Iso8601DateCodec.parse(strVal));
     }
 
     /**
      * Serializes a Date object to an ISO-8601 formatted date string
      */
     public static String serialize(Date date) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSS'Z'", Locale.getDefault());
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        String formatted = dateFormat.format(date);
-
-        return formatted;
+        return Iso8601DateCodec.format(date.getTime());
     }
 
     /**
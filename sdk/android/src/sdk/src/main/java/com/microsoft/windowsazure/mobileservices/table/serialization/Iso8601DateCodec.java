@@ -0,0 +1,404 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * Iso8601DateCodec.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import java.text.ParseException;
+
+/**
+ * Parses and formats ISO-8601 dates with millisecond precision, such as
+ * "2013-01-22T14:30:40.000Z".
+ * <p/>
+ * Unlike SimpleDateFormat, the codec has no state, so it is thread-safe and
+ * allocates nothing but the formatted strings. Dates use the proleptic
+ * Gregorian calendar, as ISO-8601 requires.
+ */
+public final class Iso8601DateCodec {
+
+    /**
+     * Milliseconds in a second
+     */
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    /**
+     * Milliseconds in a minute
+     */
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+
+    /**
+     * Milliseconds in an hour
+     */
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+
+    /**
+     * Milliseconds in a day
+     */
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * Days in a 400 year cycle of the Gregorian calendar
+     */
+    private static final long DAYS_PER_CYCLE = 146097L;
+
+    /**
+     * Days from 0000-03-01 to 1970-01-01
+     */
+    private static final long DAYS_0000_TO_1970 = 719468L;
+
+    /**
+     * Length of a formatted date, for years from 0000 to 9999
+     */
+    private static final int FORMATTED_LENGTH = 24;
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private Iso8601DateCodec() {
+    }
+
+    /**
+     * Parses an ISO-8601 date and time, such as "2013-01-22T14:30:40.000Z"
+     * or "2013-01-22T10:30:40-04:00". Seconds and fractions of a second are
+     * optional, digits beyond milliseconds are ignored, and a date without a
+     * time zone designator is in UTC.
+     *
+     * @param value The formatted date
+     * @return The milliseconds since January 1, 1970 UTC
+     * @throws java.text.ParseException If the value is not an ISO-8601 date
+     */
+    public static long parse(String value) throws ParseException {
+        if (value == null) {
+            throw new ParseException("The date cannot be null", 0);
+        }
+
+        int length = value.length();
+        int index = 0;
+
+        boolean negativeYear = false;
+
+        if (index < length && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+            negativeYear = value.charAt(index) == '-';
+            index++;
+        }
+
+        int yearEnd = index;
+
+        while (yearEnd < length && isDigit(value.charAt(yearEnd))) {
+            yearEnd++;
+        }
+
+        if (yearEnd - index < 4 || yearEnd - index > 9) {
+            throw new ParseException("Invalid year in date: " + value, index);
+        }
+
+        long year = parseDigits(value, index, yearEnd - index);
+        year = negativeYear ? -year : year;
+        index = yearEnd;
+
+        index = expect(value, index, '-');
+        int month = parseDigits(value, index, 2);
+
+        if (month < 1 || month > 12) {
+            throw new ParseException("Invalid month in date: " + value, index);
+        }
+
+        index += 2;
+        index = expect(value, index, '-');
+        int day = parseDigits(value, index, 2);
+
+        if (day < 1 || day > getDaysInMonth(year, month)) {
+            throw new ParseException("Invalid day in date: " + value, index);
+        }
+
+        index += 2;
+
+        if (index >= length || (value.charAt(index) != 'T' && value.charAt(index) != 't' && value.charAt(index) != ' ')) {
+            throw new ParseException("Missing time in date: " + value, index);
+        }
+
+        index++;
+
+        int hour = parseDigits(value, index, 2);
+        index += 2;
+        index = expect(value, index, ':');
+        int minute = parseDigits(value, index, 2);
+        index += 2;
+        int second = 0;
+        int millis = 0;
+
+        if (index < length && value.charAt(index) == ':') {
+            index++;
+            second = parseDigits(value, index, 2);
+            index += 2;
+
+            if (index < length && (value.charAt(index) == '.' || value.charAt(index) == ',')) {
+                index++;
+                int fractionStart = index;
+
+                while (index < length && isDigit(value.charAt(index))) {
+                    // Only the first three digits are significant
+                    if (index - fractionStart < 3) {
+                        millis = millis * 10 + (value.charAt(index) - '0');
+                    }
+
+                    index++;
+                }
+
+                if (index == fractionStart) {
+                    throw new ParseException("Invalid fraction of second in date: " + value, index);
+                }
+
+                for (int digits = index - fractionStart; digits < 3; digits++) {
+                    millis *= 10;
+                }
+            }
+        }
+
+        // A leap second is accepted and rolls over to the next minute
+        if (hour > 23 || minute > 59 || second > 60) {
+            throw new ParseException("Invalid time in date: " + value, index);
+        }
+
+        long offset = 0;
+
+        if (index < length) {
+            char designator = value.charAt(index);
+
+            if (designator == 'Z' || designator == 'z') {
+                index++;
+            } else if (designator == '+' || designator == '-') {
+                index++;
+                int offsetHours = parseDigits(value, index, 2);
+                index += 2;
+                int offsetMinutes = 0;
+
+                if (index < length) {
+                    if (value.charAt(index) == ':') {
+                        index++;
+                    }
+
+                    offsetMinutes = parseDigits(value, index, 2);
+                    index += 2;
+                }
+
+                if (offsetHours > 23 || offsetMinutes > 59) {
+                    throw new ParseException("Invalid time zone in date: " + value, index);
+                }
+
+                offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+                offset = designator == '-' ? -offset : offset;
+            }
+        }
+
+        if (index != length) {
+            throw new ParseException("Unexpected characters in date: " + value, index);
+        }
+
+        return getDaysFromEpoch(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis
+                - offset;
+    }
+
+    /**
+     * Formats a date as ISO-8601 in UTC, such as "2013-01-22T14:30:40.000Z"
+     *
+     * @param time The milliseconds since January 1, 1970 UTC
+     * @return The formatted date
+     */
+    public static String format(long time) {
+        StringBuilder builder = new StringBuilder(FORMATTED_LENGTH);
+        format(time, builder);
+
+        return builder.toString();
+    }
+
+    /**
+     * Appends a date formatted as ISO-8601 in UTC, such as
+     * "2013-01-22T14:30:40.000Z"
+     *
+     * @param time    The milliseconds since January 1, 1970 UTC
+     * @param builder The StringBuilder the date is appended to
+     */
+    public static void format(long time, StringBuilder builder) {
+        long days = floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int) (time - days * MILLIS_PER_DAY);
+
+        // Converts the days since the epoch to a civil date, using years
+        // that start on March 1 so leap days are at the end of the year
+        long shiftedDays = days + DAYS_0000_TO_1970;
+        long cycle = floorDiv(shiftedDays, DAYS_PER_CYCLE);
+        long dayOfCycle = shiftedDays - cycle * DAYS_PER_CYCLE;
+        long yearOfCycle = (dayOfCycle - dayOfCycle / 1460 + dayOfCycle / 36524 - dayOfCycle / 146096) / 365;
+        long dayOfYear = dayOfCycle - (365 * yearOfCycle + yearOfCycle / 4 - yearOfCycle / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfCycle + cycle * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0) {
+            builder.append('-');
+            year = -year;
+        }
+
+        if (year > 9999) {
+            builder.append(year);
+        } else {
+            appendDigits(builder, (int) year, 4);
+        }
+
+        builder.append('-');
+        appendDigits(builder, month, 2);
+        builder.append('-');
+        appendDigits(builder, day, 2);
+        builder.append('T');
+        appendDigits(builder, (int) (millisOfDay / MILLIS_PER_HOUR), 2);
+        builder.append(':');
+        appendDigits(builder, (int) (millisOfDay % MILLIS_PER_HOUR / MILLIS_PER_MINUTE), 2);
+        builder.append(':');
+        appendDigits(builder, (int) (millisOfDay % MILLIS_PER_MINUTE / MILLIS_PER_SECOND), 2);
+        builder.append('.');
+        appendDigits(builder, (int) (millisOfDay % MILLIS_PER_SECOND), 3);
+        builder.append('Z');
+    }
+
+    /**
+     * Returns the days from January 1, 1970 to a date
+     *
+     * @param year  The year
+     * @param month The month, from 1 to 12
+     * @param day   The day of the month
+     */
+    private static long getDaysFromEpoch(long year, int month, int day) {
+        // Years start on March 1 so leap days are at the end of the year
+        long shiftedYear = month <= 2 ? year - 1 : year;
+        long cycle = floorDiv(shiftedYear, 400);
+        long yearOfCycle = shiftedYear - cycle * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfCycle = yearOfCycle * 365 + yearOfCycle / 4 - yearOfCycle / 100 + dayOfYear;
+
+        return cycle * DAYS_PER_CYCLE + dayOfCycle - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Returns the number of days in a month
+     *
+     * @param year  The year
+     * @param month The month, from 1 to 12
+     */
+    private static int getDaysInMonth(long year, int month) {
+        switch (month) {
+            case 2:
+                boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Checks that a character is at a position of a value
+     *
+     * @param value    The value
+     * @param index    The position
+     * @param expected The expected character
+     * @return The position after the character
+     * @throws java.text.ParseException If the character is not found
+     */
+    private static int expect(String value, int index, char expected) throws ParseException {
+        if (index >= value.length() || value.charAt(index) != expected) {
+            throw new ParseException("Expected '" + expected + "' in date: " + value, index);
+        }
+
+        return index + 1;
+    }
+
+    /**
+     * Parses a number of digits at a position of a value
+     *
+     * @param value The value
+     * @param index The position of the digits
+     * @param count The number of digits
+     * @throws java.text.ParseException If the digits are not found
+     */
+    private static int parseDigits(String value, int index, int count) throws ParseException {
+        int end = index + count;
+
+        if (end > value.length()) {
+            throw new ParseException("Invalid length of date: " + value, index);
+        }
+
+        int result = 0;
+
+        for (int i = index; i < end; i++) {
+            char c = value.charAt(i);
+
+            if (!isDigit(c)) {
+                throw new ParseException("Expected a digit in date: " + value, i);
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if a character is an ASCII digit
+     *
+     * @param c The character
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Appends a number padded with zeros to a number of digits
+     *
+     * @param builder The StringBuilder the number is appended to
+     * @param value   The number, which is not negative
+     * @param digits  The number of digits
+     */
+    private static void appendDigits(StringBuilder builder, int value, int digits) {
+        for (int divisor = digits == 4 ? 1000 : digits == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+            builder.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Returns the largest value that is less than or equal to the quotient
+     * of two numbers
+     *
+     * @param dividend The dividend
+     * @param divisor  The divisor, which is positive
+     */
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+
+        return dividend % divisor < 0 ? quotient - 1 : quotient;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntity.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity class used with MobileServiceTable or
+ * MobileServiceSyncTable, so the entity processor generates its
+ * JsonEntityAdapter at compile time.
+ * <p/>
+ * The generated adapter reads and writes the serialized fields of the class
+ * directly, using their SerializedName annotation or their field name, and
+ * never calls getters or setters. Private and final fields are accessed
+ * using reflection. Field values are written with the adapter of the
+ * declared field type, not of their runtime type.
+ * <p/>
+ * The generated adapter only reproduces the default GsonBuilder of the
+ * client. Once the GsonBuilder is customised, by registerSerializer,
+ * registerDeserializer, setGsonBuilder or changes made to the builder
+ * returned by getGsonBuilder, Gson's own adapters are used instead.
+ * <p/>
+ * The entity processor is added to the application as a provided
+ * dependency. Generated adapters are found by name, so applications that use
+ * ProGuard must keep the classes ending in JsonEntityAdapter.ADAPTER_SUFFIX.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JsonEntity {
+}
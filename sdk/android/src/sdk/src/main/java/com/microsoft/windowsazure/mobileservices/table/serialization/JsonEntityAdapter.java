@@ -0,0 +1,96 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntityAdapter.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Serialization metadata and type adapter of an entity class, generated at
+ * compile time for the classes annotated with JsonEntity. The generated
+ * class is named after the binary name of the entity class followed by
+ * ADAPTER_SUFFIX, and must have a public constructor with no parameters.
+ */
+public interface JsonEntityAdapter<E> {
+
+    /**
+     * Suffix of the name of the generated adapter classes
+     */
+    public static final String ADAPTER_SUFFIX = "_JsonEntityAdapter";
+
+    /**
+     * Returns the entity class
+     */
+    public Class<E> getEntityClass();
+
+    /**
+     * Returns the name of the id property, or an empty string if the class
+     * has none
+     */
+    public String getIdPropertyName();
+
+    /**
+     * Returns the class of the id property, or null if the class has none
+     */
+    public Class<?> getIdPropertyClass();
+
+    /**
+     * Returns the number of id properties declared in the class
+     */
+    public int getIdPropertyCount();
+
+    /**
+     * Returns the id of an entity
+     *
+     * @param entity The entity
+     * @return The id, or null if the class has no id property
+     */
+    public Object getId(E entity);
+
+    /**
+     * Returns the system properties declared in the class
+     */
+    public EnumSet<MobileServiceSystemProperty> getSystemProperties();
+
+    /**
+     * Returns the local store columns of the serialized properties, by name,
+     * to use with MobileServiceLocalStore.defineTable
+     */
+    public Map<String, ColumnDataType> getColumns();
+
+    /**
+     * Creates the type adapter of the entity class
+     *
+     * @param gson The Gson instance that provides the adapters of the field
+     *             types
+     * @return The type adapter, or null if the fields of the class are not
+     * accessible and Gson's reflective adapter must be used
+     */
+    public TypeAdapter<E> createTypeAdapter(Gson gson);
+}
@@ -0,0 +1,300 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntityMetadata.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.annotations.SerializedName;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serialization metadata of an entity class, taken from its generated
+ * JsonEntityAdapter or read once from its declared fields
+ */
+public class JsonEntityMetadata {
+
+    /**
+     * The string prefix used to indicate system properties
+     */
+    private static final String SYSTEM_PROPERTY_PREFIX = "__";
+
+    /**
+     * The entity class
+     */
+    private Class<?> mClass;
+
+    /**
+     * The adapter generated for the class, or null if it has none
+     */
+    private JsonEntityAdapter<?> mGeneratedAdapter;
+
+    /**
+     * The fields declared in the class, made accessible, or null if they
+     * have not been read
+     */
+    private volatile Field[] mDeclaredFields;
+
+    /**
+     * The name of the id property, or an empty string if the class has none
+     */
+    private String mIdPropertyName = "";
+
+    /**
+     * The class of the id property, or null if the class has none
+     */
+    private Class<?> mIdPropertyClass;
+
+    /**
+     * The number of id properties declared in the class
+     */
+    private int mIdPropertyCount;
+
+    /**
+     * The system properties declared in the class
+     */
+    private EnumSet<MobileServiceSystemProperty> mSystemProperties = EnumSet.noneOf(MobileServiceSystemProperty.class);
+
+    /**
+     * The local store columns of the serialized properties, or null if they
+     * have not been read
+     */
+    private volatile Map<String, ColumnDataType> mColumns;
+
+    /**
+     * Constructor for JsonEntityMetadata, reading the declared fields of the
+     * class
+     *
+     * @param clazz The entity class
+     */
+    public JsonEntityMetadata(Class<?> clazz) {
+        if (clazz == null) {
+            throw new IllegalArgumentException("clazz cannot be null");
+        }
+
+        mClass = clazz;
+
+        for (Field field : clazz.getDeclaredFields()) {
+            SerializedName serializedName = field.getAnnotation(SerializedName.class);
+            String name = serializedName != null ? serializedName.value() : field.getName();
+
+            if (name.equalsIgnoreCase("id")) {
+                if (mIdPropertyCount == 0) {
+                    mIdPropertyName = name;
+                    mIdPropertyClass = field.getType();
+                }
+
+                mIdPropertyCount++;
+            } else {
+                MobileServiceSystemProperty systemProperty = getSystemProperty(name);
+
+                if (systemProperty != null) {
+                    mSystemProperties.add(systemProperty);
+                }
+            }
+        }
+
+        // System properties are only supported with string ids
+        if (mIdPropertyClass == null || isIntegerClass(mIdPropertyClass)) {
+            mSystemProperties.clear();
+        }
+    }
+
+    /**
+     * Constructor for JsonEntityMetadata, using the adapter generated for the
+     * class
+     *
+     * @param generatedAdapter The adapter generated for the entity class
+     */
+    public JsonEntityMetadata(JsonEntityAdapter<?> generatedAdapter) {
+        if (generatedAdapter == null) {
+            throw new IllegalArgumentException("generatedAdapter cannot be null");
+        }
+
+        mClass = generatedAdapter.getEntityClass();
+        mGeneratedAdapter = generatedAdapter;
+        mIdPropertyName = generatedAdapter.getIdPropertyName();
+        mIdPropertyClass = generatedAdapter.getIdPropertyClass();
+        mIdPropertyCount = generatedAdapter.getIdPropertyCount();
+        mSystemProperties = generatedAdapter.getSystemProperties();
+        mColumns = Collections.unmodifiableMap(generatedAdapter.getColumns());
+    }
+
+    /**
+     * Returns the adapter generated for the class, or null if it has none
+     */
+    public JsonEntityAdapter<?> getGeneratedAdapter() {
+        return mGeneratedAdapter;
+    }
+
+    /**
+     * Returns the fields declared in the class, made accessible
+     */
+    public Field[] getDeclaredFields() {
+        Field[] fields = mDeclaredFields;
+
+        if (fields == null) {
+            fields = mClass.getDeclaredFields();
+
+            for (Field field : fields) {
+                field.setAccessible(true);
+            }
+
+            mDeclaredFields = fields;
+        }
+
+        return fields.clone();
+    }
+
+    /**
+     * Returns the name of the id property, or an empty string if the class
+     * has none
+     */
+    public String getIdPropertyName() {
+        return mIdPropertyName;
+    }
+
+    /**
+     * Returns the class of the id property, or null if the class has none
+     */
+    public Class<?> getIdPropertyClass() {
+        return mIdPropertyClass;
+    }
+
+    /**
+     * Returns the number of id properties declared in the class
+     */
+    public int getIdPropertyCount() {
+        return mIdPropertyCount;
+    }
+
+    /**
+     * Indicates if the class has an integer id property
+     */
+    public boolean hasIntegerId() {
+        return mIdPropertyClass != null && isIntegerClass(mIdPropertyClass);
+    }
+
+    /**
+     * Returns the system properties declared in the class
+     */
+    public EnumSet<MobileServiceSystemProperty> getSystemProperties() {
+        return EnumSet.copyOf(mSystemProperties);
+    }
+
+    /**
+     * Returns the local store columns of the serialized properties, by name,
+     * to use with MobileServiceLocalStore.defineTable. The id property is
+     * always named "id".
+     */
+    public Map<String, ColumnDataType> getColumns() {
+        Map<String, ColumnDataType> columns = mColumns;
+
+        if (columns == null) {
+            columns = new LinkedHashMap<String, ColumnDataType>();
+
+            for (Class<?> clazz = mClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+
+                    // Gson does not serialize static and transient fields
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+
+                    SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                    String name = serializedName != null ? serializedName.value() : field.getName();
+
+                    if (name.equalsIgnoreCase("id")) {
+                        name = "id";
+                    }
+
+                    if (!columns.containsKey(name)) {
+                        columns.put(name, getColumnDataType(field.getType()));
+                    }
+                }
+            }
+
+            columns = Collections.unmodifiableMap(columns);
+            mColumns = columns;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Returns the local store column type of a property type
+     *
+     * @param clazz The property type
+     */
+    public static ColumnDataType getColumnDataType(Class<?> clazz) {
+        if (clazz.equals(String.class) || clazz.equals(char.class) || clazz.equals(Character.class)) {
+            return ColumnDataType.String;
+        } else if (clazz.equals(boolean.class) || clazz.equals(Boolean.class)) {
+            return ColumnDataType.Boolean;
+        } else if (isIntegerClass(clazz) || clazz.equals(short.class) || clazz.equals(Short.class) || clazz.equals(byte.class)
+                || clazz.equals(Byte.class)) {
+            return ColumnDataType.Integer;
+        } else if (clazz.equals(double.class) || clazz.equals(Double.class) || clazz.equals(float.class) || clazz.equals(Float.class)) {
+            return ColumnDataType.Real;
+        } else if (Date.class.isAssignableFrom(clazz)) {
+            return ColumnDataType.Date;
+        }
+
+        return ColumnDataType.Other;
+    }
+
+    /**
+     * Returns the system property serialized with a name
+     *
+     * @param name The serialized name
+     * @return The system property, or null if the name is not a system
+     * property
+     */
+    private static MobileServiceSystemProperty getSystemProperty(String name) {
+        for (MobileServiceSystemProperty systemProperty : MobileServiceSystemProperty.values()) {
+            // System property names are compared regardless case
+            if ((SYSTEM_PROPERTY_PREFIX + systemProperty.toString()).equalsIgnoreCase(name)) {
+                return systemProperty;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Indicates if a class is an integer type
+     *
+     * @param clazz The class
+     */
+    private static boolean isIntegerClass(Class<?> clazz) {
+        return clazz.equals(Integer.class) || clazz.equals(Long.class) || clazz.equals(int.class) || clazz.equals(long.class);
+    }
+}
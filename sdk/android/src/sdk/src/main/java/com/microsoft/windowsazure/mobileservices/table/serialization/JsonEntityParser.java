@@ -27,8 +27,17 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.microsoft.windowsazure.mobileservices.MobileServiceList;
+import com.microsoft.windowsazure.mobileservices.http.JsonResponseParser;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
@@ -43,8 +52,111 @@ public class JsonEntityParser {
      * @return List of entities
      */
     public static <E> List<E> parseResults(JsonElement results, Gson gson, Class<E> clazz) {
+        return parseResults(results, gson, clazz, getIdPropertyName(clazz));
+    }
+
+    /**
+     * Parses the JSON object to a typed list, using the cached Gson instance
+     * and entity metadata of a serialization context
+     *
+     * @param results JSON results
+     * @param context Serialization context used for parsing
+     * @param clazz   Target entity class
+     * @return List of entities
+     */
+    public static <E> List<E> parseResults(JsonElement results, MobileServiceSerializationContext context, Class<E> clazz) {
+        return parseResults(results, context.getGson(), clazz, context.getEntityMetadata(clazz).getIdPropertyName());
+    }
+
+    /**
+     * Parses the JSON content of a query response to a typed list. The
+     * content is read as a stream and each entity is created directly from
+     * it, without building a JsonElement tree. The content can be an array of
+     * entities, or an object with the entities in its "results" property and
+     * the total count in its "count" property.
+     *
+     * @param response The query response
+     * @param context  Serialization context used for parsing
+     * @param clazz    Target entity class
+     * @return List of entities, with a total count of -1 if the response does
+     * not include it
+     * @throws java.io.IOException
+     */
+    public static <E> MobileServiceList<E> parseQueryResults(ServiceFilterResponse response, MobileServiceSerializationContext context, Class<E> clazz)
+            throws IOException {
+        Reader contentReader = JsonResponseParser.openContentReader(response);
+
+        if (contentReader == null) {
+            throw new JsonSyntaxException("The response has no content.");
+        }
+
+        JsonEntityReader reader = new JsonEntityReader(contentReader);
+        reader.setLenient(true);
+
+        try {
+            TypeAdapter<E> adapter = context.getEntityTypeAdapter(clazz);
+            List<E> result = new ArrayList<E>();
+            int count = -1;
+
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+
+                    if (name.equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readEntities(reader, adapter, result);
+                    } else if (name.equals("count") && (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING)) {
+                        count = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+
+                reader.endObject();
+            } else {
+                readEntities(reader, adapter, result);
+            }
+
+            return new MobileServiceList<E>(result, count);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads an array of entities
+     *
+     * @param reader  The reader positioned at the array
+     * @param adapter The type adapter of the entities
+     * @param result  The list where the entities are added
+     * @throws java.io.IOException
+     */
+    private static <E> void readEntities(JsonReader reader, TypeAdapter<E> adapter, List<E> result) throws IOException {
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            result.add(adapter.read(reader));
+        }
+
+        reader.endArray();
+    }
+
+    /**
+     * Parses the JSON object to a typed list
+     *
+     * @param results        JSON results
+     * @param gson           Gson object used for parsing
+     * @param clazz          Target entity class
+     * @param idPropertyName The class' id property name
+     * @return List of entities
+     */
+    private static <E> List<E> parseResults(JsonElement results, Gson gson, Class<E> clazz, String idPropertyName) {
         List<E> result = new ArrayList<E>();
-        String idPropertyName = getIdPropertyName(clazz);
 
         // Parse results
         if (results.isJsonArray()) {
@@ -0,0 +1,108 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntityReader.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * JsonReader that renames the id property of the entity being read, so it
+ * matches the id property name of the entity class
+ */
+class JsonEntityReader extends JsonReader {
+
+    /**
+     * Serialized name of the id property
+     */
+    private static final String ID_PROPERTY_NAME = "id";
+
+    /**
+     * Number of objects being read
+     */
+    private int mObjectDepth;
+
+    /**
+     * Object depth of the entity being read, or -1 if no entity is being read
+     */
+    private int mEntityDepth = -1;
+
+    /**
+     * Id property name of the entity being read
+     */
+    private String mIdPropertyName;
+
+    /**
+     * Constructor for JsonEntityReader
+     *
+     * @param in The Reader with the JSON content
+     */
+    JsonEntityReader(Reader in) {
+        super(in);
+    }
+
+    /**
+     * Starts reading an entity, whose object is the next value of the reader
+     *
+     * @param idPropertyName The id property name of the entity class
+     */
+    void beginEntity(String idPropertyName) {
+        mEntityDepth = mObjectDepth + 1;
+        mIdPropertyName = idPropertyName;
+    }
+
+    /**
+     * Ends reading an entity
+     */
+    void endEntity() {
+        mEntityDepth = -1;
+        mIdPropertyName = null;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        super.beginObject();
+        mObjectDepth++;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        super.endObject();
+        mObjectDepth--;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        String name = super.nextName();
+
+        // Only the properties of the entity itself are renamed, not the ones
+        // of its nested objects
+        if (mObjectDepth == mEntityDepth && name.equals(ID_PROPERTY_NAME)) {
+            return mIdPropertyName;
+        }
+
+        return name;
+    }
+}
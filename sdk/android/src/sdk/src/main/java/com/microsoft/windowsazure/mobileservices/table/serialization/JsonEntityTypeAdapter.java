@@ -0,0 +1,105 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonEntityTypeAdapter.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter of an entity class that maps the "id" property of the JSON
+ * content to the id property name of the class while it is read
+ */
+public class JsonEntityTypeAdapter<E> extends TypeAdapter<E> {
+
+    /**
+     * The type adapter of the entity class
+     */
+    private final TypeAdapter<E> mDelegate;
+
+    /**
+     * The id property name of the entity class
+     */
+    private final String mIdPropertyName;
+
+    /**
+     * Constructor for JsonEntityTypeAdapter
+     *
+     * @param delegate       The type adapter of the entity class
+     * @param idPropertyName The id property name of the entity class
+     */
+    public JsonEntityTypeAdapter(TypeAdapter<E> delegate, String idPropertyName) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+
+        mDelegate = delegate;
+        mIdPropertyName = idPropertyName != null ? idPropertyName : "";
+    }
+
+    @Override
+    public void write(JsonWriter out, E value) throws IOException {
+        mDelegate.write(out, value);
+    }
+
+    @Override
+    public E read(JsonReader in) throws IOException {
+        // If the property name is id or if there's no id defined, the
+        // content is read without changes
+        if (mIdPropertyName.equals("id") || mIdPropertyName.length() == 0 || in.peek() != JsonToken.BEGIN_OBJECT) {
+            return mDelegate.read(in);
+        }
+
+        if (in instanceof JsonEntityReader) {
+            JsonEntityReader entityReader = (JsonEntityReader) in;
+            entityReader.beginEntity(mIdPropertyName);
+
+            try {
+                return mDelegate.read(in);
+            } finally {
+                entityReader.endEntity();
+            }
+        }
+
+        // Other readers cannot rename properties, so the object is read into
+        // a tree and changed
+        JsonObject element = new JsonParser().parse(in).getAsJsonObject();
+
+        if (element.has("id")) {
+            JsonElement idElement = element.get("id");
+
+            String value = idElement.isJsonNull() ? null : idElement.getAsString();
+            element.remove("id");
+            element.addProperty(mIdPropertyName, value);
+        }
+
+        return mDelegate.fromJsonTree(element);
+    }
+}
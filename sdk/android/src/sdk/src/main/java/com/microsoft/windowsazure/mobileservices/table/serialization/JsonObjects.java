@@ -0,0 +1,172 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonObjects.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.common.base.Predicate;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.util.Map.Entry;
+
+/**
+ * Structural copies and comparisons of JsonObject instances.
+ * <p/>
+ * The copies are deep: nested objects and arrays are copied, so neither the
+ * copy nor the source is changed through the other. Only primitive and null
+ * values, which cannot be changed, are shared. This avoids serializing and
+ * parsing whole entities to copy them.
+ */
+public final class JsonObjects {
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private JsonObjects() {
+    }
+
+    /**
+     * Returns a copy of a JsonObject
+     *
+     * @param source The object to copy
+     * @return A new object with copies of the properties of the source
+     */
+    public static JsonObject copy(JsonObject source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+
+        JsonObject copy = new JsonObject();
+
+        for (Entry<String, JsonElement> property : source.entrySet()) {
+            copy.add(property.getKey(), copyElement(property.getValue()));
+        }
+
+        return copy;
+    }
+
+    /**
+     * Returns a JsonObject without the properties whose names match a filter.
+     * The source is not changed: if it has no matching property it is
+     * returned as is, otherwise a copy without the matching properties is
+     * returned.
+     *
+     * @param source The object
+     * @param filter The filter of the property names to remove
+     * @return The source, or a copy without the matching properties
+     */
+    public static JsonObject withoutProperties(JsonObject source, Predicate<String> filter) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+
+        boolean hasMatches = false;
+
+        for (Entry<String, JsonElement> property : source.entrySet()) {
+            if (filter.apply(property.getKey())) {
+                hasMatches = true;
+                break;
+            }
+        }
+
+        if (!hasMatches) {
+            return source;
+        }
+
+        JsonObject copy = new JsonObject();
+
+        for (Entry<String, JsonElement> property : source.entrySet()) {
+            if (!filter.apply(property.getKey())) {
+                copy.add(property.getKey(), copyElement(property.getValue()));
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Returns the properties of a JsonObject that changed from a previous
+     * version of it. Properties are compared by value, a missing property
+     * being the same as a null one, and properties removed since the previous
+     * version are returned as null. Neither object is changed, and the values
+     * of the returned properties are shared with the current version.
+     *
+     * @param original The previous version of the object
+     * @param current  The current version of the object
+     * @return A new object with the changed properties of the current version
+     */
+    public static JsonObject changedProperties(JsonObject original, JsonObject current) {
+        if (original == null) {
+            throw new IllegalArgumentException("original cannot be null");
+        }
+
+        if (current == null) {
+            throw new IllegalArgumentException("current cannot be null");
+        }
+
+        JsonObject changes = new JsonObject();
+
+        for (Entry<String, JsonElement> property : current.entrySet()) {
+            JsonElement originalValue = original.get(property.getKey());
+            JsonElement value = property.getValue() != null ? property.getValue() : JsonNull.INSTANCE;
+
+            if (originalValue == null ? !value.isJsonNull() : !originalValue.equals(value)) {
+                changes.add(property.getKey(), value);
+            }
+        }
+
+        for (Entry<String, JsonElement> property : original.entrySet()) {
+            if (!current.has(property.getKey()) && property.getValue() != null && !property.getValue().isJsonNull()) {
+                changes.add(property.getKey(), JsonNull.INSTANCE);
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Returns a copy of a JsonElement. Objects and arrays are copied
+     * recursively, and primitive and null values are returned as is.
+     *
+     * @param element The element to copy, or null
+     */
+    private static JsonElement copyElement(JsonElement element) {
+        if (element == null) {
+            return null;
+        } else if (element.isJsonObject()) {
+            return copy(element.getAsJsonObject());
+        } else if (element.isJsonArray()) {
+            JsonArray copy = new JsonArray();
+
+            for (JsonElement item : element.getAsJsonArray()) {
+                copy.add(copyElement(item));
+            }
+
+            return copy;
+        }
+
+        return element;
+    }
+}
@@ -0,0 +1,398 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceSerializationContext.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the Gson instance built from the GsonBuilder of a client, with the
+ * type adapters and metadata of the entity classes it serializes. Building a
+ * Gson instance and scanning the fields of a class are expensive, so they
+ * are done once instead of on every operation.
+ * <p/>
+ * Entity classes annotated with JsonEntity have a JsonEntityAdapter
+ * generated at compile time, which is preferred to reflection for their
+ * metadata and type adapter. Generated adapters only reproduce the default
+ * configuration of the GsonBuilder of the SDK, so they are not used once the
+ * GsonBuilder is customised in any way: when the context is created for
+ * another GsonBuilder, or when it is invalidated.
+ * <p/>
+ * The Gson instance and the caches built from it are kept in a snapshot that
+ * is replaced as a whole on invalidation, so an adapter built from a previous
+ * configuration is never cached in the current snapshot.
+ */
+public class MobileServiceSerializationContext {
+
+    /**
+     * The generated adapters of the entity classes. Classes without a
+     * generated adapter are mapped to NO_GENERATED_ADAPTER.
+     */
+    private static final ConcurrentMap<Class<?>, Object> mGeneratedAdapters = new ConcurrentHashMap<Class<?>, Object>();
+
+    /**
+     * Value of mGeneratedAdapters for classes without a generated adapter
+     */
+    private static final Object NO_GENERATED_ADAPTER = new Object();
+
+    /**
+     * The GsonBuilder used to build the Gson instance
+     */
+    private final GsonBuilder mGsonBuilder;
+
+    /**
+     * The Gson instance and caches of the current GsonBuilder configuration
+     */
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * Constructor for MobileServiceSerializationContext. Generated adapters
+     * are not used, since the GsonBuilder may be customised.
+     *
+     * @param gsonBuilder The GsonBuilder used to build the Gson instance
+     */
+    public MobileServiceSerializationContext(GsonBuilder gsonBuilder) {
+        this(gsonBuilder, false);
+    }
+
+    /**
+     * Constructor for MobileServiceSerializationContext
+     *
+     * @param gsonBuilder              The GsonBuilder used to build the Gson instance
+     * @param generatedAdaptersEnabled True if the GsonBuilder has the default
+     *                                 configuration of the SDK, so the generated
+     *                                 adapters of the entity classes can be used
+     */
+    public MobileServiceSerializationContext(GsonBuilder gsonBuilder, boolean generatedAdaptersEnabled) {
+        if (gsonBuilder == null) {
+            throw new IllegalArgumentException("gsonBuilder cannot be null");
+        }
+
+        mGsonBuilder = gsonBuilder;
+        mSnapshot = new Snapshot(generatedAdaptersEnabled);
+    }
+
+    /**
+     * Returns the GsonBuilder used to build the Gson instance. The GsonBuilder
+     * may be customised once it is returned, so the context is invalidated,
+     * and the Gson instance is built again on its next use. Changes made
+     * later through a GsonBuilder kept from a previous call are not applied
+     * until the context is invalidated again, and the GsonBuilder must not be
+     * changed while the context is in use on other threads.
+     */
+    public GsonBuilder getGsonBuilder() {
+        invalidate();
+        return mGsonBuilder;
+    }
+
+    /**
+     * Indicates if the generated adapters of the entity classes are used
+     */
+    public boolean isGeneratedAdaptersEnabled() {
+        return mSnapshot.mGeneratedAdaptersEnabled;
+    }
+
+    /**
+     * Returns the Gson instance built from the GsonBuilder
+     */
+    public Gson getGson() {
+        return getGson(mSnapshot);
+    }
+
+    /**
+     * Returns the type adapter of an entity class, created by its generated
+     * adapter if it has one
+     *
+     * @param clazz The entity class
+     */
+    public <E> TypeAdapter<E> getTypeAdapter(Class<E> clazz) {
+        return getTypeAdapter(mSnapshot, clazz);
+    }
+
+    /**
+     * Returns the type adapter of an entity class that maps the "id"
+     * property of the JSON content to the id property name of the class
+     *
+     * @param clazz The entity class
+     */
+    @SuppressWarnings("unchecked")
+    public <E> JsonEntityTypeAdapter<E> getEntityTypeAdapter(Class<E> clazz) {
+        Snapshot snapshot = mSnapshot;
+        JsonEntityTypeAdapter<E> adapter = (JsonEntityTypeAdapter<E>) snapshot.mEntityTypeAdapters.get(clazz);
+
+        if (adapter == null) {
+            adapter = new JsonEntityTypeAdapter<E>(getTypeAdapter(snapshot, clazz), getEntityMetadata(snapshot, clazz).getIdPropertyName());
+            snapshot.mEntityTypeAdapters.putIfAbsent(clazz, adapter);
+        }
+
+        return adapter;
+    }
+
+    /**
+     * Returns the metadata of an entity class
+     *
+     * @param clazz The entity class
+     */
+    public JsonEntityMetadata getEntityMetadata(Class<?> clazz) {
+        return getEntityMetadata(mSnapshot, clazz);
+    }
+
+    /**
+     * Returns the local store columns of an entity class, to use with
+     * MobileServiceLocalStore.defineTable
+     *
+     * @param clazz The entity class
+     */
+    public Map<String, ColumnDataType> getColumns(Class<?> clazz) {
+        return getEntityMetadata(clazz).getColumns();
+    }
+
+    /**
+     * Serializes an object into a JsonElement, using the type adapter of its
+     * class
+     *
+     * @param src The object to serialize
+     */
+    @SuppressWarnings("unchecked")
+    public JsonElement toJsonTree(Object src) {
+        if (src == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        Snapshot snapshot = mSnapshot;
+        Class<Object> clazz = (Class<Object>) src.getClass();
+
+        // Type adapters write null properties unless the writer says
+        // otherwise, so the Gson instance is used if it omits them
+        if (!serializeNulls(snapshot) || getGeneratedAdapter(snapshot, clazz) == null) {
+            return getGson(snapshot).toJsonTree(src);
+        }
+
+        return getTypeAdapter(snapshot, clazz).toJsonTree(src);
+    }
+
+    /**
+     * Returns the adapter generated for an entity class
+     *
+     * @param clazz The entity class
+     * @return The generated adapter, or null if the class has none
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> JsonEntityAdapter<E> getGeneratedAdapter(Class<E> clazz) {
+        Object adapter = mGeneratedAdapters.get(clazz);
+
+        if (adapter == null) {
+            adapter = NO_GENERATED_ADAPTER;
+
+            // Platform classes have no generated adapters
+            if (clazz.getClassLoader() != null && !clazz.isArray() && !clazz.isInterface()) {
+                try {
+                    Class<?> adapterClass = Class.forName(clazz.getName() + JsonEntityAdapter.ADAPTER_SUFFIX, true, clazz.getClassLoader());
+
+                    if (JsonEntityAdapter.class.isAssignableFrom(adapterClass)) {
+                        adapter = adapterClass.newInstance();
+                    }
+                } catch (ClassNotFoundException e) {
+                    // The class has no generated adapter
+                } catch (InstantiationException e) {
+                    // The generated adapter cannot be used
+                } catch (IllegalAccessException e) {
+                    // The generated adapter cannot be used
+                }
+            }
+
+            mGeneratedAdapters.putIfAbsent(clazz, adapter);
+        }
+
+        return adapter != NO_GENERATED_ADAPTER ? (JsonEntityAdapter<E>) adapter : null;
+    }
+
+    /**
+     * Discards the Gson instance and the cached type adapters and metadata,
+     * so they reflect the current GsonBuilder configuration. It must be
+     * called after the GsonBuilder is changed. Generated adapters are no
+     * longer used.
+     */
+    public synchronized void invalidate() {
+        mSnapshot = new Snapshot(false);
+    }
+
+    /**
+     * Returns the Gson instance of a snapshot, building it if needed
+     *
+     * @param snapshot The snapshot
+     */
+    private Gson getGson(Snapshot snapshot) {
+        Gson gson = snapshot.mGson;
+
+        if (gson == null) {
+            synchronized (snapshot) {
+                gson = snapshot.mGson;
+
+                if (gson == null) {
+                    gson = mGsonBuilder.create();
+                    snapshot.mGson = gson;
+                }
+            }
+        }
+
+        return gson;
+    }
+
+    /**
+     * Returns the type adapter of an entity class cached in a snapshot
+     *
+     * @param snapshot The snapshot
+     * @param clazz    The entity class
+     */
+    @SuppressWarnings("unchecked")
+    private <E> TypeAdapter<E> getTypeAdapter(Snapshot snapshot, Class<E> clazz) {
+        TypeAdapter<E> adapter = (TypeAdapter<E>) snapshot.mTypeAdapters.get(clazz);
+
+        if (adapter == null) {
+            Gson gson = getGson(snapshot);
+            JsonEntityAdapter<E> generatedAdapter = getGeneratedAdapter(snapshot, clazz);
+
+            if (generatedAdapter != null) {
+                adapter = generatedAdapter.createTypeAdapter(gson);
+            }
+
+            if (adapter == null) {
+                adapter = gson.getAdapter(clazz);
+            }
+
+            snapshot.mTypeAdapters.putIfAbsent(clazz, adapter);
+        }
+
+        return adapter;
+    }
+
+    /**
+     * Returns the metadata of an entity class cached in a snapshot
+     *
+     * @param snapshot The snapshot
+     * @param clazz    The entity class
+     */
+    private JsonEntityMetadata getEntityMetadata(Snapshot snapshot, Class<?> clazz) {
+        JsonEntityMetadata metadata = snapshot.mEntityMetadata.get(clazz);
+
+        if (metadata == null) {
+            JsonEntityAdapter<?> generatedAdapter = getGeneratedAdapter(snapshot, clazz);
+
+            metadata = generatedAdapter != null ? new JsonEntityMetadata(generatedAdapter) : new JsonEntityMetadata(clazz);
+            snapshot.mEntityMetadata.putIfAbsent(clazz, metadata);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Returns the adapter generated for an entity class, if the generated
+     * adapters are used by a snapshot
+     *
+     * @param snapshot The snapshot
+     * @param clazz    The entity class
+     * @return The generated adapter, or null if it is not used
+     */
+    private static <E> JsonEntityAdapter<E> getGeneratedAdapter(Snapshot snapshot, Class<E> clazz) {
+        return snapshot.mGeneratedAdaptersEnabled ? getGeneratedAdapter(clazz) : null;
+    }
+
+    /**
+     * Indicates if the Gson instance of a snapshot serializes null properties
+     *
+     * @param snapshot The snapshot
+     */
+    private boolean serializeNulls(Snapshot snapshot) {
+        Boolean serializeNulls = snapshot.mSerializeNulls;
+
+        if (serializeNulls == null) {
+            JsonObject probe = new JsonObject();
+            probe.add("id", JsonNull.INSTANCE);
+
+            serializeNulls = getGson(snapshot).toJson(probe).contains("null");
+            snapshot.mSerializeNulls = serializeNulls;
+        }
+
+        return serializeNulls;
+    }
+
+    /**
+     * The Gson instance and caches of a GsonBuilder configuration. The
+     * caches only hold values built from the Gson instance of the same
+     * snapshot.
+     */
+    private static class Snapshot {
+
+        /**
+         * Flag to indicate if the generated adapters of the entity classes
+         * are used
+         */
+        private final boolean mGeneratedAdaptersEnabled;
+
+        /**
+         * The type adapters of the entity classes
+         */
+        private final ConcurrentMap<Class<?>, TypeAdapter<?>> mTypeAdapters = new ConcurrentHashMap<Class<?>, TypeAdapter<?>>();
+
+        /**
+         * The type adapters of the entity classes that map their id property
+         */
+        private final ConcurrentMap<Class<?>, JsonEntityTypeAdapter<?>> mEntityTypeAdapters = new ConcurrentHashMap<Class<?>, JsonEntityTypeAdapter<?>>();
+
+        /**
+         * The metadata of the entity classes
+         */
+        private final ConcurrentMap<Class<?>, JsonEntityMetadata> mEntityMetadata = new ConcurrentHashMap<Class<?>, JsonEntityMetadata>();
+
+        /**
+         * The Gson instance, or null if it has not been built yet
+         */
+        private volatile Gson mGson;
+
+        /**
+         * Flag to indicate if the Gson instance serializes null properties,
+         * or null if it has not been checked yet
+         */
+        private volatile Boolean mSerializeNulls;
+
+        /**
+         * Constructor for Snapshot
+         *
+         * @param generatedAdaptersEnabled True if the generated adapters are used
+         */
+        Snapshot(boolean generatedAdaptersEnabled) {
+            mGeneratedAdaptersEnabled = generatedAdaptersEnabled;
+        }
+    }
+}
@@ -27,20 +27,31 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonObjects;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreIterator;
+import com.microsoft.windowsazure.mobileservices.threading.MonitoredExecutor;
 
 import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Provides operations on local table.
  */
 public class MobileServiceJsonSyncTable {
+    /**
+     * The maximum number of items a stream reads from the local store at
+     * once
+     */
+    private static final int STREAM_BATCH_SIZE = 100;
+
     protected EnumSet<MobileServiceFeatures> mFeatures;
     private String mName;
     private MobileServiceClient mClient;
@@ -74,7 +85,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -86,7 +97,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -112,7 +123,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getWriteExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -124,7 +135,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -141,7 +152,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonObject> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getWriteExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -153,7 +164,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -169,7 +180,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonElement> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getReadExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -181,7 +192,44 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
+
+        return result;
+    }
+
+    /**
+     * Retrieve results from the local table, one item at a time. The items
+     * are read in batches as the returned iterator advances, on the read
+     * executor; the iterator waits for them, so it should not be used on
+     * the main thread. The results are not a snapshot: items modified while
+     * iterating may be missed or returned twice. The iterator must be closed
+     * after use.
+     *
+     * @param query an optional query to filter results
+     * @return A ListenableFuture that is done when the query has been run.
+     */
+    public ListenableFuture<MobileServiceLocalStoreIterator> readStream(final Query query) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<MobileServiceLocalStoreIterator> result = SettableFuture.create();
+
+        thisTable.mClient.getSyncContext().getReadExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    StreamIterator results = new StreamIterator(thisTable.readStreamContext(query));
+                    results.readBatch();
+
+                    if (!result.set(results)) {
+                        // The future was cancelled, nobody will close the
+                        // iterator
+                        results.close();
+                    }
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        });
 
         return result;
     }
@@ -196,7 +244,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonObject> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getReadExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -208,7 +256,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -224,7 +272,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getWriteExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -236,7 +284,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -252,7 +300,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getWriteExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -264,7 +312,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -280,7 +328,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncContext().getWriteExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -292,7 +340,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -301,6 +349,10 @@ public class MobileServiceJsonSyncTable {
         return this.mClient.getSyncContext().read(this.mName, query);
     }
 
+    private MobileServiceLocalStoreIterator readStreamContext(Query query) throws MobileServiceLocalStoreException {
+        return this.mClient.getSyncContext().readStream(this.mName, query);
+    }
+
     private JsonObject lookUpContext(String itemId) throws MobileServiceLocalStoreException {
         if (!isValidStringId(itemId)) {
             throw new IllegalArgumentException("The entity id has an invalid string value.");
@@ -338,7 +390,7 @@ public class MobileServiceJsonSyncTable {
     }
 
     private JsonObject validateIdOnInsert(JsonObject item) throws JsonSyntaxException, IllegalArgumentException {
-        JsonObject newItem = (JsonObject) new JsonParser().parse(item.toString());
+        JsonObject newItem = JsonObjects.copy(item);
         String itemId = null;
         String idProperty = getIdProperty(newItem);
 
@@ -366,7 +418,7 @@ public class MobileServiceJsonSyncTable {
     }
 
     private JsonObject validateIdOnUpdateOrDelete(JsonObject item) throws JsonSyntaxException, IllegalArgumentException {
-        JsonObject newItem = (JsonObject) new JsonParser().parse(item.toString());
+        JsonObject newItem = JsonObjects.copy(item);
         String itemId = null;
         String idProperty = getIdProperty(newItem);
 
@@ -463,4 +515,94 @@ public class MobileServiceJsonSyncTable {
 
         return result;
     }
+
+    /**
+     * Iterator over the items of a local store query, reading them in
+     * batches on the read executor, so that the store is only used there
+     */
+    private class StreamIterator implements MobileServiceLocalStoreIterator {
+        private MobileServiceLocalStoreIterator mItems;
+        private LinkedList<JsonObject> mBatch = new LinkedList<JsonObject>();
+        private boolean mLastBatch;
+
+        StreamIterator(MobileServiceLocalStoreIterator items) {
+            mItems = items;
+        }
+
+        @Override
+        public synchronized boolean hasNext() {
+            if (mBatch.isEmpty() && !mLastBatch) {
+                MonitoredExecutor executor = mClient.getSyncContext().getReadExecutor();
+
+                if (executor.isRunningTask()) {
+                    readBatch();
+                } else {
+                    readBatch(executor);
+                }
+            }
+
+            return !mBatch.isEmpty();
+        }
+
+        @Override
+        public synchronized JsonObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return mBatch.removeFirst();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized void close() {
+            mBatch.clear();
+            mLastBatch = true;
+            mItems.close();
+        }
+
+        private void readBatch() {
+            while (mBatch.size() < STREAM_BATCH_SIZE && mItems.hasNext()) {
+                mBatch.add(mItems.next());
+            }
+
+            mLastBatch = mBatch.size() < STREAM_BATCH_SIZE;
+        }
+
+        private void readBatch(MonitoredExecutor executor) {
+            final SettableFuture<Void> future = SettableFuture.create();
+
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        readBatch();
+                        future.set(null);
+                    } catch (Throwable throwable) {
+                        future.setException(throwable);
+                    }
+                }
+            });
+
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the local store.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
 }
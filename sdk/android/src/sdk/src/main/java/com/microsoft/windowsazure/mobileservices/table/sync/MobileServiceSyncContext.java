@@ -31,6 +31,7 @@ import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceExceptionBase;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
@@ -40,6 +41,7 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreIterator;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.LocalTableOperationProcessor;
@@ -47,6 +49,7 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.MobileSer
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.RemoteTableOperationProcessor;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.IncrementalPullStrategy;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullStrategy;
@@ -58,6 +61,7 @@ import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue.Bookmark;
 import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.MobileServiceSyncHandler;
 import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.MobileServiceSyncHandlerException;
+import com.microsoft.windowsazure.mobileservices.threading.MonitoredExecutor;
 import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary;
 import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary.MultiLock;
 import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary;
@@ -73,6 +77,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -87,6 +92,23 @@ public class MobileServiceSyncContext {
      * Table that stores backed up items
      */
     private static final String ITEM_BACKUP_TABLE = "__itembackups";
+    /**
+     * Table that stores the items as they were last returned by the server,
+     * while they have pending updates
+     */
+    private static final String ITEM_SNAPSHOT_TABLE = "__itemsnapshots";
+    /**
+     * Default number of threads that run local reads
+     */
+    public static final int DEFAULT_READ_THREADS = 4;
+    /**
+     * Default number of threads that run local writes
+     */
+    public static final int DEFAULT_WRITE_THREADS = 2;
+    /**
+     * Default number of threads that run pulls and pushes
+     */
+    public static final int DEFAULT_SYNC_THREADS = 2;
     private SettableFuture<Void> mInitialized;
     private MobileServiceClient mClient;
     private MobileServiceLocalStore mStore;
@@ -135,6 +157,18 @@ public class MobileServiceSyncContext {
      * Semaphore to signal that there are currently no pending push requests
      */
     private Semaphore mPushSRConsumerIdle;
+    /**
+     * Executor that runs local reads
+     */
+    private volatile MonitoredExecutor mReadExecutor;
+    /**
+     * Executor that runs local writes and the initialization
+     */
+    private volatile MonitoredExecutor mWriteExecutor;
+    /**
+     * Executor that runs pulls and pushes
+     */
+    private volatile MonitoredExecutor mSyncExecutor;
 
     /**
      * Constructor for MobileServiceSyncContext
@@ -146,6 +180,9 @@ public class MobileServiceSyncContext {
         this.mInitLock = new ReentrantReadWriteLock(true);
         this.mOpLock = new ReentrantReadWriteLock(true);
         this.mPushSRLock = new ReentrantLock(true);
+        this.mReadExecutor = MonitoredExecutor.newBoundedExecutor(DEFAULT_READ_THREADS, "MobileServiceSyncRead");
+        this.mWriteExecutor = MonitoredExecutor.newBoundedExecutor(DEFAULT_WRITE_THREADS, "MobileServiceSyncWrite");
+        this.mSyncExecutor = MonitoredExecutor.newBoundedExecutor(DEFAULT_SYNC_THREADS, "MobileServiceSyncNetwork");
     }
 
     private static void initializeStore(MobileServiceLocalStore store) throws MobileServiceLocalStoreException {
@@ -156,6 +193,14 @@ public class MobileServiceSyncContext {
         columns.put("clientitem", ColumnDataType.Other);
 
         store.defineTable(ITEM_BACKUP_TABLE, columns);
+
+        columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("tablename", ColumnDataType.String);
+        columns.put("itemid", ColumnDataType.String);
+        columns.put("serveritem", ColumnDataType.Other);
+
+        store.defineTable(ITEM_SNAPSHOT_TABLE, columns);
     }
 
     private static boolean isDeleted(JsonObject item) {
@@ -185,6 +230,66 @@ public class MobileServiceSyncContext {
         return this.mHandler;
     }
 
+    /**
+     * Returns the executor that runs local reads, which keeps track of the
+     * reads waiting to run and running.
+     *
+     * @return The read executor
+     */
+    public MonitoredExecutor getReadExecutor() {
+        return this.mReadExecutor;
+    }
+
+    /**
+     * Sets the executor that runs local reads (read and lookUp).
+     *
+     * @param executor The executor to use
+     */
+    public void setReadExecutor(Executor executor) {
+        this.mReadExecutor = new MonitoredExecutor(executor);
+    }
+
+    /**
+     * Returns the executor that runs local writes and the initialization,
+     * which keeps track of the tasks waiting to run and running.
+     *
+     * @return The write executor
+     */
+    public MonitoredExecutor getWriteExecutor() {
+        return this.mWriteExecutor;
+    }
+
+    /**
+     * Sets the executor that runs local writes (insert, update, delete and
+     * purge) and the initialization.
+     *
+     * @param executor The executor to use
+     */
+    public void setWriteExecutor(Executor executor) {
+        this.mWriteExecutor = new MonitoredExecutor(executor);
+    }
+
+    /**
+     * Returns the executor that runs pulls and pushes, which keeps track of
+     * the tasks waiting to run and running.
+     *
+     * @return The sync executor
+     */
+    public MonitoredExecutor getSyncExecutor() {
+        return this.mSyncExecutor;
+    }
+
+    /**
+     * Sets the executor that runs pulls and pushes. They wait for the remote
+     * operations, so they run apart from local writes, which do not wait for
+     * the network.
+     *
+     * @param executor The executor to use
+     */
+    public void setSyncExecutor(Executor executor) {
+        this.mSyncExecutor = new MonitoredExecutor(executor);
+    }
+
     /**
      * Indicates whether sync context has been initialized or not.
      *
@@ -254,6 +359,7 @@ public class MobileServiceSyncContext {
             idLock = this.mIdLockMap.lock(tableItemId);
 
             this.mStore.upsert(tableOperationError.getTableName(), tableOperationError.getServerItem(), true);
+            this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
 
             removeTableOperation(tableOperationError);
 
@@ -301,6 +407,7 @@ public class MobileServiceSyncContext {
             String itemId = tableOperationError.getItemId();
 
             this.mStore.delete(tableOperationError.getTableName(), itemId);
+            this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
 
             removeTableOperation(tableOperationError);
 
@@ -365,7 +472,7 @@ public class MobileServiceSyncContext {
         final MobileServiceSyncContext thisContext = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        this.mWriteExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -377,7 +484,7 @@ public class MobileServiceSyncContext {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -391,7 +498,7 @@ public class MobileServiceSyncContext {
         final MobileServiceSyncContext thisContext = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        this.mSyncExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -403,7 +510,7 @@ public class MobileServiceSyncContext {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -425,7 +532,7 @@ public class MobileServiceSyncContext {
             boolean busyPullDone = false;
 
             while (!busyPullDone) {
-                ListenableFuture<Void> pushFuture = null;
+                boolean pushPending = false;
 
                 // prevent Coffman Circular wait condition: lock resources in
                 // same order, independent of unlock order. Op then Table then
@@ -442,7 +549,7 @@ public class MobileServiceSyncContext {
                         int pendingTable = this.mOpQueue.countPending(invTableName);
 
                         if (pendingTable > 0) {
-                            pushFuture = push();
+                            pushPending = true;
                         } else {
                             processPull(invTableName, query, queryId);
                         }
@@ -453,12 +560,10 @@ public class MobileServiceSyncContext {
                     this.mOpLock.readLock().unlock();
                 }
 
-                if (pushFuture != null) {
-                    try {
-                        pushFuture.get();
-                    } catch (ExecutionException e) {
-                        throw e.getCause();
-                    }
+                if (pushPending) {
+                    // Push in this thread, since waiting for a push scheduled
+                    // on the write executor could starve it
+                    pushContext();
                 } else {
                     busyPullDone = true;
                 }
@@ -517,6 +622,28 @@ public class MobileServiceSyncContext {
      * @return a JsonElement with the results
      */
     JsonElement read(String tableName, Query query) throws MobileServiceLocalStoreException {
+        return this.mStore.read(getTableQuery(tableName, query));
+    }
+
+    /**
+     * Retrieve results from the local table, one item at a time.
+     *
+     * @param tableName the local table name
+     * @param query     an optional query to filter results
+     * @return an iterator over the results, that must be closed after use
+     */
+    MobileServiceLocalStoreIterator readStream(String tableName, Query query) throws MobileServiceLocalStoreException {
+        return this.mStore.readStream(getTableQuery(tableName, query));
+    }
+
+    /**
+     * Returns a query on the local table, based on an optional query
+     *
+     * @param tableName the local table name
+     * @param query     an optional query to filter results
+     * @return the query on the local table
+     */
+    private static Query getTableQuery(String tableName, Query query) {
         String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
         if (query == null) {
@@ -525,7 +652,7 @@ public class MobileServiceSyncContext {
             query = query.tableName(invTableName);
         }
 
-        return this.mStore.read(query);
+        return query;
     }
 
     /**
@@ -706,6 +833,7 @@ public class MobileServiceSyncContext {
             MobileServiceJsonTable table = this.mClient.getTable(tableName);
 
             table.addFeature(MobileServiceFeatures.Offline);
+            table.setRequestPriority(RequestPriority.Background);
 
             if (query == null) {
                 query = table.top(1000).orderBy("id", QueryOrder.Ascending);
@@ -742,9 +870,20 @@ public class MobileServiceSyncContext {
                         elements = result.getAsJsonArray();
                     }
 
-                    processElements(tableName, elements);
+                    // Each page is written in one transaction, together with
+                    // the state of the pull strategy
+                    this.mStore.beginTransaction();
+
+                    try {
+                        processElements(tableName, elements);
+
+                        strategy.onResultsProcessed(elements);
+                    } catch (Throwable t) {
+                        this.mStore.rollbackTransaction();
+                        throw t;
+                    }
 
-                    strategy.onResultsProcessed(elements);
+                    this.mStore.commitTransaction();
                 }
 
             }
@@ -946,12 +1085,12 @@ public class MobileServiceSyncContext {
 
         JsonObject item = this.mStore.lookup(operation.getTableName(), operation.getItemId());
 
-        if (item == null) {
-            // '/' is a reserved character that cannot be used on string ids.
-            // We use it to build a unique compound string from tableName and
-            // itemId
-            String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+        // '/' is a reserved character that cannot be used on string ids.
+        // We use it to build a unique compound string from tableName and
+        // itemId
+        String tableItemId = operation.getTableName() + "/" + operation.getItemId();
 
+        if (item == null) {
             JsonObject backedUpItem = this.mStore.lookup(ITEM_BACKUP_TABLE, tableItemId);
 
             if (backedUpItem != null) {
@@ -959,7 +1098,21 @@ public class MobileServiceSyncContext {
             }
         }
 
-        JsonObject result = this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item), operation);
+        JsonObject serverItem = null;
+
+        // Updates only send the properties changed since the item was last
+        // returned by the server
+        if (operation.getKind() == TableOperationKind.Update) {
+            JsonObject snapshot = this.mStore.lookup(ITEM_SNAPSHOT_TABLE, tableItemId);
+
+            if (snapshot != null) {
+                serverItem = snapshot.get("serveritem").isJsonObject() ? snapshot.getAsJsonObject("serveritem") : null;
+            }
+        }
+
+        JsonObject result = this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item, serverItem), operation);
+
+        this.mStore.delete(ITEM_SNAPSHOT_TABLE, tableItemId);
 
         if (result != null) {
             this.mStore.upsert(operation.getTableName(), result, true);
@@ -1087,8 +1240,11 @@ public class MobileServiceSyncContext {
                     MultiLock<String> idLock = this.mIdLockMap.lock(tableItemId);
 
                     try {
-                        operation.accept(new LocalTableOperationProcessor(this.mStore, item, ITEM_BACKUP_TABLE));
-                        this.mOpQueue.enqueue(operation);
+                        // The local item is only the one last returned by the
+                        // server if it has no pending operation
+                        String itemSnapshotTable = this.mOpQueue.isPending(operation.getTableName(), operation.getItemId()) ? null : ITEM_SNAPSHOT_TABLE;
+
+                        this.mOpQueue.enqueue(operation, new LocalTableOperationProcessor(this.mStore, item, ITEM_BACKUP_TABLE, itemSnapshotTable));
                     } finally {
                         this.mIdLockMap.unLock(idLock);
                     }
@@ -27,7 +27,6 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
@@ -35,8 +34,10 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceList;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreIterator;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -174,6 +175,38 @@ public class MobileServiceSyncTable<E> {
         return future;
     }
 
+    /**
+     * Retrieve results from the local table, one entity at a time. The
+     * entities are read in batches on the read executor as the returned
+     * iterator advances, instead of all at once; the inline count of the
+     * query is ignored. The iterator waits for the batches, so it should not
+     * be used on the main thread, and must be closed after use.
+     *
+     * @param query an optional query to filter results
+     * @return A ListenableFuture that is done when the query has been run.
+     */
+    public ListenableFuture<MobileServiceSyncTableIterator<E>> readStream(Query query) {
+        final SettableFuture<MobileServiceSyncTableIterator<E>> future = SettableFuture.create();
+
+        ListenableFuture<MobileServiceLocalStoreIterator> internalFuture = mInternalTable.readStream(query);
+
+        Futures.addCallback(internalFuture, new FutureCallback<MobileServiceLocalStoreIterator>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.setException(throwable);
+            }
+
+            @Override
+            public void onSuccess(MobileServiceLocalStoreIterator result) {
+                if (!future.set(new EntityIterator(result))) {
+                    result.close();
+                }
+            }
+        });
+
+        return future;
+    }
+
     /**
      * Looks up an item from the local table.
      *
@@ -219,7 +252,7 @@ public class MobileServiceSyncTable<E> {
     public ListenableFuture<E> insert(E item) {
         final SettableFuture<E> future = SettableFuture.create();
 
-        final JsonObject json = mClient.getGsonBuilder().create().toJsonTree(item).getAsJsonObject();
+        final JsonObject json = mClient.getSerializationContext().toJsonTree(item).getAsJsonObject();
 
         JsonElement idJsonObject = json.get("id");
 
@@ -278,7 +311,7 @@ public class MobileServiceSyncTable<E> {
     public ListenableFuture<Void> update(E item) {
         final SettableFuture<Void> future = SettableFuture.create();
 
-        JsonObject json = mClient.getGsonBuilder().create().toJsonTree(item).getAsJsonObject();
+        JsonObject json = mClient.getSerializationContext().toJsonTree(item).getAsJsonObject();
 
         ListenableFuture<Void> internalFuture = mInternalTable.update(json);
 
@@ -307,7 +340,7 @@ public class MobileServiceSyncTable<E> {
     public ListenableFuture<Void> delete(E item) {
         final SettableFuture<Void> future = SettableFuture.create();
 
-        JsonObject json = mClient.getGsonBuilder().create().toJsonTree(item).getAsJsonObject();
+        JsonObject json = mClient.getSerializationContext().toJsonTree(item).getAsJsonObject();
 
         ListenableFuture<Void> internalFuture = mInternalTable.delete(json);
 
@@ -354,7 +387,53 @@ public class MobileServiceSyncTable<E> {
     }
 
     private List<E> parseResults(JsonElement results) {
-        Gson gson = mClient.getGsonBuilder().create();
-        return JsonEntityParser.parseResults(results, gson, mClazz);
+        return JsonEntityParser.parseResults(results, mClient.getSerializationContext(), mClazz);
+    }
+
+    /**
+     * Iterator over the entities of a local table query, parsing each entity
+     * from the local store results when it is requested
+     */
+    private class EntityIterator implements MobileServiceSyncTableIterator<E> {
+        private final MobileServiceLocalStoreIterator mItems;
+
+        EntityIterator(MobileServiceLocalStoreIterator items) {
+            mItems = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mItems.hasNext();
+        }
+
+        @Override
+        public E next() {
+            return parseResults(mItems.next()).get(0);
+        }
+
+        @Override
+        public List<E> next(int maxCount) {
+            if (maxCount < 0) {
+                throw new IllegalArgumentException("maxCount cannot be negative");
+            }
+
+            List<E> entities = new ArrayList<E>(Math.min(maxCount, 256));
+
+            while (entities.size() < maxCount && mItems.hasNext()) {
+                entities.add(parseResults(mItems.next()).get(0));
+            }
+
+            return entities;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            mItems.close();
+        }
     }
 }
@@ -0,0 +1,55 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceSyncTableIterator.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterates over the entities of a local table query, reading them in
+ * batches as they are requested. Reading a batch waits for the local store,
+ * so the iterator should not be used on the main thread. The results are
+ * not a snapshot: entities modified while iterating may be missed or
+ * returned twice. The iterator must always be closed after use.
+ *
+ * @param <E> The entity type
+ */
+public interface MobileServiceSyncTableIterator<E> extends Iterator<E>, Closeable {
+    /**
+     * Reads the next entities, up to a maximum count. Useful to load the
+     * results in windows, e.g. as a list adapter is scrolled.
+     *
+     * @param maxCount The maximum number of entities to read
+     * @return The entities read, an empty list if there are no more entities
+     */
+    List<E> next(int maxCount);
+
+    /**
+     * Releases the resources held by the iterator. The iterator has no more
+     * entities once it is closed.
+     */
+    @Override
+    void close();
+}
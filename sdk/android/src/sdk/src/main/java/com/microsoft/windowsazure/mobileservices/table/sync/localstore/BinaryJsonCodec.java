@@ -0,0 +1,362 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * BinaryJsonCodec.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.Map.Entry;
+
+/**
+ * Compact binary encoding of JSON values, used to store the values of
+ * ColumnDataType.Other columns as BLOBs.
+ * <p/>
+ * Encoded values start with a marker byte that cannot start JSON text,
+ * followed by a format version and a tagged value. Strings, arrays and
+ * objects are prefixed with their length, so values are decoded in a single
+ * pass without tokenizing text.
+ */
+public final class BinaryJsonCodec {
+
+    /**
+     * First byte of encoded values. It is a UTF-8 continuation byte, so it
+     * never starts JSON text.
+     */
+    private static final byte MARKER = (byte) 0xB5;
+
+    /**
+     * Version of the encoding
+     */
+    private static final byte VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_DECIMAL = 5;
+    private static final byte TAG_STRING = 6;
+    private static final byte TAG_ARRAY = 7;
+    private static final byte TAG_OBJECT = 8;
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private BinaryJsonCodec() {
+    }
+
+    /**
+     * Indicates if a value was encoded by this codec
+     *
+     * @param data The value
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length > 2 && data[0] == MARKER;
+    }
+
+    /**
+     * Encodes a JSON value
+     *
+     * @param element The value to encode
+     * @return The encoded value
+     */
+    public static byte[] encode(JsonElement element) {
+        Writer writer = new Writer();
+        writer.writeByte(MARKER);
+        writer.writeByte(VERSION);
+        writer.writeElement(element != null ? element : JsonNull.INSTANCE);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a JSON value
+     *
+     * @param data The encoded value
+     * @return The decoded value
+     * @throws IllegalArgumentException if the value is not encoded by this codec
+     */
+    public static JsonElement decode(byte[] data) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("data is not a binary JSON value");
+        }
+
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary JSON version " + data[1]);
+        }
+
+        Reader reader = new Reader(data, 2);
+        JsonElement element = reader.readElement();
+
+        if (reader.mPosition != data.length) {
+            throw new IllegalArgumentException("Unexpected data after binary JSON value");
+        }
+
+        return element;
+    }
+
+    /**
+     * Writes encoded values to a growing buffer
+     */
+    private static class Writer {
+
+        /**
+         * The buffer
+         */
+        private byte[] mBuffer = new byte[128];
+
+        /**
+         * The number of bytes written
+         */
+        private int mLength;
+
+        void writeElement(JsonElement element) {
+            if (element.isJsonNull()) {
+                writeByte(TAG_NULL);
+            } else if (element.isJsonObject()) {
+                JsonObject object = element.getAsJsonObject();
+
+                writeByte(TAG_OBJECT);
+                writeVarint(object.entrySet().size());
+
+                for (Entry<String, JsonElement> property : object.entrySet()) {
+                    writeString(property.getKey());
+                    writeElement(property.getValue() != null ? property.getValue() : JsonNull.INSTANCE);
+                }
+            } else if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+
+                writeByte(TAG_ARRAY);
+                writeVarint(array.size());
+
+                for (JsonElement item : array) {
+                    writeElement(item != null ? item : JsonNull.INSTANCE);
+                }
+            } else {
+                writePrimitive(element.getAsJsonPrimitive());
+            }
+        }
+
+        void writePrimitive(JsonPrimitive primitive) {
+            if (primitive.isBoolean()) {
+                writeByte(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isNumber()) {
+                Number number = primitive.getAsNumber();
+
+                if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+                    writeByte(TAG_LONG);
+                    long value = number.longValue();
+                    writeVarint((value << 1) ^ (value >> 63));
+                } else if (number instanceof Double || number instanceof Float) {
+                    writeByte(TAG_DOUBLE);
+                    long bits = Double.doubleToRawLongBits(number.doubleValue());
+
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        writeByte((byte) (bits >>> shift));
+                    }
+                } else {
+                    // Parsed and arbitrary precision numbers keep their text
+                    writeByte(TAG_DECIMAL);
+                    writeString(number.toString());
+                }
+            } else {
+                writeByte(TAG_STRING);
+                writeString(primitive.getAsString());
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes;
+
+            try {
+                bytes = value.getBytes(MobileServiceClient.UTF8_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mLength, bytes.length);
+            mLength += bytes.length;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+
+            writeByte((byte) value);
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            mBuffer[mLength++] = value;
+        }
+
+        void ensureCapacity(int count) {
+            if (mLength + count > mBuffer.length) {
+                byte[] buffer = new byte[Math.max(mBuffer.length * 2, mLength + count)];
+                System.arraycopy(mBuffer, 0, buffer, 0, mLength);
+                mBuffer = buffer;
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] data = new byte[mLength];
+            System.arraycopy(mBuffer, 0, data, 0, mLength);
+
+            return data;
+        }
+    }
+
+    /**
+     * Reads encoded values from a buffer
+     */
+    private static class Reader {
+
+        /**
+         * The buffer
+         */
+        private final byte[] mData;
+
+        /**
+         * The position of the next byte to read
+         */
+        private int mPosition;
+
+        Reader(byte[] data, int position) {
+            mData = data;
+            mPosition = position;
+        }
+
+        JsonElement readElement() {
+            byte tag = readByte();
+
+            switch (tag) {
+                case TAG_NULL:
+                    return JsonNull.INSTANCE;
+                case TAG_FALSE:
+                    return new JsonPrimitive(false);
+                case TAG_TRUE:
+                    return new JsonPrimitive(true);
+                case TAG_LONG:
+                    long value = readVarint();
+                    return new JsonPrimitive((value >>> 1) ^ -(value & 1));
+                case TAG_DOUBLE:
+                    long bits = 0;
+
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | (readByte() & 0xFF);
+                    }
+
+                    return new JsonPrimitive(Double.longBitsToDouble(bits));
+                case TAG_DECIMAL:
+                    return new JsonPrimitive(new BigDecimal(readString()));
+                case TAG_STRING:
+                    return new JsonPrimitive(readString());
+                case TAG_ARRAY:
+                    int size = readLength();
+                    JsonArray array = new JsonArray();
+
+                    for (int i = 0; i < size; i++) {
+                        array.add(readElement());
+                    }
+
+                    return array;
+                case TAG_OBJECT:
+                    int count = readLength();
+                    JsonObject object = new JsonObject();
+
+                    for (int i = 0; i < count; i++) {
+                        String name = readString();
+                        object.add(name, readElement());
+                    }
+
+                    return object;
+                default:
+                    throw new IllegalArgumentException("Invalid binary JSON tag " + tag + " at offset " + (mPosition - 1));
+            }
+        }
+
+        String readString() {
+            int length = readLength();
+
+            if (length > mData.length - mPosition) {
+                throw new IllegalArgumentException("Truncated binary JSON value");
+            }
+
+            String value;
+
+            try {
+                value = new String(mData, mPosition, length, MobileServiceClient.UTF8_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+
+            mPosition += length;
+
+            return value;
+        }
+
+        int readLength() {
+            long length = readVarint();
+
+            if (length < 0 || length > mData.length - mPosition) {
+                throw new IllegalArgumentException("Invalid binary JSON length at offset " + mPosition);
+            }
+
+            return (int) length;
+        }
+
+        long readVarint() {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid binary JSON varint at offset " + mPosition);
+        }
+
+        byte readByte() {
+            if (mPosition >= mData.length) {
+                throw new IllegalArgumentException("Truncated binary JSON value");
+            }
+
+            return mData[mPosition++];
+        }
+    }
+}
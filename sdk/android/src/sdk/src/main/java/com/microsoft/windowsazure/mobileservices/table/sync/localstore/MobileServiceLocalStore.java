@@ -47,6 +47,16 @@ public interface MobileServiceLocalStore {
      */
     void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException;
 
+    /**
+     * Defines an index to be created on initialization, if it does not exist
+     *
+     * @param tableName the table name
+     * @param columns   the names of the indexed columns, in order
+     * @param unique    true if the index does not allow duplicate values
+     * @throws MobileServiceLocalStoreException
+     */
+    void defineIndex(String tableName, String[] columns, boolean unique) throws MobileServiceLocalStoreException;
+
     /**
      * Retrieve results from the local store.
      *
@@ -56,6 +66,18 @@ public interface MobileServiceLocalStore {
      */
     JsonElement read(Query query) throws MobileServiceLocalStoreException;
 
+    /**
+     * Retrieve results from the local store, one item at a time. The items
+     * are read from the store in pages as the returned iterator advances,
+     * instead of all at once; the inline count of the query is ignored.
+     * Items modified while iterating may be missed or returned twice.
+     *
+     * @param query a query to specify the local table and filter results
+     * @return An iterator over the results, that must be closed after use
+     * @throws MobileServiceLocalStoreException
+     */
+    MobileServiceLocalStoreIterator readStream(Query query) throws MobileServiceLocalStoreException;
+
     /**
      * Looks up an item from the local store.
      *
@@ -111,4 +133,29 @@ public interface MobileServiceLocalStore {
      * @throws MobileServiceLocalStoreException
      */
     void delete(Query query) throws MobileServiceLocalStoreException;
+
+    /**
+     * Starts a transaction on the calling thread. The changes made until
+     * commitTransaction or rollbackTransaction is called are applied all at
+     * once, or not at all. Transactions can be nested; the changes are only
+     * applied when the outermost transaction is committed, and they are
+     * discarded if any of the nested transactions is rolled back.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void beginTransaction() throws MobileServiceLocalStoreException;
+
+    /**
+     * Commits the current transaction of the calling thread
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void commitTransaction() throws MobileServiceLocalStoreException;
+
+    /**
+     * Rolls back the current transaction of the calling thread
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void rollbackTransaction() throws MobileServiceLocalStoreException;
 }
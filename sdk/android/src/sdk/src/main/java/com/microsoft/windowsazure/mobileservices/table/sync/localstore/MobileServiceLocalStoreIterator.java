@@ -0,0 +1,43 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceLocalStoreIterator.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterates over the results of a local store query, reading each item only
+ * when it is requested. The iterator holds store resources until it is
+ * closed, so it must always be closed after use.
+ */
+public interface MobileServiceLocalStoreIterator extends Iterator<JsonObject>, Closeable {
+    /**
+     * Releases the resources held by the iterator. The iterator has no more
+     * items once it is closed.
+     */
+    @Override
+    void close();
+}
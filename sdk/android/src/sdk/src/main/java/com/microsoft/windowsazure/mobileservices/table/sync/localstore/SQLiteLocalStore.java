@@ -28,9 +28,16 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseErrorHandler;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
+import android.util.Pair;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -38,10 +45,12 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -51,9 +60,37 @@ import java.util.Map.Entry;
  * Implements MobileServiceLocalStore backed by an SQLite DB
  */
 public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceLocalStore {
+    /**
+     * The maximum number of compiled statements kept for reuse
+     */
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    /**
+     * The maximum number of parameters of an SQLite statement
+     */
+    private static final int MAX_SQL_PARAMETERS = 999;
+
+    /**
+     * The maximum number of rows of a page read by a stream
+     */
+    private static final int STREAM_PAGE_SIZE = 100;
+
+    /**
+     * The prefix of the aliases of the columns a stream pages on
+     */
+    private static final String STREAM_KEY_ALIAS_PREFIX = "__streamkey";
+
+    /**
+     * The alias of the inline count column of a query
+     */
+    private static final String COUNT_ALIAS = "__inlinecount";
+
     private Map<String, Map<String, ColumnDataInfo>> mTables;
-    private int mConcurrencyCount;
-    private Object mConcurrencyLock;
+    private Map<String, String> mIndexes = new LinkedHashMap<String, String>();
+    private int mPageCacheSize;
+    private SQLiteSynchronousMode mSynchronousMode;
+    private boolean mCompactEncoding;
+    private SQLiteStatementCache mStatementCache = new SQLiteStatementCache(MAX_CACHED_STATEMENTS);
 
     /**
      * Constructor for SQLiteLocalStore
@@ -68,10 +105,36 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
      *                to downgrade the database
      */
     public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version) {
+        this(context, name, factory, version, 0, null);
+    }
+
+    /**
+     * Constructor for SQLiteLocalStore
+     *
+     * @param context         context to use to open or create the database
+     * @param name            name of the database file, or null for an in-memory database
+     * @param factory         factory to use for creating cursor objects, or null for the
+     *                        default
+     * @param version         version number of the database (starting at 1); if the
+     *                        database is older, onUpgrade will be used to upgrade the
+     *                        database; if the database is newer, onDowngrade will be used
+     *                        to downgrade the database
+     * @param pageCacheSize   number of database pages SQLite keeps in memory, or 0 for
+     *                        the SQLite default
+     * @param synchronousMode how often SQLite flushes the database to disk, or null for
+     *                        the SQLite default
+     */
+    public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version, int pageCacheSize,
+                            SQLiteSynchronousMode synchronousMode) {
         super(context, name, factory, version);
+
+        if (pageCacheSize < 0) {
+            throw new IllegalArgumentException("pageCacheSize cannot be negative");
+        }
+
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
-        this.mConcurrencyCount = 0;
-        this.mConcurrencyLock = new Object();
+        this.mPageCacheSize = pageCacheSize;
+        this.mSynchronousMode = synchronousMode;
     }
 
     /**
@@ -94,17 +157,73 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
     }
 
+    /**
+     * Constructor for SQLiteLocalStore
+     *
+     * @param context         context to use to open or create the database
+     * @param name            name of the database file, or null for an in-memory database
+     * @param factory         factory to use for creating cursor objects, or null for the
+     *                        default
+     * @param version         version number of the database (starting at 1); if the
+     *                        database is older, onUpgrade will be used to upgrade the
+     *                        database; if the database is newer, onDowngrade will be used
+     *                        to downgrade the database
+     * @param errorHandler    the DatabaseErrorHandler to be used when sqlite reports
+     *                        database corruption, or null to use the default error handler.
+     * @param pageCacheSize   number of database pages SQLite keeps in memory, or 0 for
+     *                        the SQLite default
+     * @param synchronousMode how often SQLite flushes the database to disk, or null for
+     *                        the SQLite default
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version, DatabaseErrorHandler errorHandler,
+                            int pageCacheSize, SQLiteSynchronousMode synchronousMode) {
+        super(context, name, factory, version, errorHandler);
+
+        if (pageCacheSize < 0) {
+            throw new IllegalArgumentException("pageCacheSize cannot be negative");
+        }
+
+        this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mPageCacheSize = pageCacheSize;
+        this.mSynchronousMode = synchronousMode;
+    }
+
+    /**
+     * Indicates if the values of ColumnDataType.Other columns are written in
+     * the compact binary encoding
+     */
+    public boolean isCompactEncoding() {
+        return this.mCompactEncoding;
+    }
+
+    /**
+     * Sets if the values of ColumnDataType.Other columns are written in a
+     * compact binary encoding instead of JSON text. Binary values are stored
+     * as BLOBs and decoded without parsing text; values already stored as
+     * text are still read. The binary encoding requires Honeycomb or later,
+     * and it is not used on older platforms.
+     *
+     * @param compactEncoding true to write binary values, false to write JSON
+     *                        text
+     */
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.mCompactEncoding = compactEncoding;
+    }
+
     @Override
     public void initialize() throws MobileServiceLocalStoreException {
-        SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+        SQLiteDatabase db = this.getWritableDatabase();
         try {
             for (Entry<String, Map<String, ColumnDataInfo>> entry : this.mTables.entrySet()) {
                 createTableFromObject(db, entry.getKey(), entry.getValue());
             }
+
+            for (String createIndexSql : this.mIndexes.values()) {
+                db.execSQL(createIndexSql);
+            }
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
-        } finally {
-            this.closeDatabaseSynchronized(db);
         }
     }
 
@@ -133,6 +252,44 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
+    @Override
+    public void defineIndex(String tableName, String[] columns, boolean unique) throws MobileServiceLocalStoreException {
+        try {
+            if (columns == null || columns.length == 0) {
+                throw new IllegalArgumentException("columns cannot be null or empty");
+            }
+
+            String invTableName = normalizeTableName(tableName);
+
+            StringBuilder indexName = new StringBuilder("ix_");
+            indexName.append(invTableName);
+
+            StringBuilder columnList = new StringBuilder();
+
+            for (String column : columns) {
+                String invColumnName = normalizeColumnName(column);
+
+                indexName.append("_");
+                indexName.append(invColumnName);
+
+                if (columnList.length() > 0) {
+                    columnList.append(",");
+                }
+
+                columnList.append("\"");
+                columnList.append(invColumnName);
+                columnList.append("\"");
+            }
+
+            String createSql = String.format("CREATE %sINDEX IF NOT EXISTS \"%s\" ON \"%s\" (%s)", unique ? "UNIQUE " : "", indexName, invTableName,
+                    columnList);
+
+            this.mIndexes.put(indexName.toString(), createSql);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
     @Override
     public JsonElement read(Query query) throws MobileServiceLocalStoreException {
         try {
@@ -145,7 +302,9 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             String[] columns = getColumns(query, table);
 
-            String whereClause = getWhereClause(query);
+            List<Object> selectionArgs = new ArrayList<Object>();
+
+            String whereClause = getWhereClause(query, selectionArgs);
 
             String orderByClause = QuerySQLWriter.getOrderByClause(query);
 
@@ -153,38 +312,47 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             Integer inlineCount = null;
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            SQLiteDatabase db = this.getWritableDatabase();
 
-            try {
-                Cursor cursor = null;
+            String[] queryColumns = columns;
+            List<Object> queryArgs = selectionArgs;
 
-                try {
-                    if (query.hasInlineCount()) {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, null);
-                        inlineCount = cursor.getCount();
+            if (query.hasInlineCount()) {
+                // The count is read by the statement that reads the page, so
+                // that they are consistent
+                Statement countStatement = generateCountStatement(invTableName, whereClause, selectionArgs);
 
-                        if (query.getSkip() > 0) {
-                            cursor.move(query.getSkip());
-                        }
-                    } else {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, limitClause);
-                    }
+                queryColumns = new String[columns.length + 1];
+                System.arraycopy(columns, 0, queryColumns, 0, columns.length);
+                queryColumns[columns.length] = "(" + countStatement.sql + ") AS \"" + COUNT_ALIAS + "\"";
 
-                    int limit = 0;
+                // The placeholders of the count come first in the statement
+                queryArgs = new ArrayList<Object>(countStatement.parameters);
+                queryArgs.addAll(selectionArgs);
+            }
 
-                    while (!(query.getTop() > 0 && limit == query.getTop()) && cursor.moveToNext()) {
-                        JsonObject row = parseRow(cursor, table);
-                        rows.add(row);
+            Cursor cursor = null;
 
-                        limit++;
-                    }
-                } finally {
-                    if (cursor != null && !cursor.isClosed()) {
-                        cursor.close();
+            try {
+                cursor = query(db, invTableName, queryColumns, whereClause, queryArgs, orderByClause, limitClause);
+
+                while (cursor.moveToNext()) {
+                    if (query.hasInlineCount() && inlineCount == null) {
+                        inlineCount = cursor.getInt(cursor.getColumnIndex(COUNT_ALIAS));
                     }
+
+                    JsonObject row = parseRow(cursor, table);
+                    rows.add(row);
                 }
             } finally {
-                this.closeDatabaseSynchronized(db);
+                if (cursor != null && !cursor.isClosed()) {
+                    cursor.close();
+                }
+            }
+
+            if (query.hasInlineCount() && inlineCount == null) {
+                // An empty page has no row to read the count from
+                inlineCount = (int) executeCountStatement(db, generateCountStatement(invTableName, whereClause, selectionArgs));
             }
 
             if (query.hasInlineCount()) {
@@ -202,6 +370,21 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
+    @Override
+    public MobileServiceLocalStoreIterator readStream(Query query) throws MobileServiceLocalStoreException {
+        try {
+            StreamIterator iterator = new StreamIterator(query);
+
+            // Reads the first page, so that errors are reported here rather
+            // than on the first use
+            iterator.hasNext();
+
+            return iterator;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
     @Override
     public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
         try {
@@ -210,24 +393,20 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
-            
-            try {
-                Cursor cursor = null;
+            SQLiteDatabase db = this.getWritableDatabase();
 
-                try {
-                    cursor = db.query(invTableName, table.keySet().toArray(new String[0]), "id = '" + itemId + "'", null, null, null, null);
+            Cursor cursor = null;
 
-                    if (cursor.moveToNext()) {
-                        result = parseRow(cursor, table);
-                    }
-                } finally {
-                    if (cursor != null && !cursor.isClosed()) {
-                        cursor.close();
-                    }
+            try {
+                cursor = db.query(invTableName, table.keySet().toArray(new String[0]), "id = ?", new String[]{itemId}, null, null, null);
+
+                if (cursor.moveToNext()) {
+                    result = parseRow(cursor, table);
                 }
             } finally {
-                this.closeDatabaseSynchronized(db);
+                if (cursor != null && !cursor.isClosed()) {
+                    cursor.close();
+                }
             }
 
             return result;
@@ -258,44 +437,47 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             int itemsCount = items.length;
 
             int tableColumnsSize = mTables.get(invTableName).entrySet().size();
-            int maxSize = 999;
-
-            int pageSize = maxSize / tableColumnsSize;
+            int pageSize = MAX_SQL_PARAMETERS / tableColumnsSize;
 
             int pageCounts = (itemsCount / pageSize) + 1;
 
             int pendingItems = itemsCount;
 
-            for (int i=0; i < pageCounts; i++) {
+            SQLiteDatabase db = this.getWritableDatabase();
 
-                int localPageSize = pageSize;
+            // The pages are written in one transaction, so they are
+            // committed to disk once
+            db.beginTransaction();
 
-                if (pendingItems < pageSize) {
-                    localPageSize = pendingItems;
-                }
+            try {
+                for (int i=0; i < pageCounts; i++) {
 
-                JsonObject[] pageItems = new JsonObject[localPageSize];
+                    int localPageSize = pageSize;
 
-                for(int j=0; j < localPageSize; j++) {
-                    pageItems[j] = items[(i * pageSize) + j];
-                }
+                    if (pendingItems < pageSize) {
+                        localPageSize = pendingItems;
+                    }
 
-                Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
+                    JsonObject[] pageItems = new JsonObject[localPageSize];
 
-                if (fromServer && statement.sql == "")
-                    return;
+                    for(int j=0; j < localPageSize; j++) {
+                        pageItems[j] = items[(i * pageSize) + j];
+                    }
+
+                    Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
 
-                SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+                    if (fromServer && statement.sql == "")
+                        break;
 
-                try {
-                    db.execSQL(statement.sql, statement.parameters.toArray());
-                } finally {
-                    this.closeDatabaseSynchronized(db);
+                    executeStatement(db, statement);
+
+                    pendingItems -= pageSize;
                 }
 
-                pendingItems -= pageSize;
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -306,13 +488,9 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(tableName);
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            SQLiteDatabase db = this.getWritableDatabase();
 
-            try {
-                db.delete(invTableName, "id = '" + itemId + "'", null);
-            } finally {
-                this.closeDatabaseSynchronized(db);
-            }
+            executeStatement(db, generateDeleteStatement(invTableName, itemId));
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -320,18 +498,41 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
     @Override
     public void delete(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
+        deleteItems(tableName, itemsIds);
+    }
+
+    /**
+     * Delete a list of items from the local store, with one statement per
+     * chunk of ids, in one transaction
+     *
+     * @param tableName the local table name
+     * @param itemsIds  the list of ids of the items to be deleted
+     * @return the number of deleted items
+     * @throws MobileServiceLocalStoreException
+     */
+    public int deleteItems(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
         try {
             String invTableName = normalizeTableName(tableName);
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            int deletedCount = 0;
+
+            SQLiteDatabase db = this.getWritableDatabase();
+
+            db.beginTransaction();
 
             try {
-                for (String itemId : itemsIds) {
-                    db.delete(invTableName, "id = '" + itemId + "'", null);
+                for (int i = 0; i < itemsIds.length; i += MAX_SQL_PARAMETERS) {
+                    int chunkSize = Math.min(MAX_SQL_PARAMETERS, itemsIds.length - i);
+
+                    deletedCount += executeUpdateDeleteStatement(db, generateDeleteStatement(invTableName, itemsIds, i, chunkSize));
                 }
+
+                db.setTransactionSuccessful();
             } finally {
-                this.closeDatabaseSynchronized(db);
+                db.endTransaction();
             }
+
+            return deletedCount;
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -342,20 +543,80 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(query.getTableName());
 
-            String whereClause = getWhereClause(query);
+            List<Object> selectionArgs = new ArrayList<Object>();
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            String whereClause = getWhereClause(query, selectionArgs);
 
-            try {
-                db.delete(invTableName, whereClause, null);
-            } finally {
-                this.closeDatabaseSynchronized(db);
-            }
+            SQLiteDatabase db = this.getWritableDatabase();
+
+            executeStatement(db, generateDeleteStatement(invTableName, whereClause, selectionArgs));
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        try {
+            this.getWritableDatabase().beginTransaction();
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
     }
 
+    @Override
+    public void commitTransaction() throws MobileServiceLocalStoreException {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void rollbackTransaction() throws MobileServiceLocalStoreException {
+        try {
+            this.getWritableDatabase().endTransaction();
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    /**
+     * Closes the database connection. The connection is kept open between
+     * operations, so the store should be closed when it is no longer used;
+     * it is opened again if the store is used after being closed.
+     */
+    @Override
+    public synchronized void close() {
+        this.mStatementCache.clear();
+
+        super.close();
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // The connection is kept open, so write-ahead logging lets reads
+        // run alongside writes and commits append to the log instead of
+        // rewriting the database
+        if (!db.isReadOnly() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            enableWriteAheadLogging(db);
+        }
+
+        if (this.mPageCacheSize > 0) {
+            db.execSQL("PRAGMA cache_size = " + this.mPageCacheSize);
+        }
+
+        if (this.mSynchronousMode != null) {
+            db.execSQL("PRAGMA synchronous = " + this.mSynchronousMode.name().toUpperCase(Locale.getDefault()));
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
     }
@@ -484,7 +745,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
                         result.addProperty(originalColumnName, dateTimeOffsetValue);
                         break;
                     case Other:
-                        JsonElement otherValue = parseOtherDataType(cursor.getString(columnIndex));
+                        JsonElement otherValue = parseOtherDataType(cursor, columnIndex);
                         result.add(originalColumnName, otherValue);
                         break;
                 }
@@ -494,7 +755,13 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return result;
     }
 
-    private JsonElement parseOtherDataType(String value) {
+    private JsonElement parseOtherDataType(Cursor cursor, int columnIndex) {
+        if (supportsCompactEncoding() && isBlob(cursor, columnIndex)) {
+            return BinaryJsonCodec.decode(cursor.getBlob(columnIndex));
+        }
+
+        String value = cursor.getString(columnIndex);
+
         if (value == null) {
             return null;
         }
@@ -502,6 +769,22 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return new JsonParser().parse(value);
     }
 
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static boolean isBlob(Cursor cursor, int columnIndex) {
+        return cursor.getType(columnIndex) == Cursor.FIELD_TYPE_BLOB;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLogging(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    private static boolean supportsCompactEncoding() {
+        // Cursor.getType, used to tell binary values from text, is only
+        // available on Honeycomb or later
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
     private Statement generateUpsertStatement(String tableName, JsonObject[] items, boolean fromServer) {
         Statement result = new Statement();
 
@@ -519,9 +802,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
         Map<String, ColumnDataInfo> tableDefinition = mTables.get(invTableName);
 
-        List<Object> parameters = new ArrayList<Object>(firstItem.entrySet().size());
-
-        int columnsOnStatement = 0;
+        List<String> properties = new ArrayList<String>(firstItem.entrySet().size());
 
         for (Entry<String, JsonElement> property : firstItem.entrySet()) {
 
@@ -540,10 +821,12 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             sql.append("\"");
             delimiter = ",";
 
-            columnsOnStatement++;
+            properties.add(property.getKey());
         }
 
-        if (columnsOnStatement == 0){
+        List<Object> parameters = new ArrayList<Object>(properties.size() * items.length);
+
+        if (properties.size() == 0){
             result.sql = "";
             result.parameters = parameters;
 
@@ -556,7 +839,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
         for (JsonObject item : items) {
             sql.append(prefix);
-            appendInsertValuesSql(sql, parameters, tableDefinition, item, fromServer);
+            appendInsertValuesSql(sql, parameters, tableDefinition, properties, item);
             prefix = ",";
         }
 
@@ -567,24 +850,19 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     }
 
     private void appendInsertValuesSql(StringBuilder sql, List<Object> parameters,
-                                       Map<String, ColumnDataInfo> tableDefinition, JsonObject item, boolean fromServer) {
+                                       Map<String, ColumnDataInfo> tableDefinition, List<String> properties, JsonObject item) {
         sql.append("(");
-        int colCount = 0;
-
-        for (Entry<String, JsonElement> property : item.entrySet()) {
 
-            if (fromServer && !tableDefinition.containsKey(normalizeColumnName(property.getKey()))) {
-                continue;
-            }
-
-            if (colCount > 0)
+        // The values of every item are bound in the column order of the
+        // first one, so all the rows share the same statement
+        for (int i = 0; i < properties.size(); i++) {
+            if (i > 0)
                 sql.append(",");
 
-            String paramName = "@p" + parameters.size();
-
-            JsonElement value = property.getValue();
+            String property = properties.get(i);
+            JsonElement value = item.get(property);
 
-            if (value.isJsonNull()) {
+            if (value == null || value.isJsonNull()) {
                 parameters.add(null);
             } else if (value.isJsonPrimitive()) {
                 if (value.getAsJsonPrimitive().isBoolean()) {
@@ -595,16 +873,181 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
                 } else {
                     parameters.add(value.getAsJsonPrimitive().getAsString());
                 }
+            } else if (this.mCompactEncoding && supportsCompactEncoding() && isOtherColumn(tableDefinition, property)) {
+                parameters.add(BinaryJsonCodec.encode(value));
             } else {
                 parameters.add(value.toString());
             }
 
-            sql.append(paramName);
-            colCount++;
+            sql.append("?");
+        }
+
+        sql.append(")");
+    }
+
+    private Statement generateCountStatement(String invTableName, String whereClause, List<Object> selectionArgs) {
+        Statement result = new Statement();
+
+        result.sql = "SELECT COUNT(*) FROM \"" + invTableName + "\"";
 
+        if (whereClause != null) {
+            result.sql += " WHERE " + whereClause;
+        }
+
+        result.parameters = new ArrayList<Object>(selectionArgs);
+
+        return result;
+    }
+
+    private Statement generateDeleteStatement(String invTableName, String itemId) {
+        Statement result = new Statement();
+
+        result.sql = "DELETE FROM \"" + invTableName + "\" WHERE id = ?";
+        result.parameters = new ArrayList<Object>(1);
+        result.parameters.add(itemId);
+
+        return result;
+    }
+
+    private Statement generateDeleteStatement(String invTableName, String whereClause, List<Object> selectionArgs) {
+        Statement result = new Statement();
+
+        result.sql = "DELETE FROM \"" + invTableName + "\"";
+
+        if (whereClause != null) {
+            result.sql += " WHERE " + whereClause;
+        }
+
+        result.parameters = new ArrayList<Object>(selectionArgs);
+
+        return result;
+    }
+
+    private Statement generateDeleteStatement(String invTableName, String[] itemsIds, int offset, int count) {
+        Statement result = new Statement();
+
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("DELETE FROM \"");
+        sql.append(invTableName);
+        sql.append("\" WHERE id IN (");
+
+        result.parameters = new ArrayList<Object>(count);
+
+        for (int i = 0; i < count; i++) {
+            sql.append(i > 0 ? ",?" : "?");
+            result.parameters.add(itemsIds[offset + i]);
         }
 
         sql.append(")");
+
+        result.sql = sql.toString();
+
+        return result;
+    }
+
+    private static Cursor query(SQLiteDatabase db, String invTableName, String[] columns, String whereClause, List<Object> selectionArgs,
+            String orderByClause, String limitClause) {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, invTableName, columns, whereClause, null, null, orderByClause, limitClause);
+
+        // The arguments are bound by the factory, with their type, instead
+        // of being passed as strings
+        return db.rawQueryWithFactory(new BindingCursorFactory(selectionArgs), sql, null, invTableName);
+    }
+
+    private void executeStatement(SQLiteDatabase db, Statement statement) {
+        // Statements with the same SQL text are compiled once, and the
+        // values are only passed as bind arguments
+        SQLiteStatement compiledStatement = this.mStatementCache.acquire(db, statement.sql);
+
+        try {
+            bindParameters(compiledStatement, statement.parameters);
+
+            compiledStatement.execute();
+        } finally {
+            this.mStatementCache.release(db, statement.sql, compiledStatement);
+        }
+    }
+
+    private int executeUpdateDeleteStatement(SQLiteDatabase db, Statement statement) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            executeStatement(db, statement);
+
+            // Older platforms use a single connection, whose last statement
+            // is the one just executed
+            String changesSql = "SELECT changes()";
+
+            SQLiteStatement compiledStatement = this.mStatementCache.acquire(db, changesSql);
+
+            try {
+                return (int) compiledStatement.simpleQueryForLong();
+            } finally {
+                this.mStatementCache.release(db, changesSql, compiledStatement);
+            }
+        }
+
+        SQLiteStatement compiledStatement = this.mStatementCache.acquire(db, statement.sql);
+
+        try {
+            bindParameters(compiledStatement, statement.parameters);
+
+            return executeUpdateDelete(compiledStatement);
+        } finally {
+            this.mStatementCache.release(db, statement.sql, compiledStatement);
+        }
+    }
+
+    private long executeCountStatement(SQLiteDatabase db, Statement statement) {
+        SQLiteStatement compiledStatement = this.mStatementCache.acquire(db, statement.sql);
+
+        try {
+            bindParameters(compiledStatement, statement.parameters);
+
+            return compiledStatement.simpleQueryForLong();
+        } finally {
+            this.mStatementCache.release(db, statement.sql, compiledStatement);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Cursor newCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        return new SQLiteCursor(driver, editTable, query);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Cursor newLegacyCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        return new SQLiteCursor(db, driver, editTable, query);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int executeUpdateDelete(SQLiteStatement statement) {
+        return statement.executeUpdateDelete();
+    }
+
+    private static void bindParameters(SQLiteProgram program, List<Object> parameters) {
+        for (int i = 0; i < parameters.size(); i++) {
+            bindParameter(program, i + 1, parameters.get(i));
+        }
+    }
+
+    private static void bindParameter(SQLiteProgram program, int index, Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof Long) {
+            program.bindLong(index, (Long) value);
+        } else if (value instanceof Double) {
+            program.bindDouble(index, (Double) value);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else {
+            program.bindString(index, value.toString());
+        }
+    }
+
+    private boolean isOtherColumn(Map<String, ColumnDataInfo> tableDefinition, String columnName) {
+        ColumnDataInfo column = tableDefinition.get(normalizeColumnName(columnName));
+
+        return column != null && column.getColumnDataType() == ColumnDataType.Other;
     }
 
     private String[] getColumns(Query query, Map<String, ColumnDataInfo> table) {
@@ -618,11 +1061,11 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return columns;
     }
 
-    private String getWhereClause(Query query) throws MobileServiceLocalStoreException {
+    private String getWhereClause(Query query, List<Object> selectionArgs) throws MobileServiceLocalStoreException {
         String whereClause;
 
         try {
-            whereClause = QuerySQLWriter.getWhereClause(query);
+            whereClause = QuerySQLWriter.getWhereClause(query, selectionArgs);
         } catch (MobileServiceException e) {
             throw new MobileServiceLocalStoreException("Unable to build filter expression.", e);
         }
@@ -702,18 +1145,177 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
     
-    private SQLiteDatabase getWritableDatabaseSynchronized() {
-        synchronized (mConcurrencyLock) {
-            mConcurrencyCount++;
-            return getWritableDatabase();
+    /**
+     * Iterator over the results of a query, read in pages. Each page starts
+     * after the ordering key of the last row read instead of at an offset,
+     * so rows that are not modified while iterating are read exactly once.
+     * The id ends the ordering key, so that it is unique.
+     */
+    private class StreamIterator extends SQLitePageIterator {
+        private String mInvTableName;
+        private Map<String, ColumnDataInfo> mTable;
+        private String[] mColumns;
+        private String mWhereClause;
+        private List<Object> mSelectionArgs = new ArrayList<Object>();
+        private List<String> mKeyColumns = new ArrayList<String>();
+        private List<Boolean> mKeyAscending = new ArrayList<Boolean>();
+        private String mOrderByClause;
+        private int mSkip;
+        private int mTop;
+        private Object[] mLastKey;
+        private int mReadCount;
+
+        StreamIterator(Query query) throws MobileServiceLocalStoreException {
+            super(STREAM_PAGE_SIZE);
+
+            mInvTableName = normalizeTableName(query.getTableName());
+            mTable = mTables.get(mInvTableName);
+            mWhereClause = getWhereClause(query, mSelectionArgs);
+            mSkip = Math.max(query.getSkip(), 0);
+            mTop = query.getTop();
+
+            if (query.getOrderBy() != null) {
+                for (Pair<String, QueryOrder> order : query.getOrderBy()) {
+                    mKeyColumns.add(normalizeColumnName(order.first));
+                    mKeyAscending.add(order.second == QueryOrder.Ascending);
+                }
+            }
+
+            mKeyColumns.add("id");
+            mKeyAscending.add(true);
+
+            // The key columns are also read under an alias, so that they
+            // are not added to the rows if they are not projected
+            String[] columns = getColumns(query, mTable);
+            mColumns = new String[columns.length + mKeyColumns.size()];
+            System.arraycopy(columns, 0, mColumns, 0, columns.length);
+
+            StringBuilder orderBy = new StringBuilder();
+
+            for (int i = 0; i < mKeyColumns.size(); i++) {
+                mColumns[columns.length + i] = "\"" + mKeyColumns.get(i) + "\" AS \"" + STREAM_KEY_ALIAS_PREFIX + i + "\"";
+
+                if (i > 0) {
+                    orderBy.append(", ");
+                }
+
+                orderBy.append("\"");
+                orderBy.append(mKeyColumns.get(i));
+                orderBy.append(mKeyAscending.get(i) ? "\" ASC" : "\" DESC");
+            }
+
+            mOrderByClause = orderBy.toString();
         }
-    }
-    
-    private void closeDatabaseSynchronized(SQLiteDatabase db) {
-        synchronized (mConcurrencyLock) {
-            mConcurrencyCount--;
-            if (mConcurrencyCount == 0) {
-                db.close();
+
+        @Override
+        protected List<JsonObject> readPage(int pageSize) {
+            int count = mTop > 0 ? Math.min(pageSize, mTop - mReadCount) : pageSize;
+
+            List<JsonObject> rows = new ArrayList<JsonObject>(Math.max(count, 0));
+
+            if (count <= 0) {
+                return rows;
+            }
+
+            List<Object> selectionArgs = new ArrayList<Object>(mSelectionArgs);
+            String whereClause = mWhereClause;
+            String limitClause = String.valueOf(count);
+
+            if (mLastKey != null) {
+                String keyCondition = getKeyCondition(selectionArgs);
+                whereClause = whereClause != null ? "(" + whereClause + ") AND (" + keyCondition + ")" : keyCondition;
+            } else if (mSkip > 0) {
+                // Only the first page skips rows, the next ones start after
+                // the last row read
+                limitClause = mSkip + "," + count;
+            }
+
+            Cursor cursor = query(getWritableDatabase(), mInvTableName, mColumns, whereClause, selectionArgs, mOrderByClause, limitClause);
+
+            try {
+                while (cursor.moveToNext()) {
+                    rows.add(parseRow(cursor, mTable));
+                }
+
+                if (!rows.isEmpty()) {
+                    cursor.moveToPosition(rows.size() - 1);
+
+                    mLastKey = new Object[mKeyColumns.size()];
+
+                    for (int i = 0; i < mLastKey.length; i++) {
+                        mLastKey[i] = getKeyValue(cursor, cursor.getColumnIndex(STREAM_KEY_ALIAS_PREFIX + i), mKeyColumns.get(i));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            mReadCount += rows.size();
+
+            return rows;
+        }
+
+        /**
+         * Returns the condition of the rows after the last key, in the order
+         * of SQLite, where NULL is lower than any value
+         *
+         * @param selectionArgs The list the values of the placeholders are
+         *                      added to
+         */
+        private String getKeyCondition(List<Object> selectionArgs) {
+            StringBuilder condition = new StringBuilder();
+
+            for (int i = 0; i < mLastKey.length; i++) {
+                if (i > 0) {
+                    condition.append(" OR ");
+                }
+
+                condition.append("(");
+
+                for (int j = 0; j < i; j++) {
+                    condition.append("\"").append(mKeyColumns.get(j)).append("\" IS ? AND ");
+                    selectionArgs.add(mLastKey[j]);
+                }
+
+                String column = "\"" + mKeyColumns.get(i) + "\"";
+
+                if (mKeyAscending.get(i)) {
+                    if (mLastKey[i] == null) {
+                        condition.append(column).append(" IS NOT NULL");
+                    } else {
+                        condition.append(column).append(" > ?");
+                        selectionArgs.add(mLastKey[i]);
+                    }
+                } else {
+                    if (mLastKey[i] == null) {
+                        condition.append("0");
+                    } else {
+                        condition.append("(").append(column).append(" < ? OR ").append(column).append(" IS NULL)");
+                        selectionArgs.add(mLastKey[i]);
+                    }
+                }
+
+                condition.append(")");
+            }
+
+            return condition.toString();
+        }
+
+        private Object getKeyValue(Cursor cursor, int columnIndex, String columnName) {
+            if (cursor.isNull(columnIndex)) {
+                return null;
+            }
+
+            ColumnDataInfo column = mTable.get(columnName);
+
+            switch (column != null ? column.getColumnDataType() : ColumnDataType.String) {
+                case Boolean:
+                case Integer:
+                    return cursor.getLong(columnIndex);
+                case Real:
+                    return cursor.getDouble(columnIndex);
+                default:
+                    return cursor.getString(columnIndex);
             }
         }
     }
@@ -722,4 +1324,27 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         private String sql;
         private List<Object> parameters;
     }
+
+    /**
+     * Creates the cursors of the queries, binding the arguments with their
+     * type before the query runs
+     */
+    private static class BindingCursorFactory implements CursorFactory {
+        private List<Object> mArguments;
+
+        BindingCursorFactory(List<Object> arguments) {
+            this.mArguments = arguments;
+        }
+
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            bindParameters(query, this.mArguments);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                return SQLiteLocalStore.newCursor(masterQuery, editTable, query);
+            } else {
+                return newLegacyCursor(db, masterQuery, editTable, query);
+            }
+        }
+    }
 }
\ No newline at end of file
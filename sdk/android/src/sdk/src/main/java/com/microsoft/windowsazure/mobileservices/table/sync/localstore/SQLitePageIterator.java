@@ -0,0 +1,112 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLitePageIterator.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the rows of a query, read in pages of a bounded number of
+ * rows. Each page is read by its own query when the previous one has been
+ * consumed, so no cursor is kept open between pages.
+ */
+abstract class SQLitePageIterator implements MobileServiceLocalStoreIterator {
+
+    /**
+     * The maximum number of rows of a page
+     */
+    private final int mPageSize;
+
+    /**
+     * The rows of the current page
+     */
+    private List<JsonObject> mPage = Collections.emptyList();
+
+    /**
+     * The index of the row of the current page returned by the next call to
+     * next()
+     */
+    private int mIndex;
+
+    /**
+     * Indicates if there are no more pages to read
+     */
+    private boolean mLastPage;
+
+    /**
+     * Constructor for SQLitePageIterator
+     *
+     * @param pageSize The maximum number of rows of a page
+     */
+    SQLitePageIterator(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be greater than zero");
+        }
+
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Reads the page following the rows already read
+     *
+     * @param pageSize The maximum number of rows to read
+     * @return The rows read, fewer than pageSize if they are the last ones
+     */
+    protected abstract List<JsonObject> readPage(int pageSize);
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (mIndex >= mPage.size() && !mLastPage) {
+            mPage = readPage(mPageSize);
+            mIndex = 0;
+            mLastPage = mPage.size() < mPageSize;
+        }
+
+        return mIndex < mPage.size();
+    }
+
+    @Override
+    public synchronized JsonObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return mPage.get(mIndex++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void close() {
+        mPage = Collections.emptyList();
+        mIndex = 0;
+        mLastPage = true;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteStatementCache.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the compiled statements of a database, by SQL text. A statement
+ * is taken out of the cache while it runs, so it is never shared by threads
+ * nor closed while in use, and no lock is held while the database is busy.
+ */
+class SQLiteStatementCache {
+
+    /**
+     * The maximum number of cached statements
+     */
+    private final int mMaxSize;
+
+    /**
+     * The cached statements, from the least to the most recently used
+     */
+    private final LinkedHashMap<String, SQLiteStatement> mStatements;
+
+    /**
+     * The database of the cached statements
+     */
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * Constructor for SQLiteStatementCache
+     *
+     * @param maxSize The maximum number of cached statements
+     */
+    SQLiteStatementCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+
+        mMaxSize = maxSize;
+        mStatements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > mMaxSize) {
+                    eldest.getValue().close();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Takes a compiled statement out of the cache, or compiles it if it is
+     * not cached. It must be given back with release.
+     *
+     * @param db  The database
+     * @param sql The SQL text of the statement
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        synchronized (this) {
+            if (db != mDatabase) {
+                clear();
+                mDatabase = db;
+            }
+
+            SQLiteStatement statement = mStatements.remove(sql);
+
+            if (statement != null) {
+                return statement;
+            }
+        }
+
+        return db.compileStatement(sql);
+    }
+
+    /**
+     * Gives back a statement taken with acquire, caching it unless the cache
+     * already has one for the same SQL text or the database was reopened
+     *
+     * @param db        The database
+     * @param sql       The SQL text of the statement
+     * @param statement The statement
+     */
+    void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        // The bound values are not kept alive by the cache
+        statement.clearBindings();
+
+        synchronized (this) {
+            if (db == mDatabase && !mStatements.containsKey(sql)) {
+                mStatements.put(sql, statement);
+                return;
+            }
+        }
+
+        statement.close();
+    }
+
+    /**
+     * Closes and removes all the cached statements
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+
+        mStatements.clear();
+        mDatabase = null;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteSynchronousMode.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+/**
+ * Enumeration of the SQLite synchronous modes, which control how often the
+ * database is flushed to disk.
+ */
+public enum SQLiteSynchronousMode {
+    /**
+     * Writes are not flushed; a power loss may corrupt the database
+     */
+    Off,
+
+    /**
+     * Writes are flushed at critical moments; with write-ahead logging a
+     * power loss may roll back the last transactions but never corrupts the
+     * database
+     */
+    Normal,
+
+    /**
+     * Writes are flushed on every commit
+     */
+    Full
+}
@@ -33,6 +33,7 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
     private MobileServiceLocalStore mStore;
     private JsonObject mItem;
     private String mItemBackupTable;
+    private String mItemSnapshotTable;
 
     /**
      * Constructor for LocalTableOperationProcessor
@@ -42,19 +43,58 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
      * @param itemBackupTable the table name for item backup
      */
     public LocalTableOperationProcessor(MobileServiceLocalStore store, JsonObject item, String itemBackupTable) {
+        this(store, item, itemBackupTable, null);
+    }
+
+    /**
+     * Constructor for LocalTableOperationProcessor
+     *
+     * @param store             the local store
+     * @param item              the item to process
+     * @param itemBackupTable   the table name for item backup
+     * @param itemSnapshotTable the table name for the snapshots of the items
+     *                          last returned by the server, or null to leave
+     *                          the snapshots unchanged
+     */
+    public LocalTableOperationProcessor(MobileServiceLocalStore store, JsonObject item, String itemBackupTable, String itemSnapshotTable) {
         this.mStore = store;
         this.mItem = item;
         this.mItemBackupTable = itemBackupTable;
+        this.mItemSnapshotTable = itemSnapshotTable;
     }
 
     @Override
     public Void visit(InsertOperation operation) throws Throwable {
+        if (this.mItemSnapshotTable != null) {
+            this.mStore.delete(this.mItemSnapshotTable, getTableItemId(operation));
+        }
+
         this.mStore.upsert(operation.getTableName(), this.mItem, false);
         return null;
     }
 
     @Override
     public Void visit(UpdateOperation operation) throws Throwable {
+        if (this.mItemSnapshotTable != null) {
+            String tableItemId = getTableItemId(operation);
+
+            // The snapshot is taken before the first pending change, so it
+            // holds the item as it was last returned by the server
+            if (this.mStore.lookup(this.mItemSnapshotTable, tableItemId) == null) {
+                JsonObject serverItem = this.mStore.lookup(operation.getTableName(), operation.getItemId());
+
+                if (serverItem != null) {
+                    JsonObject snapshot = new JsonObject();
+                    snapshot.addProperty("id", tableItemId);
+                    snapshot.addProperty("tablename", operation.getTableName());
+                    snapshot.addProperty("itemid", operation.getItemId());
+                    snapshot.add("serveritem", serverItem);
+
+                    this.mStore.upsert(this.mItemSnapshotTable, snapshot, false);
+                }
+            }
+        }
+
         this.mStore.upsert(operation.getTableName(), this.mItem, false);
         return null;
     }
@@ -66,10 +106,7 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
         if (backedUpItem == null) {
             backedUpItem = this.mItem;
         }
-        // '/' is a reserved character that cannot be used on string ids.
-        // We use it to build a unique compound string from tableName and
-        // itemId
-        String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+        String tableItemId = getTableItemId(operation);
 
         JsonObject item = new JsonObject();
         item.addProperty("id", tableItemId);
@@ -83,6 +120,13 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
         return null;
     }
 
+    private static String getTableItemId(TableOperation operation) {
+        // '/' is a reserved character that cannot be used on string ids.
+        // We use it to build a unique compound string from tableName and
+        // itemId
+        return operation.getTableName() + "/" + operation.getItemId();
+    }
+
     /**
      * Gets the item to process
      */
@@ -23,15 +23,17 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.sync.operations;
 
+import com.google.common.base.Predicate;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonObjects;
 
 import java.util.EnumSet;
 import java.util.Locale;
@@ -44,6 +46,7 @@ import java.util.concurrent.ExecutionException;
 public class RemoteTableOperationProcessor implements TableOperationVisitor<JsonObject> {
     private MobileServiceClient mClient;
     private JsonObject mItem;
+    private JsonObject mServerItem;
 
     /**
      * Constructor for RemoteTableOperationProcessor
@@ -52,8 +55,22 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
      * @param item   the item to process
      */
     public RemoteTableOperationProcessor(MobileServiceClient client, JsonObject item) {
+        this(client, item, null);
+    }
+
+    /**
+     * Constructor for RemoteTableOperationProcessor
+     *
+     * @param client     the mobile service client
+     * @param item       the item to process
+     * @param serverItem the item as it was last returned by the server, used
+     *                   to send only the changed properties on updates, or
+     *                   null to send all of them
+     */
+    public RemoteTableOperationProcessor(MobileServiceClient client, JsonObject item, JsonObject serverItem) {
         this.mClient = client;
         this.mItem = item;
+        this.mServerItem = serverItem;
     }
 
     private static EnumSet<MobileServiceSystemProperty> getSystemProperties(JsonObject instance) {
@@ -81,20 +98,12 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
     }
 
     private static JsonObject removeSystemProperties(JsonObject instance) {
-        boolean haveCloned = false;
-
-        for (Entry<String, JsonElement> property : instance.entrySet()) {
-            if (property.getKey().startsWith("__")) {
-                if (!haveCloned) {
-                    instance = (JsonObject) new JsonParser().parse(instance.toString());
-                    haveCloned = true;
-                }
-
-                instance.remove(property.getKey());
+        return JsonObjects.withoutProperties(instance, new Predicate<String>() {
+            @Override
+            public boolean apply(String propertyName) {
+                return propertyName.startsWith("__");
             }
-        }
-
-        return instance;
+        });
     }
 
     @Override
@@ -118,7 +127,7 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
         MobileServiceJsonTable table = this.getRemoteTable(operation.getTableName());
         table.setSystemProperties(getSystemProperties(this.mItem));
 
-        ListenableFuture<JsonObject> future = table.update(this.mItem);
+        ListenableFuture<JsonObject> future = table.update(this.mItem, this.mServerItem, null);
 
         try {
             return future.get();
@@ -178,6 +187,20 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
         this.mItem = item;
     }
 
+    /**
+     * Gets the item as it was last returned by the server
+     */
+    public JsonObject getServerItem() {
+        return this.mServerItem;
+    }
+
+    /**
+     * Sets the item as it was last returned by the server
+     */
+    public void setServerItem(JsonObject serverItem) {
+        this.mServerItem = serverItem;
+    }
+
     /**
      * Returns an instance of a remote table to be used by this processor
      *
@@ -187,6 +210,7 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
     private MobileServiceJsonTable getRemoteTable(String tableName) {
         MobileServiceJsonTable table = this.mClient.getTable(tableName);
         table.addFeature(MobileServiceFeatures.Offline);
+        table.setRequestPriority(RequestPriority.Background);
         return table;
     }
 }
@@ -10,16 +10,16 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProper
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.serialization.Iso8601DateCodec;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TimeZone;
 
 /**
  * Created by marianosanchez on 11/3/14.
@@ -133,7 +133,9 @@ public class IncrementalPullStrategy extends PullStrategy {
 
         JsonObject updatedElement = new JsonObject();
 
-        updatedElement.addProperty("id", query.getTableName() + "_" + queryId);
+        // The paged query loses its table name when combined with the
+        // __updatedAt filter, so the key uses the original query
+        updatedElement.addProperty("id", originalQuery.getTableName() + "_" + queryId);
         updatedElement.addProperty("maxupdateddate", lastElementUpdatedAt);
 
         try {
@@ -175,11 +177,8 @@ public class IncrementalPullStrategy extends PullStrategy {
             return null;
         }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-
         try {
-            return new DateTimeOffset(sdf.parse(stringValue));
+            return new DateTimeOffset(new Date(Iso8601DateCodec.parse(stringValue)));
         } catch (ParseException e) {
             return null;
         }
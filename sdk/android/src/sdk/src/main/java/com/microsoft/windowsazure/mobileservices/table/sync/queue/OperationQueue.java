@@ -100,6 +100,9 @@ public class OperationQueue {
         columns.put("state", ColumnDataType.Real);
 
         store.defineTable(OPERATION_QUEUE_TABLE, columns);
+
+        // The queue is loaded in this order
+        store.defineIndex(OPERATION_QUEUE_TABLE, new String[]{"__queueloadedat", "sequence"}, false);
     }
 
     /**
@@ -189,6 +192,39 @@ public class OperationQueue {
         return new OperationQueueItem(operation, queueLoadedAt, sequence);
     }
 
+    /**
+     * Apply a new table operation to the local store and enqueue it, in one
+     * local store transaction
+     *
+     * @param operation      the table operation
+     * @param localProcessor the visitor that applies the operation to the
+     *                       local store
+     * @throws Throwable
+     */
+    public void enqueue(TableOperation operation, TableOperationVisitor<?> localProcessor) throws Throwable {
+        this.mSyncLock.writeLock().lock();
+
+        try {
+            // The transaction is started while holding the queue lock, which
+            // is also held while dequeued operations are deleted from the
+            // store, so both always wait for each other in the same order
+            this.mStore.beginTransaction();
+
+            try {
+                operation.accept(localProcessor);
+
+                enqueue(operation);
+            } catch (Throwable t) {
+                this.mStore.rollbackTransaction();
+                throw t;
+            }
+
+            this.mStore.commitTransaction();
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
+
     /**
      * Enqueue a new table operation
      *
@@ -324,6 +360,25 @@ public class OperationQueue {
         }
     }
 
+    /**
+     * Indicates if there is a pending table operation on an item
+     *
+     * @param tableName the table name
+     * @param itemId    the item id
+     */
+    public boolean isPending(String tableName, String itemId) {
+        this.mSyncLock.readLock().lock();
+
+        try {
+            // '/' is a reserved character that cannot be used on string ids.
+            // We use it to build a unique compound string from tableName and
+            // itemId
+            return this.mIdOperationMap.containsKey(tableName + "/" + itemId);
+        } finally {
+            this.mSyncLock.readLock().unlock();
+        }
+    }
+
     /**
      * Returns the count of pending table operation for a specific table
      *
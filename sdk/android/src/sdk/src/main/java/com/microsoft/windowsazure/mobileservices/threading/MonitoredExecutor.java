@@ -0,0 +1,193 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MonitoredExecutor.java
+ */
+package com.microsoft.windowsazure.mobileservices.threading;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that delegates to another executor and keeps track of the tasks
+ * waiting to run and running on it
+ */
+public class MonitoredExecutor implements Executor {
+
+    /**
+     * Time, in seconds, an idle thread of a bounded executor is kept alive
+     */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The executor that runs the tasks
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Number of tasks waiting to run
+     */
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+
+    /**
+     * Number of tasks running
+     */
+    private final AtomicInteger mActiveCount = new AtomicInteger();
+
+    /**
+     * Number of tasks completed
+     */
+    private final AtomicLong mCompletedCount = new AtomicLong();
+
+    /**
+     * Indicates if the current thread is running a task of the executor
+     */
+    private final ThreadLocal<Boolean> mRunningTask = new ThreadLocal<Boolean>();
+
+    /**
+     * Constructor for MonitoredExecutor
+     *
+     * @param executor The executor that runs the tasks
+     */
+    public MonitoredExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+
+        mExecutor = executor;
+    }
+
+    /**
+     * Creates a MonitoredExecutor backed by a bounded pool of daemon threads.
+     * Idle threads are stopped after a while on Gingerbread and later, and
+     * tasks wait in a queue while all the threads are busy.
+     *
+     * @param threads    Maximum number of threads
+     * @param namePrefix Prefix of the thread names
+     * @return The MonitoredExecutor
+     */
+    public static MonitoredExecutor newBoundedExecutor(int threads, String namePrefix) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than zero");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(namePrefix));
+        allowCoreThreadTimeOut(executor);
+
+        return new MonitoredExecutor(executor);
+    }
+
+    /**
+     * Lets the idle threads of the executor time out. Older platforms keep
+     * them alive.
+     *
+     * @param executor The executor
+     */
+    private static void allowCoreThreadTimeOut(ThreadPoolExecutor executor) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            allowCoreThreadTimeOutGingerbread(executor);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOutGingerbread(ThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        mQueueDepth.incrementAndGet();
+
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mQueueDepth.decrementAndGet();
+                    mActiveCount.incrementAndGet();
+
+                    // Tasks can run nested on an executor that runs them
+                    // inline, so only the outermost one clears the flag
+                    boolean nested = isRunningTask();
+                    mRunningTask.set(Boolean.TRUE);
+
+                    try {
+                        command.run();
+                    } finally {
+                        if (!nested) {
+                            mRunningTask.remove();
+                        }
+
+                        mActiveCount.decrementAndGet();
+                        mCompletedCount.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mQueueDepth.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the executor that runs the tasks
+     */
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Returns the number of tasks waiting to run
+     */
+    public int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    /**
+     * Returns the number of tasks running
+     */
+    public int getActiveCount() {
+        return mActiveCount.get();
+    }
+
+    /**
+     * Returns the number of tasks completed
+     */
+    public long getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * Indicates if the current thread is running a task of the executor. A
+     * task waiting on another task of a bounded executor can deadlock it, so
+     * such tasks run the work inline instead.
+     */
+    public boolean isRunningTask() {
+        return Boolean.TRUE.equals(mRunningTask.get());
+    }
+}
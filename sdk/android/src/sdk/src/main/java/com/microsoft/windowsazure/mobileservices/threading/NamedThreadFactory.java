@@ -0,0 +1,60 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * NamedThreadFactory.java
+ */
+package com.microsoft.windowsazure.mobileservices.threading;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory that creates named daemon threads
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    /**
+     * Prefix of the thread names
+     */
+    private final String mNamePrefix;
+
+    /**
+     * Number of threads created
+     */
+    private final AtomicInteger mThreadCount = new AtomicInteger();
+
+    /**
+     * Constructor for NamedThreadFactory
+     *
+     * @param namePrefix Prefix of the thread names
+     */
+    public NamedThreadFactory(String namePrefix) {
+        mNamePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, mNamePrefix + "-" + mThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
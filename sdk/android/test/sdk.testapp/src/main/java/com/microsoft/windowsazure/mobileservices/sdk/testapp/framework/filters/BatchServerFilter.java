@@ -0,0 +1,201 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for a Mobile Service that handles $batch requests, with in-memory
+ * tables and an echo custom API
+ */
+public class BatchServerFilter implements ServiceFilter {
+    private static final String CRLF = "\r\n";
+    private static final String ENCODING = "ISO-8859-1";
+
+    private Map<String, Map<String, JsonObject>> tables = new HashMap<String, Map<String, JsonObject>>();
+    private List<String> receivedParts = new ArrayList<String>();
+    private int batchRequestCount;
+    private int nextId = 1;
+
+    public synchronized int getBatchRequestCount() {
+        return batchRequestCount;
+    }
+
+    public synchronized List<String> getReceivedParts() {
+        return new ArrayList<String>(receivedParts);
+    }
+
+    public synchronized Map<String, JsonObject> getTable(String name) {
+        Map<String, JsonObject> table = tables.get(name);
+
+        if (table == null) {
+            table = new HashMap<String, JsonObject>();
+            tables.put(name, table);
+        }
+
+        return table;
+    }
+
+    @Override
+    public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+
+        try {
+            if (request.getUrl().endsWith("/$batch") && request.getMethod().equals("POST")) {
+                response.setStatus(new StatusLineMock(202));
+                response.setHeaders(new Header[]{new BasicHeader("Content-Type", "multipart/mixed; boundary=batchresponse_1")});
+                response.setContent(handleBatch(getBoundary(request), new String(request.getRawContent(), ENCODING)).getBytes(ENCODING));
+            } else {
+                response.setStatus(new StatusLineMock(404));
+                response.setContent("{\"error\":\"Not Found\"}");
+            }
+        } catch (Exception e) {
+            response.setStatus(new StatusLineMock(500));
+            response.setContent("{\"error\":\"" + e.getMessage() + "\"}");
+        }
+
+        return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+    }
+
+    private synchronized String handleBatch(String boundary, String content) throws Exception {
+        batchRequestCount++;
+
+        StringBuilder builder = new StringBuilder();
+        String delimiter = "--" + boundary;
+
+        for (String part : content.split(delimiter)) {
+            if (!part.startsWith(CRLF) || part.trim().length() == 0) {
+                continue;
+            }
+
+            // Skip the MIME headers of the part
+            String httpRequest = part.substring(part.indexOf(CRLF + CRLF) + 4);
+            String head = httpRequest.substring(0, httpRequest.indexOf(CRLF + CRLF));
+            String body = httpRequest.substring(httpRequest.indexOf(CRLF + CRLF) + 4);
+
+            if (body.endsWith(CRLF)) {
+                body = body.substring(0, body.length() - 2);
+            }
+
+            String[] requestLine = head.split(CRLF)[0].split(" ");
+            receivedParts.add(requestLine[0] + " " + new URI(requestLine[1]).getPath());
+
+            builder.append("--batchresponse_1").append(CRLF);
+            builder.append("Content-Type: application/http").append(CRLF);
+            builder.append("Content-Transfer-Encoding: binary").append(CRLF);
+            builder.append(CRLF);
+            builder.append(handleOperation(requestLine[0], new URI(requestLine[1]).getPath(), body));
+            builder.append(CRLF);
+        }
+
+        builder.append("--batchresponse_1--").append(CRLF);
+
+        return builder.toString();
+    }
+
+    private String handleOperation(String method, String path, String body) {
+        String[] segments = path.split("/");
+
+        if (segments.length >= 3 && segments[1].equals("api")) {
+            return createResponse(200, "OK", body);
+        }
+
+        if (segments.length < 3 || !segments[1].equals("tables")) {
+            return createResponse(404, "Not Found", "{\"error\":\"Not Found\"}");
+        }
+
+        Map<String, JsonObject> table = getTable(segments[2]);
+        String id = segments.length > 3 ? segments[3] : null;
+
+        if (method.equals("POST") && id == null) {
+            JsonObject item = new JsonParser().parse(body).getAsJsonObject();
+
+            if (!item.has("id")) {
+                item.addProperty("id", String.valueOf(nextId++));
+            }
+
+            table.put(item.get("id").getAsString(), item);
+
+            return createResponse(201, "Created", item.toString());
+        }
+
+        JsonObject existing = id != null ? table.get(id) : null;
+
+        if (existing == null) {
+            return createResponse(404, "Not Found", "{\"error\":\"Not Found\"}");
+        }
+
+        if (method.equals("PATCH")) {
+            JsonObject changes = new JsonParser().parse(body).getAsJsonObject();
+
+            for (Map.Entry<String, JsonElement> property : changes.entrySet()) {
+                existing.add(property.getKey(), property.getValue());
+            }
+
+            return createResponse(200, "OK", existing.toString());
+        } else if (method.equals("DELETE")) {
+            table.remove(id);
+
+            return createResponse(204, "No Content", "");
+        } else {
+            return createResponse(200, "OK", existing.toString());
+        }
+    }
+
+    private static String createResponse(int statusCode, String reason, String body) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("HTTP/1.1 ").append(statusCode).append(' ').append(reason).append(CRLF);
+
+        if (body.length() > 0) {
+            builder.append("Content-Type: application/json").append(CRLF);
+        }
+
+        builder.append(CRLF);
+        builder.append(body);
+
+        return builder.toString();
+    }
+
+    private static String getBoundary(ServiceFilterRequest request) {
+        for (Header header : request.getHeaders()) {
+            if (header.getName().equalsIgnoreCase("Content-Type")) {
+                return header.getValue().substring(header.getValue().indexOf("boundary=") + "boundary=".length());
+            }
+        }
+
+        return null;
+    }
+}
@@ -20,6 +20,7 @@ See the Apache Version 2.0 License for specific language governing permissions a
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters;
 
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
 
@@ -33,6 +34,7 @@ public class ServiceFilterRequestMock implements ServiceFilterRequest {
     private ServiceFilterResponse responseToUse;
     private Boolean hasErrorOnExecute;
     private Exception exceptionToThrow;
+    private RequestPriority priority = RequestPriority.Normal;
 
     public ServiceFilterRequestMock(ServiceFilterResponse response) {
         this.responseToUse = response;
@@ -89,6 +91,16 @@ public class ServiceFilterRequestMock implements ServiceFilterRequest {
         return null;
     }
 
+    @Override
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+
     @Override
     public ServiceFilterResponse execute() throws Exception {
         if (this.hasErrorOnExecute) {
@@ -9,9 +9,11 @@ import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreIterator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,7 +35,11 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
     ;
     public List<Query> DeleteQueries = new ArrayList<Query>();
     public Queue<String> ReadResponses = new LinkedList<String>();
+    public List<String> ReadStreamThreads = new ArrayList<String>();
     public Function<Query, JsonElement> readAsyncFunc;
+    public int TransactionsBegun;
+    public int TransactionsCommitted;
+    public int TransactionsRolledBack;
 
     @Override
     public void initialize() throws MobileServiceLocalStoreException {
@@ -45,6 +51,11 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
 
     }
 
+    @Override
+    public void defineIndex(String tableName, String[] columns, boolean unique) throws MobileServiceLocalStoreException {
+
+    }
+
     @Override
     public JsonElement read(Query query) throws MobileServiceLocalStoreException {
 
@@ -79,6 +90,40 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return result;
     }
 
+    @Override
+    public MobileServiceLocalStoreIterator readStream(Query query) throws MobileServiceLocalStoreException {
+        JsonElement result = read(query);
+
+        if (result != null && result.isJsonObject()) {
+            result = result.getAsJsonObject().get("results");
+        }
+
+        final Iterator<JsonElement> items = result != null ? result.getAsJsonArray().iterator() : new JsonArray().iterator();
+
+        return new MobileServiceLocalStoreIterator() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public JsonObject next() {
+                ReadStreamThreads.add(Thread.currentThread().getName());
+
+                return items.next().getAsJsonObject();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     @Override
     public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
 
@@ -147,6 +192,21 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return;
     }
 
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        this.TransactionsBegun++;
+    }
+
+    @Override
+    public void commitTransaction() throws MobileServiceLocalStoreException {
+        this.TransactionsCommitted++;
+    }
+
+    @Override
+    public void rollbackTransaction() throws MobileServiceLocalStoreException {
+        this.TransactionsRolledBack++;
+    }
+
     private Map<String, JsonObject> GetTable(String tableName) {
         if (!this.Tables.containsKey(tableName)) {
             this.Tables.put(tableName, new LinkedHashMap<String, JsonObject>());
@@ -0,0 +1,191 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceBatch;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.BatchServerFilter;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class MobileServiceBatchTests extends InstrumentationTestCase {
+    String appUrl = "";
+    String appKey = "";
+
+    protected void setUp() throws Exception {
+        appUrl = "http://myapp.com/";
+        appKey = "qwerty";
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testBatchShouldSendOperationsInSingleRequest() throws Throwable {
+        BatchServerFilter server = new BatchServerFilter();
+
+        JsonObject existing = new JsonObject();
+        existing.addProperty("id", "existing");
+        existing.addProperty("name", "Seattle");
+        server.getTable("cities").put("existing", existing);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(server);
+
+        MobileServiceBatch batch = client.batch();
+        MobileServiceJsonTable table = batch.getTable("cities");
+
+        JsonObject newCity = new JsonObject();
+        newCity.addProperty("name", "Redmond");
+
+        JsonObject updatedCity = new JsonObject();
+        updatedCity.addProperty("id", "existing");
+        updatedCity.addProperty("name", "Bellevue");
+
+        JsonObject apiBody = new JsonObject();
+        apiBody.addProperty("value", 42);
+
+        ListenableFuture<JsonObject> insertFuture = table.insert(newCity);
+        ListenableFuture<JsonObject> updateFuture = table.update(updatedCity);
+        ListenableFuture<JsonElement> apiFuture = batch.getClient().invokeApi("echo", apiBody);
+
+        assertEquals(3, batch.getOperationCount());
+        assertEquals(0, server.getBatchRequestCount());
+
+        batch.execute().get();
+
+        assertEquals(1, server.getBatchRequestCount());
+
+        List<String> parts = server.getReceivedParts();
+        assertEquals(3, parts.size());
+        assertEquals("POST /tables/cities", parts.get(0));
+        assertEquals("PATCH /tables/cities/existing", parts.get(1));
+        assertEquals("POST /api/echo", parts.get(2));
+
+        assertEquals("Redmond", insertFuture.get().get("name").getAsString());
+        assertTrue(insertFuture.get().has("id"));
+        assertEquals("Bellevue", updateFuture.get().get("name").getAsString());
+        assertEquals(42, apiFuture.get().getAsJsonObject().get("value").getAsInt());
+    }
+
+    public void testBatchShouldFailOnlyOperationsWithErrorResponse() throws Throwable {
+        BatchServerFilter server = new BatchServerFilter();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(server);
+
+        MobileServiceBatch batch = client.batch();
+        MobileServiceJsonTable table = batch.getTable("cities");
+
+        JsonObject missingCity = new JsonObject();
+        missingCity.addProperty("id", "missing");
+
+        JsonObject newCity = new JsonObject();
+        newCity.addProperty("name", "Redmond");
+
+        ListenableFuture<Void> deleteFuture = table.delete(missingCity);
+        ListenableFuture<JsonObject> insertFuture = table.insert(newCity);
+
+        batch.execute().get();
+
+        try {
+            deleteFuture.get();
+            fail("The delete of a missing item should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MobileServiceException);
+            assertEquals(404, ((MobileServiceException) e.getCause()).getResponse().getStatus().getStatusCode());
+        }
+
+        assertEquals("Redmond", insertFuture.get().get("name").getAsString());
+    }
+
+    public void testBatchShouldOnlyExecuteOnce() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(new BatchServerFilter());
+
+        MobileServiceBatch batch = client.batch();
+        batch.execute().get();
+
+        try {
+            batch.execute().get();
+            fail("A batch should only be executed once");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        JsonObject newCity = new JsonObject();
+        newCity.addProperty("name", "Redmond");
+
+        try {
+            batch.getTable("cities").insert(newCity).get();
+            fail("Operations cannot be added to an executed batch");
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    public void testBatchShouldFailOperationsWhenClosed() throws Throwable {
+        BatchServerFilter server = new BatchServerFilter();
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(server);
+
+        MobileServiceBatch batch = client.batch();
+
+        // The batch client shares the threads of the client dispatcher
+        assertNotSame(client.getRequestDispatcher(), batch.getClient().getRequestDispatcher());
+        assertEquals(client.getRequestDispatcher().getMaxConcurrentRequests(), batch.getClient().getRequestDispatcher().getMaxConcurrentRequests());
+
+        JsonObject newCity = new JsonObject();
+        newCity.addProperty("name", "Redmond");
+
+        ListenableFuture<JsonObject> insertFuture = batch.getTable("cities").insert(newCity);
+
+        batch.close();
+
+        try {
+            insertFuture.get();
+            fail("The operations of a closed batch should fail");
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+
+        try {
+            batch.execute().get();
+            fail("A closed batch cannot be executed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(0, server.getBatchRequestCount());
+
+        // Shutting down the batch dispatcher leaves the client dispatcher running
+        batch.getClient().getRequestDispatcher().shutdown();
+
+        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+        assertSame(response, client.getRequestDispatcher().execute(new ServiceFilterRequestMock(response)).get());
+    }
+}
@@ -23,16 +23,28 @@ import android.os.Build;
 import android.test.InstrumentationTestCase;
 import android.util.Pair;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAuthenticationProvider;
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
+import com.microsoft.windowsazure.mobileservices.http.HttpConnectionPool;
+import com.microsoft.windowsazure.mobileservices.http.HttpResponseCache;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestCoalescer;
+import com.microsoft.windowsazure.mobileservices.http.RequestCompression;
+import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
+import com.microsoft.windowsazure.mobileservices.http.RequestDispatcher;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.EchoFilter;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
@@ -45,13 +57,36 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 public class MobileServiceClientTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -158,6 +193,781 @@ public class MobileServiceClientTests extends InstrumentationTestCase {
         }
     }
 
+    public void testNewMobileServiceClientShouldHaveHttpConnectionPool() throws MalformedURLException {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        HttpConnectionPool pool = client.getHttpConnectionPool();
+
+        assertNotNull(pool);
+        assertEquals(HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, pool.getMaxConnectionsPerRoute());
+        assertEquals(0, pool.getRequestCount());
+        assertEquals(0, pool.getConnectionsInPool());
+    }
+
+    public void testClientWithFilterShouldShareHttpConnectionPool() throws MalformedURLException {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        HttpConnectionPool pool = new HttpConnectionPool(2, 10, 5000, 10000);
+        client.setHttpConnectionPool(pool);
+
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertSame(pool, filteredClient.getHttpConnectionPool());
+    }
+
+    public void testClientWithFilterShouldKeepHttpConnectionPoolDisabled() throws MalformedURLException {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client.setHttpConnectionPool(null);
+
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertNull(filteredClient.getHttpConnectionPool());
+        assertNotNull(filteredClient.getAndroidHttpClientFactory());
+    }
+
+    public void testHttpConnectionPoolWithInvalidSizeShouldThrowException() {
+        try {
+            new HttpConnectionPool(4, 2, 5000, 10000);
+            fail("Expected Exception IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // do nothing, it's OK
+        }
+    }
+
+    public void testClientWithFilterShouldShareRequestDispatcher() throws MalformedURLException {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        RequestDispatcher dispatcher = new RequestDispatcher(2);
+        client.setRequestDispatcher(dispatcher);
+
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertSame(dispatcher, filteredClient.getRequestDispatcher());
+        assertEquals(2, filteredClient.getRequestDispatcher().getMaxConcurrentRequests());
+    }
+
+    public void testRequestDispatcherWithInvalidConcurrencyShouldThrowException() {
+        try {
+            new RequestDispatcher(0);
+            fail("Expected Exception IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // do nothing, it's OK
+        }
+    }
+
+    public void testRequestDispatcherShouldBoundFilterThreads() {
+        assertEquals(RequestDispatcher.DEFAULT_MAX_FILTER_THREADS, new RequestDispatcher(2).getMaxFilterThreads());
+        assertEquals(3, new RequestDispatcher(2, 3).getMaxFilterThreads());
+
+        try {
+            new RequestDispatcher(2, 0);
+            fail("Expected Exception IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // do nothing, it's OK
+        }
+    }
+
+    public void testRequestDispatcherShouldExecuteRequest() throws Throwable {
+        RequestDispatcher dispatcher = new RequestDispatcher(1);
+
+        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+        response.setContent("{\"id\":1}");
+
+        ServiceFilterResponse result = dispatcher.execute(new ServiceFilterRequestMock(response)).get();
+
+        assertSame(response, result);
+        assertEquals(0, dispatcher.getQueuedRequestCount());
+
+        dispatcher.shutdown();
+    }
+
+    public void testRequestDispatcherShouldExecuteQueuedRequestsByPriority() throws Throwable {
+        RequestDispatcher dispatcher = new RequestDispatcher(1);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+        // Keep the only I/O thread busy until all the requests are queued
+        ServiceFilterRequestMock blockingRequest = new ServiceFilterRequestMock(new ServiceFilterResponseMock()) {
+            @Override
+            public ServiceFilterResponse execute() throws Exception {
+                latch.await();
+                return super.execute();
+            }
+        };
+
+        ListenableFuture<ServiceFilterResponse> blockingFuture = dispatcher.execute(blockingRequest);
+
+        List<ListenableFuture<ServiceFilterResponse>> futures = new ArrayList<ListenableFuture<ServiceFilterResponse>>();
+
+        for (final RequestPriority priority : new RequestPriority[]{RequestPriority.Background, RequestPriority.Normal, RequestPriority.Interactive}) {
+            ServiceFilterRequestMock request = new ServiceFilterRequestMock(new ServiceFilterResponseMock()) {
+                @Override
+                public ServiceFilterResponse execute() throws Exception {
+                    executed.add(priority.name());
+                    return super.execute();
+                }
+            };
+
+            request.setPriority(priority);
+            futures.add(dispatcher.execute(request));
+        }
+
+        assertEquals(3, dispatcher.getQueuedRequestCount());
+
+        latch.countDown();
+        blockingFuture.get();
+
+        for (ListenableFuture<ServiceFilterResponse> future : futures) {
+            future.get();
+        }
+
+        assertEquals(3, executed.size());
+        assertEquals("Interactive", executed.get(0));
+        assertEquals("Normal", executed.get(1));
+        assertEquals("Background", executed.get(2));
+
+        dispatcher.shutdown();
+    }
+
+    public void testRequestCoalescerShouldShareIdenticalRequestsInFlight() throws Throwable {
+        RequestCoalescer coalescer = new RequestCoalescer();
+
+        final SettableFuture<ServiceFilterResponse> responseFuture = SettableFuture.create();
+        final AtomicInteger executedRequests = new AtomicInteger();
+
+        Callable<ListenableFuture<ServiceFilterResponse>> request = new Callable<ListenableFuture<ServiceFilterResponse>>() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> call() throws Exception {
+                executedRequests.incrementAndGet();
+                return responseFuture;
+            }
+        };
+
+        String key = RequestCoalescer.getKey(createGetRequestMock("http://myapp.com/tables/cities?$top=10", "token"));
+
+        ListenableFuture<ServiceFilterResponse> first = coalescer.execute(key, request);
+        ListenableFuture<ServiceFilterResponse> second = coalescer.execute(key, request);
+
+        assertEquals(1, executedRequests.get());
+        assertEquals(1, coalescer.getInFlightRequestCount());
+        assertEquals(1, coalescer.getCoalescedRequestCount());
+
+        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+        responseFuture.set(response);
+
+        assertSame(response, first.get());
+        assertSame(response, second.get());
+        assertEquals(0, coalescer.getInFlightRequestCount());
+
+        // Once completed, an identical request is executed again
+        coalescer.execute(key, request);
+        assertEquals(2, executedRequests.get());
+    }
+
+    public void testRequestCoalescerKeyShouldIncludeUrlAndAuthenticationToken() {
+        String key = RequestCoalescer.getKey(createGetRequestMock("http://myapp.com/tables/cities?$top=10", "token"));
+
+        assertNotNull(key);
+        assertEquals(key, RequestCoalescer.getKey(createGetRequestMock("http://myapp.com/tables/cities?$top=10", "token")));
+        assertFalse(key.equals(RequestCoalescer.getKey(createGetRequestMock("http://myapp.com/tables/cities?$top=20", "token"))));
+        assertFalse(key.equals(RequestCoalescer.getKey(createGetRequestMock("http://myapp.com/tables/cities?$top=10", "otherToken"))));
+
+        // Only GET requests are coalesced
+        assertNull(RequestCoalescer.getKey(new ServiceFilterRequestMock(new ServiceFilterResponseMock())));
+    }
+
+    public void testHttpResponseCacheShouldRevalidateCachedResponse() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        HttpResponseCache cache = new HttpResponseCache();
+        client.setHttpResponseCache(cache);
+
+        List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        client = client.withFilter(createETagFilter(ifNoneMatchHeaders));
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        JsonObject first = table.lookUp(1).get();
+        JsonObject second = table.lookUp(1).get();
+
+        assertEquals(2, ifNoneMatchHeaders.size());
+        assertNull(ifNoneMatchHeaders.get(0));
+        assertEquals("\"v1\"", ifNoneMatchHeaders.get(1));
+
+        assertEquals(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals("{\"id\":1}".length(), cache.getHitBytes());
+    }
+
+    public void testHttpResponseCacheShouldEvictLeastRecentlyUsedResponses() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        // Room for a single response
+        HttpResponseCache cache = new HttpResponseCache(10);
+        client.setHttpResponseCache(cache);
+
+        List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        client = client.withFilter(createETagFilter(ifNoneMatchHeaders));
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        table.lookUp(1).get();
+        table.lookUp(2).get();
+        table.lookUp(1).get();
+
+        assertEquals(3, ifNoneMatchHeaders.size());
+        assertNull(ifNoneMatchHeaders.get(2));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals("{\"id\":1}".length(), cache.getMemorySize());
+    }
+
+    public void testHttpResponseCacheShouldNotCacheNoStoreResponses() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        HttpResponseCache cache = new HttpResponseCache();
+        client.setHttpResponseCache(cache);
+
+        List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        client = client.withFilter(createETagFilter(ifNoneMatchHeaders, "private, no-store"));
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        table.lookUp(1).get();
+        table.lookUp(1).get();
+
+        assertEquals(2, ifNoneMatchHeaders.size());
+        assertNull(ifNoneMatchHeaders.get(1));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMemorySize());
+    }
+
+    public void testHttpResponseCacheShouldNotServeTransferHeaders() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        HttpResponseCache cache = new HttpResponseCache();
+        client.setHttpResponseCache(cache);
+
+        // The content of the response was transferred gzipped
+        List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        client = client.withFilter(createETagFilter(ifNoneMatchHeaders, null, new BasicHeader(HTTP.CONTENT_ENCODING, "gzip"), new BasicHeader(
+                HTTP.CONTENT_LEN, "28")));
+
+        final List<ServiceFilterResponse> responses = Collections.synchronizedList(new ArrayList<ServiceFilterResponse>());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                final SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                Futures.addCallback(nextServiceFilterCallback.onNext(request), new FutureCallback<ServiceFilterResponse>() {
+                    @Override
+                    public void onFailure(Throwable exception) {
+                        resultFuture.setException(exception);
+                    }
+
+                    @Override
+                    public void onSuccess(ServiceFilterResponse response) {
+                        responses.add(response);
+                        resultFuture.set(response);
+                    }
+                });
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        table.lookUp(1).get();
+        table.lookUp(1).get();
+
+        assertEquals(1, cache.getHitCount());
+
+        // The cached response describes the stored content
+        Header[] headers = responses.get(1).getHeaders();
+        String contentLength = null;
+
+        for (Header header : headers) {
+            assertFalse(header.getName().equalsIgnoreCase(HTTP.CONTENT_ENCODING));
+
+            if (header.getName().equalsIgnoreCase(HTTP.CONTENT_LEN)) {
+                contentLength = header.getValue();
+            }
+        }
+
+        assertEquals(String.valueOf("{\"id\":1}".length()), contentLength);
+    }
+
+    public void testHttpResponseCacheShouldNotWriteRequestKeysToDisk() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        client.setCurrentUser(new MobileServiceUser("myUser"));
+        client.getCurrentUser().setAuthenticationToken("mySecretToken");
+
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(), "responseCacheTest");
+        HttpResponseCache cache = new HttpResponseCache(0, directory, 1024 * 1024);
+        cache.evictAll();
+        client.setHttpResponseCache(cache);
+
+        List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        client = client.withFilter(createETagFilter(ifNoneMatchHeaders));
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        table.lookUp(1).get();
+        table.lookUp(1).get();
+
+        assertEquals("\"v1\"", ifNoneMatchHeaders.get(1));
+        assertEquals(1, cache.getHitCount());
+
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+
+        String fileContent = new String(readFile(files[0]), "ISO-8859-1");
+        assertFalse(fileContent.contains("mySecretToken"));
+        assertFalse(fileContent.contains("cities"));
+
+        cache.evictAll();
+    }
+
+    public void testRequestCompressionShouldCompressLargeRequestContent() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<HttpRequestBase> requests = Collections.synchronizedList(new ArrayList<HttpRequestBase>());
+        client.setHttpConnectionPool(createRecordingConnectionPool(requests, 0));
+
+        RequestCompression compression = new RequestCompression(100);
+        client.setRequestCompression(compression);
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        JsonObject city = new JsonObject();
+        city.addProperty("description", createLongText());
+
+        table.insert(city).get();
+
+        assertEquals(1, requests.size());
+        assertEquals("gzip", requests.get(0).getFirstHeader(HTTP.CONTENT_ENCODING).getValue());
+        assertTrue(readGzipContent(requests.get(0)).contains(createLongText()));
+        assertEquals(1, compression.getCompressedRequestCount());
+        assertTrue(compression.getSavedBytes() > 0);
+
+        // Compression can be disabled for a table
+        table.setRequestCompressionEnabled(false);
+        table.insert(city).get();
+
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).getFirstHeader(HTTP.CONTENT_ENCODING));
+        assertEquals(1, compression.getCompressedRequestCount());
+    }
+
+    public void testRequestCompressionShouldFallBackWhenServerRejectsEncoding() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<HttpRequestBase> requests = Collections.synchronizedList(new ArrayList<HttpRequestBase>());
+        client.setHttpConnectionPool(createRecordingConnectionPool(requests, 415));
+
+        RequestCompression compression = new RequestCompression(100);
+        client.setRequestCompression(compression);
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        JsonObject city = new JsonObject();
+        city.addProperty("description", createLongText());
+
+        JsonObject result = table.insert(city).get();
+
+        assertEquals(1, result.get("id").getAsInt());
+        // Only the rejecting host gets uncompressed request bodies
+        assertTrue(compression.isRejectedByServer(requests.get(0).getURI().getAuthority()));
+        assertFalse(compression.isRejectedByServer("otherapp.com"));
+
+        // The rejected request is sent again uncompressed
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).getFirstHeader(HTTP.CONTENT_ENCODING));
+
+        // Later requests are not compressed
+        table.insert(city).get();
+
+        assertEquals(3, requests.size());
+        assertNull(requests.get(2).getFirstHeader(HTTP.CONTENT_ENCODING));
+    }
+
+    public void testRequestCompressionShouldCompressAgainWhenRejectionExpires() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<HttpRequestBase> requests = Collections.synchronizedList(new ArrayList<HttpRequestBase>());
+        client.setHttpConnectionPool(createRecordingConnectionPool(requests, 415));
+
+        // Rejections expire immediately
+        RequestCompression compression = new RequestCompression(100, 0);
+        client.setRequestCompression(compression);
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        JsonObject city = new JsonObject();
+        city.addProperty("description", createLongText());
+
+        table.insert(city).get();
+
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).getFirstHeader(HTTP.CONTENT_ENCODING));
+
+        // Once the rejection expires, request bodies are compressed again
+        assertFalse(compression.isRejectedByServer(requests.get(0).getURI().getAuthority()));
+        table.insert(city).get();
+
+        assertEquals(4, requests.size());
+        assertEquals("gzip", requests.get(2).getFirstHeader(HTTP.CONTENT_ENCODING).getValue());
+    }
+
+    public void testRequestCompressionShouldNotResendOnBadRequest() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<HttpRequestBase> requests = Collections.synchronizedList(new ArrayList<HttpRequestBase>());
+        client.setHttpConnectionPool(createRecordingConnectionPool(requests, 400));
+
+        RequestCompression compression = new RequestCompression(100);
+        client.setRequestCompression(compression);
+
+        MobileServiceJsonTable table = client.getTable("cities");
+
+        JsonObject city = new JsonObject();
+        city.addProperty("description", createLongText());
+
+        // A 400 is a validation error of the server script, which must not
+        // run twice
+        try {
+            table.insert(city).get();
+            fail("Expected the insert to fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        assertEquals(1, requests.size());
+        assertEquals("gzip", requests.get(0).getFirstHeader(HTTP.CONTENT_ENCODING).getValue());
+        assertFalse(compression.isRejectedByServer(requests.get(0).getURI().getAuthority()));
+    }
+
+    public void testRequestCompressionShouldKeepContentEncodingSetByCaller() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<HttpRequestBase> requests = Collections.synchronizedList(new ArrayList<HttpRequestBase>());
+        client.setHttpConnectionPool(createRecordingConnectionPool(requests, 0));
+
+        RequestCompression compression = new RequestCompression(100);
+        client.setRequestCompression(compression);
+
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                request.addHeader(HTTP.CONTENT_ENCODING, "identity");
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        JsonObject city = new JsonObject();
+        city.addProperty("description", createLongText());
+
+        client.getTable("cities").insert(city).get();
+
+        assertEquals(1, requests.size());
+        assertEquals("identity", requests.get(0).getFirstHeader(HTTP.CONTENT_ENCODING).getValue());
+        assertEquals(0, compression.getCompressedRequestCount());
+    }
+
+    public void testTableRequestCompressionShouldNotShareStateBetweenClients() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        MobileServiceClient otherClient = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        assertNotNull(client.getDefaultRequestCompression());
+        assertNotSame(client.getDefaultRequestCompression(), otherClient.getDefaultRequestCompression());
+        assertSame(client.getDefaultRequestCompression(), client.withFilter(new EchoFilter()).getDefaultRequestCompression());
+    }
+
+    private HttpConnectionPool createRecordingConnectionPool(final List<HttpRequestBase> requests, final int rejectionStatusCode) {
+        return new HttpConnectionPool() {
+            @Override
+            public HttpResponse execute(HttpRequestBase request) throws IOException {
+                // Keeps a copy of the request, since its entity and headers
+                // are restored after the request is executed
+                HttpPost copy = new HttpPost(request.getURI());
+                copy.setHeaders(request.getAllHeaders());
+                copy.setEntity(new ByteArrayEntity(EntityUtils.toByteArray(((HttpEntityEnclosingRequestBase) request).getEntity())));
+                requests.add(copy);
+
+                boolean compressed = request.getFirstHeader(HTTP.CONTENT_ENCODING) != null;
+
+                HttpResponse response;
+
+                if (compressed && rejectionStatusCode != 0) {
+                    response = new BasicHttpResponse(HttpVersion.HTTP_1_1, rejectionStatusCode, "Rejected");
+                } else {
+                    response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 201, "Created");
+                    response.setEntity(new StringEntity("{\"id\":1}", "UTF-8"));
+                }
+
+                return response;
+            }
+        };
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private String readGzipContent(HttpRequestBase request) throws IOException {
+        HttpEntity entity = ((HttpEntityEnclosingRequestBase) request).getEntity();
+        GZIPInputStream stream = new GZIPInputStream(entity.getContent());
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return new String(out.toByteArray(), "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private String createLongText() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < 50; i++) {
+            builder.append("A city in a country far away. ");
+        }
+
+        return builder.toString();
+    }
+
+    private ServiceFilter createETagFilter(final List<String> ifNoneMatchHeaders) {
+        return createETagFilter(ifNoneMatchHeaders, null);
+    }
+
+    private ServiceFilter createETagFilter(final List<String> ifNoneMatchHeaders, final String cacheControl, final Header... contentHeaders) {
+        return new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(final ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                final List<Header> headers = new ArrayList<Header>();
+
+                // Responds 304 when the request revalidates the current ETag
+                ServiceFilterRequestMock eTagRequest = new ServiceFilterRequestMock(new ServiceFilterResponseMock()) {
+                    @Override
+                    public String getMethod() {
+                        return request.getMethod();
+                    }
+
+                    @Override
+                    public String getUrl() {
+                        return request.getUrl();
+                    }
+
+                    @Override
+                    public Header[] getHeaders() {
+                        return headers.toArray(new Header[headers.size()]);
+                    }
+
+                    @Override
+                    public void addHeader(String name, String val) {
+                        headers.add(new BasicHeader(name, val));
+                    }
+
+                    @Override
+                    public ServiceFilterResponse execute() throws Exception {
+                        String ifNoneMatch = null;
+
+                        for (Header header : headers) {
+                            if (header.getName().equals("If-None-Match")) {
+                                ifNoneMatch = header.getValue();
+                            }
+                        }
+
+                        ifNoneMatchHeaders.add(ifNoneMatch);
+
+                        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                        List<Header> responseHeaders = new ArrayList<Header>(Arrays.asList(contentHeaders));
+                        responseHeaders.add(new BasicHeader("ETag", "\"v1\""));
+
+                        if (cacheControl != null) {
+                            responseHeaders.add(new BasicHeader("Cache-Control", cacheControl));
+                        }
+
+                        response.setHeaders(responseHeaders.toArray(new Header[responseHeaders.size()]));
+
+                        if ("\"v1\"".equals(ifNoneMatch)) {
+                            response.setStatus(new StatusLineMock(304));
+                            response.setContent((String) null);
+                        } else {
+                            response.setStatus(new StatusLineMock(200));
+                            response.setContent("{\"id\":1}");
+                        }
+
+                        return response;
+                    }
+                };
+
+                return nextServiceFilterCallback.onNext(eTagRequest);
+            }
+        };
+    }
+
+    private ServiceFilterRequest createGetRequestMock(final String url, final String authToken) {
+        return new ServiceFilterRequestMock(new ServiceFilterResponseMock()) {
+            @Override
+            public String getMethod() {
+                return HttpGet.METHOD_NAME;
+            }
+
+            @Override
+            public String getUrl() {
+                return url;
+            }
+
+            @Override
+            public Header[] getHeaders() {
+                return new Header[]{new BasicHeader("X-ZUMO-AUTH", authToken), new BasicHeader("X-ZUMO-FEATURES", "TU")};
+            }
+        };
+    }
+
+    public void testClientWithFilterShouldShareCallbackExecutor() throws MalformedURLException {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        assertNull(client.getCallbackExecutor());
+
+        Executor executor = Executors.newSingleThreadExecutor();
+        client.setCallbackExecutor(executor);
+
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertSame(executor, filteredClient.getCallbackExecutor());
+    }
+
+    public void testCallbackExecutorShouldDeliverRequestCompletion() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        final AtomicInteger executions = new AtomicInteger();
+
+        client.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executions.incrementAndGet();
+                command.run();
+            }
+        });
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setContent("{\"id\":3,\"name\":\"John\"}");
+
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        JsonElement result = client.invokeApi("myApi").get();
+
+        assertEquals(1, executions.get());
+        assertEquals("John", result.getAsJsonObject().get("name").getAsString());
+    }
+
+    public void testCallbackExecutorShouldCallOverriddenOnPostExecuteOnce() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        final AtomicInteger executions = new AtomicInteger();
+
+        client.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executions.incrementAndGet();
+                command.run();
+            }
+        });
+
+        final ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+        response.setContent("{\"id\":3}");
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        final AtomicInteger completions = new AtomicInteger();
+        final SettableFuture<ServiceFilterResponse> completed = SettableFuture.create();
+
+        ServiceFilterRequest request = new ServiceFilterRequestImpl(new HttpGet(appUrl + "api/myApi"), client.getAndroidHttpClientFactory(), null);
+
+        new RequestAsyncTask(request, client.createConnection()) {
+            @Override
+            protected void onPostExecute(ServiceFilterResponse result) {
+                completions.incrementAndGet();
+                completed.set(result);
+            }
+        }.executeTask();
+
+        assertEquals("{\"id\":3}", completed.get().getContent());
+        assertEquals(1, completions.get());
+        assertEquals(1, executions.get());
+    }
+
     public void testIsLoginInProgressShouldReturnFalse() throws MalformedURLException {
         MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
         assertFalse(client.isLoginInProgress());
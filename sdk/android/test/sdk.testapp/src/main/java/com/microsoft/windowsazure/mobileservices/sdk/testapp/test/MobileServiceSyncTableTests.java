@@ -46,6 +46,7 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTableIterator;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
@@ -65,6 +66,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -141,6 +145,87 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         assertEquals(serviceFilterContainer3.Requests.size(), 0);
     }
 
+    public void testSyncTableOperationsRunOnSyncContextExecutors() throws InterruptedException, ExecutionException, MalformedURLException {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, ""));
+
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        final Executor executor = Executors.newSingleThreadExecutor();
+
+        client.getSyncContext().setReadExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                reads.incrementAndGet();
+                executor.execute(command);
+            }
+        });
+
+        client.getSyncContext().setWriteExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                writes.incrementAndGet();
+                executor.execute(command);
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+
+        table.insert(item).get();
+        JsonObject result = table.lookUp("abc").get();
+
+        assertEquals("abc", result.get("id").getAsString());
+
+        // initialize and insert
+        assertEquals(2, writes.get());
+        assertEquals(1, reads.get());
+        assertEquals(0, client.getSyncContext().getWriteExecutor().getQueueDepth());
+        assertEquals(0, client.getSyncContext().getReadExecutor().getQueueDepth());
+    }
+
+    public void testPushRunsOnSyncExecutor() throws InterruptedException, ExecutionException, MalformedURLException {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        final AtomicInteger syncs = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        final Executor executor = Executors.newSingleThreadExecutor();
+
+        client.getSyncContext().setSyncExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                syncs.incrementAndGet();
+                executor.execute(command);
+            }
+        });
+
+        client.getSyncContext().setWriteExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                writes.incrementAndGet();
+                executor.execute(command);
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().push().get();
+
+        // initialize runs on the write executor, push on the sync executor
+        assertEquals(1, writes.get());
+        assertEquals(1, syncs.get());
+        assertEquals(0, client.getSyncContext().getSyncExecutor().getQueueDepth());
+    }
+
     public void testPullThrowsWhenPushThrows() throws MalformedURLException, InterruptedException, ExecutionException {
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
         ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
@@ -390,6 +475,134 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
                                 "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('world')&$top=3&$skip=5&$orderby=Id%20desc&__includeDeleted=true&__systemproperties=__version,__deleted"));
     }
 
+    public void testPullWritesEachPageInOneTransaction() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\",\"__deleted\":true}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.pull(QueryOperations.tableName(table.getName()).top(2)).get();
+
+        // the last page is empty
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertEquals(store.TransactionsBegun, 2);
+        assertEquals(store.TransactionsCommitted, 2);
+        assertEquals(store.TransactionsRolledBack, 0);
+        assertNotNull(store.lookup(table.getName().toLowerCase(Locale.getDefault()), "abc"));
+    }
+
+    public void testLocalOperationIsWrittenInOneTransaction() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "Hey");
+
+        table.insert(item).get();
+
+        assertEquals(store.TransactionsBegun, 1);
+        assertEquals(store.TransactionsCommitted, 1);
+        assertEquals(store.TransactionsRolledBack, 0);
+
+        // the local operation is rolled back when it cannot be enqueued
+        try {
+            table.insert(item).get();
+            fail("Expected the insert to fail");
+        } catch (ExecutionException ex) {
+            // expected
+        }
+
+        assertEquals(store.TransactionsBegun, 2);
+        assertEquals(store.TransactionsCommitted, 1);
+        assertEquals(store.TransactionsRolledBack, 1);
+    }
+
+    public void testReadStreamReturnsEntitiesInWindows() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        store.ReadResponses.add("{\"count\":3,\"results\":[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"},{\"id\":\"ghi\",\"String\":\"!\"}]}");
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        MobileServiceSyncTableIterator<StringIdType> iterator = table.readStream(QueryOperations.tableName("stringidtype").includeInlineCount()).get();
+
+        try {
+            List<StringIdType> window = iterator.next(2);
+
+            assertEquals(2, window.size());
+            assertEquals("abc", window.get(0).Id);
+            assertEquals("World", window.get(1).String);
+
+            assertTrue(iterator.hasNext());
+            assertEquals("ghi", iterator.next().Id);
+
+            assertFalse(iterator.hasNext());
+            assertEquals(0, iterator.next(2).size());
+        } finally {
+            iterator.close();
+        }
+
+        assertEquals(1, store.ReadQueries.size());
+        assertEquals("stringidtype", store.ReadQueries.get(0).getTableName());
+    }
+
+    public void testReadStreamReadsStoreOnReadExecutor() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        StringBuilder results = new StringBuilder("[");
+
+        for (int i = 0; i < 250; i++) {
+            results.append(i > 0 ? "," : "").append("{\"id\":\"").append(i).append("\"}");
+        }
+
+        store.ReadResponses.add(results.append("]").toString());
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        MobileServiceSyncTableIterator<StringIdType> iterator = table.readStream(QueryOperations.tableName("stringidtype")).get();
+
+        try {
+            for (int i = 0; i < 250; i++) {
+                assertTrue(iterator.hasNext());
+                assertEquals(String.valueOf(i), iterator.next().Id);
+            }
+
+            assertFalse(iterator.hasNext());
+        } finally {
+            iterator.close();
+        }
+
+        // the items are read in batches, on the read executor rather than
+        // on the thread iterating
+        assertEquals(250, store.ReadStreamThreads.size());
+
+        for (String thread : store.ReadStreamThreads) {
+            assertTrue(thread.startsWith("MobileServiceSyncRead"));
+        }
+    }
+
     public void testPullNoSkipSucceds() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
 
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
@@ -704,6 +917,59 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         client.getSyncContext().push().get();
     }
 
+    public void testPushUpdateSendsOnlyChangedProperties() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Hey\",\"Number\":2,\"__version\":\"AAB\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+        String tableName = table.getName().toLowerCase(Locale.getDefault());
+
+        // the item as it was pulled from the server
+        JsonObject serverItem = new JsonObject();
+        serverItem.addProperty("id", "abc");
+        serverItem.addProperty("String", "Hey");
+        serverItem.addProperty("Number", 1);
+        serverItem.addProperty("__version", "AAA");
+
+        store.upsert(tableName, serverItem, true);
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "Hey");
+        item.addProperty("Number", 2);
+        item.addProperty("__version", "AAA");
+
+        table.update(item).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 1);
+        assertEquals(serviceFilterContainer.Requests.get(0).Method, "PATCH");
+        assertEquals(serviceFilterContainer.Requests.get(0).Content, "{\"id\":\"abc\",\"Number\":2}");
+        assertEquals(serviceFilterContainer.Requests.get(0).getHeaderValue("If-Match"), "\"AAA\"");
+
+        // the next update is compared with the item returned by the push
+        item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "Hi");
+        item.addProperty("Number", 2);
+        item.addProperty("__version", "AAB");
+
+        table.update(item).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertEquals(serviceFilterContainer.Requests.get(1).Content, "{\"id\":\"abc\",\"String\":\"Hi\"}");
+        assertEquals(serviceFilterContainer.Requests.get(1).getHeaderValue("If-Match"), "\"AAB\"");
+    }
+
     public void testDeleteDoesNotUpsertResultOnStoreWhenOperationIsPushed() throws InterruptedException, ExecutionException, MalformedURLException {
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
         ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
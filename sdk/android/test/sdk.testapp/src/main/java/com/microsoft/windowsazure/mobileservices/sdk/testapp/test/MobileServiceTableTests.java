@@ -31,6 +31,7 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.RequestPriority;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
@@ -2189,6 +2190,47 @@ public class MobileServiceTableTests extends InstrumentationTestCase {
         assertEquals(p.get(1).getLastName(), "Doe");
     }
 
+    public void testQueryShouldMapIdPropertyWithDifferentCasing() throws Throwable {
+
+        final String tableName = "MyTableName";
+
+        MobileServiceClient client = null;
+        try {
+            client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                // The nested object id must not be mapped
+                String responseContent = "{\"count\":2,\"results\":[{\"id\":1,\"name\":\"Mike\",\"extra\":{\"id\":10}},{\"name\":\"John\",\"id\":2}]}";
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setContent(responseContent);
+
+                final SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceList<IdPropertyWithDifferentIdPropertyCasing> p = client.getTable(tableName, IdPropertyWithDifferentIdPropertyCasing.class)
+                .where().execute().get();
+
+        // Asserts
+        assertEquals(2, p.size());
+        assertEquals(2, p.getTotalCount());
+        assertEquals(1, p.get(0).getId());
+        assertEquals("Mike", p.get(0).getName());
+        assertEquals(2, p.get(1).getId());
+        assertEquals("John", p.get(1).getName());
+    }
+
     public void testLookupShouldReturnAPerson() throws Throwable {
 
         // Container to store callback's results and do the asserts.
@@ -2237,6 +2279,49 @@ public class MobileServiceTableTests extends InstrumentationTestCase {
         assertEquals(this.appUrl + "tables/" + tableName + "/" + personId, container.getRequestUrl());
     }
 
+    public void testLookupShouldUseInteractivePriority() throws Throwable {
+
+        // Container to store callback's results and do the asserts.
+        final ResultsContainer container = new ResultsContainer();
+
+        final String tableName = "MyTableName";
+
+        MobileServiceClient client = null;
+        try {
+            client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                // Store the request priority
+                container.setRequestContent(request.getPriority().name());
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setContent("{\"id\": 4,\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":35}");
+
+                final SettableFuture<ServiceFilterResponse> resultFuture = SettableFuture.create();
+
+                resultFuture.set(response);
+
+                return resultFuture;
+            }
+        });
+
+        MobileServiceTable<PersonTestObject> table = client.getTable(tableName, PersonTestObject.class);
+
+        table.lookUp(4).get();
+        assertEquals(RequestPriority.Interactive.name(), container.getRequestContent());
+
+        table.setRequestPriority(RequestPriority.Background);
+
+        table.lookUp(4).get();
+        assertEquals(RequestPriority.Background.name(), container.getRequestContent());
+    }
+
     @SuppressWarnings("deprecation")
     public void testLookupShouldReturnAPersonCallback() throws Throwable {
         final CountDownLatch latch = new CountDownLatch(1);
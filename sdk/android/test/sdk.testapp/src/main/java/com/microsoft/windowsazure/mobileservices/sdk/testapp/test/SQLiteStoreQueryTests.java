@@ -29,6 +29,7 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLite
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
@@ -120,6 +121,30 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
         assertEquals(results.get(0).getAsJsonObject().get("id").getAsString(), getTestData()[2].getAsJsonObject().get("id").getAsString());
     }
 
+    public void testQueryBindsConstantsAsArguments() throws MobileServiceException, MobileServiceLocalStoreException {
+        Query query = QueryOperations.tableName(TestTable).field("col1").eq("brown").or().field("col1").eq("fox").and().field("col2").le(5);
+
+        List<Object> selectionArgs = new ArrayList<Object>();
+
+        String whereClause = QuerySQLWriter.getWhereClause(query, selectionArgs);
+
+        assertFalse(whereClause.contains("brown"));
+        assertFalse(whereClause.contains("CAST"));
+        assertEquals(selectionArgs.size(), 3);
+        assertEquals(selectionArgs.get(0), "brown");
+        assertEquals(selectionArgs.get(1), "fox");
+        assertEquals(selectionArgs.get(2), 5L);
+
+        // values are not written in the SQL, so they need no quoting
+        testQuery(QueryOperations.tableName(TestTable).field("col1").eq("it's"), 0);
+        testQuery(QueryOperations.tableName(TestTable).field("col2").add(1).gt(6), 3);
+
+        // numbers are compared with the affinity of the column, as literals
+        // are: the TEXT id "1" equals 1, but not 1.0
+        testQuery(QueryOperations.tableName(TestTable).field("id").eq(1), 1);
+        testQuery(QueryOperations.tableName(TestTable).field("id").eq(1.0), 0);
+    }
+
     // public void testQueryOnStringIndexOf() throws MobileServiceException,
     // MobileServiceLocalStoreException {
     // Query query1 = QueryOperations.tableName(TestTable).indexOf("col1",
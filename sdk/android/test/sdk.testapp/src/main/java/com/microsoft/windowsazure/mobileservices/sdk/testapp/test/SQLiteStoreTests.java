@@ -20,24 +20,32 @@ See the Apache Version 2.0 License for specific language governing permissions a
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.InstrumentationTestCase;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLiteStoreTestsUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionOneParameter;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.BinaryJsonCodec;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreIterator;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteSynchronousMode;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
@@ -159,6 +167,124 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertEquals(resultCount, 2L);
     }
 
+    public void testReadCountsAllItemsAndReadsOnlyThePage() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteStoreTestsUtilities
+                .executeNonQuery(this.getContext(), TestDbName, "INSERT INTO todo (id, __createdAt) VALUES ('abc', 1), ('def', 2), ('ghi', 3), ('jkl', 4)");
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        Query query = QueryOperations.tableName("todo").field("__createdAt").gt(1).orderBy("__createdAt", QueryOrder.Ascending).skip(1).top(1)
+                .includeInlineCount();
+
+        JsonObject queryResults = store.read(query).getAsJsonObject();
+
+        JsonArray results = queryResults.get("results").getAsJsonArray();
+        long resultCount = queryResults.get("count").getAsLong();
+
+        assertEquals(results.size(), 1);
+        assertEquals(results.get(0).getAsJsonObject().get("id").getAsString(), "ghi");
+        assertEquals(resultCount, 3L);
+    }
+
+    public void testReadCountsAllItemsWhenThePageIsEmpty() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteStoreTestsUtilities
+                .executeNonQuery(this.getContext(), TestDbName, "INSERT INTO todo (id, __createdAt) VALUES ('abc', 1), ('def', 2), ('ghi', 3), ('jkl', 4)");
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        Query query = QueryOperations.tableName("todo").field("__createdAt").gt(1).skip(5).top(1).includeInlineCount();
+
+        JsonObject queryResults = store.read(query).getAsJsonObject();
+
+        JsonArray results = queryResults.get("results").getAsJsonArray();
+        long resultCount = queryResults.get("count").getAsLong();
+
+        assertEquals(results.size(), 0);
+        assertEquals(resultCount, 3L);
+    }
+
+    public void testReadStreamReadsItemsOneAtATime() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteStoreTestsUtilities
+                .executeNonQuery(this.getContext(), TestDbName, "INSERT INTO todo (id, __createdAt) VALUES ('abc', 1), ('def', 2), ('ghi', 3)");
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        // a skip without top reads all the remaining rows
+        Query query = QueryOperations.tableName("todo").orderBy("__createdAt", QueryOrder.Descending).skip(1);
+
+        MobileServiceLocalStoreIterator results = store.readStream(query);
+
+        try {
+            assertTrue(results.hasNext());
+            assertEquals("def", results.next().get("id").getAsString());
+
+            assertTrue(results.hasNext());
+            assertEquals("abc", results.next().get("id").getAsString());
+
+            assertFalse(results.hasNext());
+        } finally {
+            results.close();
+        }
+
+        assertFalse(results.hasNext());
+    }
+
+    public void testReadStreamReadsUnmodifiedRowsOnceWhenTableChanges() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        StringBuilder insert = new StringBuilder("INSERT INTO todo (id, __createdAt) VALUES ");
+
+        for (int i = 0; i < 150; i++) {
+            insert.append(i > 0 ? ", " : "").append("('").append(1000 + i).append("', ").append(i % 3).append(")");
+        }
+
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, insert.toString());
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        Query query = QueryOperations.tableName("todo").orderBy("__createdAt", QueryOrder.Ascending);
+
+        MobileServiceLocalStoreIterator results = store.readStream(query);
+
+        List<String> ids = new ArrayList<String>();
+
+        try {
+            // the first page is read; rows read and rows ordered before the
+            // next page change, which an offset would skip or repeat
+            assertTrue(results.hasNext());
+
+            store.delete("todo", "1000");
+            store.delete("todo", "1003");
+
+            while (results.hasNext()) {
+                ids.add(results.next().get("id").getAsString());
+            }
+        } finally {
+            results.close();
+        }
+
+        assertEquals(150, ids.size());
+        assertEquals(150, new HashSet<String>(ids).size());
+    }
+
     public void testDeleteByQueryThrowsWhenStoreIsNotInitialized() {
         CustomFunctionOneParameter<SQLiteLocalStore, Void> storeAction = new CustomFunctionOneParameter<SQLiteLocalStore, Void>() {
             public Void apply(SQLiteLocalStore store) throws MobileServiceLocalStoreException {
@@ -594,6 +720,202 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertNull(lastItem);
     }
 
+    public void testUpsertThenLookupWithCompactEncodingReadsOtherColumns() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("address", ColumnDataType.Other);
+
+        // a value written as text before the encoding is enabled
+        SQLiteLocalStore textStore = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        textStore.defineTable(TestTable, tableDefinition);
+        textStore.initialize();
+
+        JsonObject textItem = new JsonObject();
+        textItem.addProperty("id", "abc");
+        textItem.add("address", new JsonParser().parse("{\"street\":\"1345 Washington St\",\"zipcode\":1313}"));
+
+        textStore.upsert(TestTable, textItem, false);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.setCompactEncoding(true);
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "def");
+        item.add("address", new JsonParser().parse("{\"street\":\"1 Main St\",\"zipcode\":98052,\"lines\":[\"a\",null,1.5,true]}"));
+
+        store.upsert(TestTable, item, false);
+
+        // both encodings are read back
+        assertEquals(textItem.get("address"), store.lookup(TestTable, "abc").get("address"));
+        assertEquals(item.get("address"), store.lookup(TestTable, "def").get("address"));
+    }
+
+    public void testUpsertThenLookupThenDeleteWithApostropheInId() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        String[] ids = new String[]{"o'brien", "' OR '1'='1", "abc"};
+
+        for (String id : ids) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("text", "text of " + id);
+
+            // the second upsert runs the statement compiled by the first one
+            store.upsert(TestTable, item, false);
+            store.upsert(TestTable, item, false);
+        }
+
+        assertEquals(3L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+        assertEquals("text of o'brien", store.lookup(TestTable, "o'brien").get("text").getAsString());
+
+        store.delete(TestTable, "' OR '1'='1");
+
+        assertNull(store.lookup(TestTable, "' OR '1'='1"));
+        assertEquals(2L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+
+        store.delete(TestTable, new String[]{"o'brien", "abc"});
+
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+    }
+
+    public void testDeleteItemsDeletesMoreThan999Items() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        int itemsCount = 2500;
+
+        JsonObject[] items = new JsonObject[itemsCount];
+        String[] ids = new String[itemsCount + 1];
+
+        for (int i = 0; i < itemsCount; i++) {
+            items[i] = new JsonObject();
+            items[i].addProperty("id", "item" + i);
+            ids[i] = "item" + i;
+        }
+
+        // an id that is not in the table
+        ids[itemsCount] = "missing";
+
+        store.upsert(TestTable, items, false);
+
+        assertEquals((long) itemsCount, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+
+        int deletedCount = store.deleteItems(TestTable, ids);
+
+        assertEquals(itemsCount, deletedCount);
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+    }
+
+    public void testDefineIndexCreatesTheIndexOnInitialize() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("code", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineIndex(TestTable, new String[]{"Code"}, true);
+        store.initialize();
+
+        // the index is only created if it does not exist
+        store.initialize();
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("code", "A1");
+
+        store.upsert(TestTable, item, false);
+
+        item = new JsonObject();
+        item.addProperty("id", "def");
+        item.addProperty("code", "A1");
+
+        // the unique index makes the second item replace the first one
+        store.upsert(TestTable, item, false);
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+        assertNull(store.lookup(TestTable, "abc"));
+        assertNotNull(store.lookup(TestTable, "def"));
+    }
+
+    public void testOperationsKeepTheDatabaseOpenUntilClose() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1, 500, SQLiteSynchronousMode.Normal);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        SQLiteDatabase db = store.getWritableDatabase();
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("text", "some text");
+
+        store.upsert(TestTable, item, false);
+        assertNotNull(store.lookup(TestTable, "abc"));
+        store.delete(TestTable, "abc");
+
+        // the same connection is used by every operation
+        assertTrue(db.isOpen());
+        assertSame(db, store.getWritableDatabase());
+
+        store.close();
+
+        assertFalse(db.isOpen());
+
+        // the store opens the database again when used after being closed
+        assertNull(store.lookup(TestTable, "abc"));
+
+        store.close();
+    }
+
+    public void testBinaryJsonCodecRoundTripsValues() {
+        JsonElement value = new JsonParser().parse(
+                "{\"string\":\"caf\\u00e9\",\"long\":-9007199254740993,\"double\":123.45,\"decimal\":1.10,\"bool\":false,\"null\":null,"
+                        + "\"array\":[1,\"two\",[],{}],\"object\":{\"nested\":{\"empty\":\"\"}}}");
+
+        byte[] encoded = BinaryJsonCodec.encode(value);
+
+        assertTrue(BinaryJsonCodec.isEncoded(encoded));
+        assertFalse(BinaryJsonCodec.isEncoded(value.toString().getBytes()));
+        assertEquals(value, BinaryJsonCodec.decode(encoded));
+        assertEquals(value.toString(), BinaryJsonCodec.decode(encoded).toString());
+
+        try {
+            BinaryJsonCodec.decode(value.toString().getBytes());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     private void prepareTodoTable() throws MobileServiceLocalStoreException {
         SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
 
@@ -21,18 +21,23 @@ package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
 import android.test.InstrumentationTestCase;
 
+import com.google.common.base.Predicate;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
@@ -45,15 +50,33 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.S
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.Address;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.ComplexPersonTestObject;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.DateTestObject;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.JsonEntityTestObject;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObject;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.ResultsContainer;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.SystemPropertyTestClasses.AllSystemPropertiesType;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.SystemPropertyTestClasses.IntegerIdNotSystemPropertyCreatedAtType;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+import com.microsoft.windowsazure.mobileservices.table.serialization.Iso8601DateCodec;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityAdapter;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityMetadata;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonObjects;
+import com.microsoft.windowsazure.mobileservices.table.serialization.MobileServiceSerializationContext;
 
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.TimeZone;
 
 class Person {
@@ -509,4 +532,290 @@ public class SerializationTests extends InstrumentationTestCase {
         assertEquals(expectedAddress.getZipCode(), a.getZipCode());
     }
 
+    public void testSerializationContextShouldReuseGsonUntilSerializerIsRegistered() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        MobileServiceSerializationContext context = client.getSerializationContext();
+
+        Gson gson = context.getGson();
+        assertSame(gson, context.getGson());
+
+        // Clients created using withFilter share the context
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertSame(context, filteredClient.getSerializationContext());
+
+        filteredClient.registerSerializer(Address.class, new JsonSerializer<Address>() {
+            @Override
+            public JsonElement serialize(Address address, Type type, JsonSerializationContext serializationContext) {
+                return new JsonPrimitive(address.getCountry());
+            }
+        });
+
+        assertNotSame(gson, context.getGson());
+        assertEquals("\"US\"", client.getSerializationContext().getGson().toJson(new Address("1345 Washington St", 1313, "US")));
+
+        // A new GsonBuilder gets a new context
+        client.setGsonBuilder(new GsonBuilder());
+        assertNotSame(context, client.getSerializationContext());
+        assertSame(context, filteredClient.getSerializationContext());
+    }
+
+    public void testSerializationContextShouldDiscardCachesOnInvalidate() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        MobileServiceSerializationContext context = client.getSerializationContext();
+
+        Gson gson = context.getGson();
+        TypeAdapter<Address> adapter = context.getTypeAdapter(Address.class);
+        JsonEntityMetadata metadata = context.getEntityMetadata(AllSystemPropertiesType.class);
+
+        assertSame(adapter, context.getTypeAdapter(Address.class));
+
+        context.invalidate();
+
+        // Every cached value is replaced at once
+        assertNotSame(gson, context.getGson());
+        assertNotSame(adapter, context.getTypeAdapter(Address.class));
+        assertNotSame(metadata, context.getEntityMetadata(AllSystemPropertiesType.class));
+        assertSame(context.getTypeAdapter(Address.class), context.getTypeAdapter(Address.class));
+    }
+
+    public void testGsonBuilderChangesShouldBeAppliedAfterTheFirstUse() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client.getGsonBuilder();
+        assertTrue(client.getSerializationContext().getGson().toJson(new Address("1345 Washington St", 1313, "US")).contains("1313"));
+
+        // Every call invalidates the context, not only the first one
+        client.getGsonBuilder().registerTypeAdapter(Address.class, new JsonSerializer<Address>() {
+            @Override
+            public JsonElement serialize(Address src, Type type, JsonSerializationContext serializationContext) {
+                return new JsonPrimitive(src.getCountry());
+            }
+        });
+
+        assertEquals("\"US\"", client.getSerializationContext().getGson().toJson(new Address("1345 Washington St", 1313, "US")));
+    }
+
+    public void testSerializationContextShouldCacheEntityMetadata() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        MobileServiceSerializationContext context = client.getSerializationContext();
+
+        JsonEntityMetadata metadata = context.getEntityMetadata(AllSystemPropertiesType.class);
+        assertSame(metadata, context.getEntityMetadata(AllSystemPropertiesType.class));
+
+        assertEquals("Id", metadata.getIdPropertyName());
+        assertEquals(String.class, metadata.getIdPropertyClass());
+        assertEquals(1, metadata.getIdPropertyCount());
+        assertEquals(EnumSet.of(MobileServiceSystemProperty.CreatedAt, MobileServiceSystemProperty.UpdatedAt, MobileServiceSystemProperty.Version),
+                metadata.getSystemProperties());
+
+        // Integer ids do not support system properties
+        assertTrue(context.getEntityMetadata(IntegerIdNotSystemPropertyCreatedAtType.class).getSystemProperties().isEmpty());
+    }
+
+    public void testSerializationContextShouldUseGeneratedEntityAdapter() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        MobileServiceSerializationContext context = client.getSerializationContext();
+
+        JsonEntityAdapter<JsonEntityTestObject> generatedAdapter = MobileServiceSerializationContext.getGeneratedAdapter(JsonEntityTestObject.class);
+        assertNotNull(generatedAdapter);
+
+        JsonEntityMetadata metadata = context.getEntityMetadata(JsonEntityTestObject.class);
+        assertSame(generatedAdapter, metadata.getGeneratedAdapter());
+        assertEquals("id", metadata.getIdPropertyName());
+        assertEquals(String.class, metadata.getIdPropertyClass());
+        assertEquals(EnumSet.of(MobileServiceSystemProperty.Version), metadata.getSystemProperties());
+
+        Map<String, ColumnDataType> columns = context.getColumns(JsonEntityTestObject.class);
+        assertEquals(5, columns.size());
+        assertEquals(ColumnDataType.String, columns.get("id"));
+        assertEquals(ColumnDataType.String, columns.get("name"));
+        assertEquals(ColumnDataType.String, columns.get("__version"));
+        assertEquals(ColumnDataType.Integer, columns.get("count"));
+        assertEquals(ColumnDataType.Date, columns.get("dueDate"));
+
+        // Classes without a generated adapter use reflection
+        assertNull(context.getEntityMetadata(PersonTestObject.class).getGeneratedAdapter());
+        assertEquals(ColumnDataType.Integer, context.getColumns(PersonTestObject.class).get("id"));
+
+        JsonEntityTestObject entity = new JsonEntityTestObject();
+        entity.setId("an id");
+        entity.setName("John");
+        entity.setVersion("AAAAAAAAB9E=");
+        entity.setCount(3);
+        entity.setDueDate(new GregorianCalendar(2015, 0, 15).getTime());
+        entity.setDirty(true);
+
+        // The generated type adapter writes the same content as Gson
+        JsonElement json = context.toJsonTree(entity);
+        assertEquals(context.getGson().toJsonTree(entity), json);
+
+        JsonEntityTestObject result = context.getTypeAdapter(JsonEntityTestObject.class).fromJsonTree(json);
+        assertEquals("an id", result.getId());
+        assertEquals("John", result.getName());
+        assertEquals("AAAAAAAAB9E=", result.getVersion());
+        assertEquals(3, result.getCount());
+        assertEquals(entity.getDueDate(), result.getDueDate());
+        assertFalse(result.isDirty());
+
+        // A registered serializer replaces the generated type adapter
+        client.registerSerializer(JsonEntityTestObject.class, new JsonSerializer<JsonEntityTestObject>() {
+            @Override
+            public JsonElement serialize(JsonEntityTestObject src, Type type, JsonSerializationContext serializationContext) {
+                return new JsonPrimitive(src.getName());
+            }
+        });
+
+        assertEquals(new JsonPrimitive("John"), context.toJsonTree(entity));
+        assertFalse(context.isGeneratedAdaptersEnabled());
+    }
+
+    public void testSerializationContextShouldNotUseGeneratedEntityAdapterWithCustomizedGsonBuilder() throws Throwable {
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        assertTrue(client.getSerializationContext().isGeneratedAdaptersEnabled());
+
+        client.getGsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE);
+        MobileServiceSerializationContext context = client.getSerializationContext();
+        assertFalse(context.isGeneratedAdaptersEnabled());
+
+        JsonEntityTestObject entity = new JsonEntityTestObject();
+        entity.setCount(3);
+
+        // The field naming policy of the GsonBuilder is applied
+        JsonObject json = context.toJsonTree(entity).getAsJsonObject();
+        assertEquals(3, json.get("Count").getAsInt());
+        assertNull(context.getEntityMetadata(JsonEntityTestObject.class).getGeneratedAdapter());
+
+        // A GsonBuilder set on the client is considered customised
+        client.setGsonBuilder(MobileServiceClient.createMobileServiceGsonBuilder());
+        assertFalse(client.getSerializationContext().isGeneratedAdaptersEnabled());
+    }
+
+    public void testDateCodecShouldParseIso8601Dates() throws Throwable {
+        long expected = DateSerializer.deserialize("2013-01-22T14:30:40.000Z").getTime();
+
+        assertEquals(1358865040000L, expected);
+        assertEquals(expected, Iso8601DateCodec.parse("2013-01-22T14:30:40Z"));
+        assertEquals(expected, Iso8601DateCodec.parse("2013-01-22T14:30:40.000"));
+        assertEquals(expected, Iso8601DateCodec.parse("2013-01-22T10:30:40-04:00"));
+        assertEquals(expected, Iso8601DateCodec.parse("2013-01-22T16:30:40+0200"));
+        assertEquals(expected - 40000, Iso8601DateCodec.parse("2013-01-22T15:30+01"));
+
+        // Fractions of a second are padded or truncated to milliseconds
+        assertEquals(expected + 100, Iso8601DateCodec.parse("2013-01-22T14:30:40.1Z"));
+        assertEquals(expected + 120, Iso8601DateCodec.parse("2013-01-22T14:30:40.12Z"));
+        assertEquals(expected + 123, Iso8601DateCodec.parse("2013-01-22T14:30:40.1234567Z"));
+
+        assertEquals(-1, Iso8601DateCodec.parse("1969-12-31T23:59:59.999Z"));
+        assertEquals("1969-12-31T23:59:59.999Z", Iso8601DateCodec.format(-1));
+        assertEquals("2016-02-29T00:00:00.000Z", Iso8601DateCodec.format(Iso8601DateCodec.parse("2016-02-29T00:00:00Z")));
+
+        String[] invalidDates = {"", "2013-01-22", "2013-02-29T00:00:00Z", "2013-13-01T00:00:00Z", "2013-01-22T24:00:00Z", "2013-01-22T14:30:40.Z",
+                "2013-01-22T14:30:40Z UTC"};
+
+        for (String invalidDate : invalidDates) {
+            try {
+                Iso8601DateCodec.parse(invalidDate);
+                fail("Expected a ParseException for " + invalidDate);
+            } catch (ParseException e) {
+                // Expected
+            }
+        }
+    }
+
+    public void testDateCodecShouldMatchSimpleDateFormat() throws Throwable {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSS'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Random random = new Random(42);
+        Date[] dates = new Date[1000];
+        String[] formattedDates = new String[dates.length];
+
+        for (int i = 0; i < dates.length; i++) {
+            // Dates from 1900 to 2100
+            dates[i] = new Date(-2208988800000L + (long) (random.nextDouble() * 6311433600000L));
+            formattedDates[i] = dateFormat.format(dates[i]);
+
+            assertEquals(formattedDates[i], DateSerializer.serialize(dates[i]));
+            assertEquals(dates[i], DateSerializer.deserialize(formattedDates[i]));
+        }
+
+        // Edge cases round-trip to the canonical UTC format, and agree with
+        // SimpleDateFormat for the dates it can parse
+        SimpleDateFormat offsetDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+
+        String[][] edgeCases = {
+                // Fractions of a second
+                {"2013-01-22T14:30:40Z", "2013-01-22T14:30:40.000Z", "2013-01-22T14:30:40.000+0000"},
+                {"2013-01-22T14:30:40.5Z", "2013-01-22T14:30:40.500Z", "2013-01-22T14:30:40.500+0000"},
+                {"2013-01-22T14:30:40.999999Z", "2013-01-22T14:30:40.999Z", "2013-01-22T14:30:40.999+0000"},
+                // Offsets, including across days and years
+                {"2013-01-22T10:30:40.000-04:00", "2013-01-22T14:30:40.000Z", "2013-01-22T10:30:40.000-0400"},
+                {"2013-01-01T01:00:00.000+0230", "2012-12-31T22:30:00.000Z", "2013-01-01T01:00:00.000+0230"},
+                {"2012-12-31T23:00:00.000-01", "2013-01-01T00:00:00.000Z", "2012-12-31T23:00:00.000-0100"},
+                // No designator is UTC
+                {"2016-02-29T23:59:59.999", "2016-02-29T23:59:59.999Z", "2016-02-29T23:59:59.999+0000"},
+                {"1970-01-01T00:00:00", "1970-01-01T00:00:00.000Z", "1970-01-01T00:00:00.000+0000"}};
+
+        for (String[] edgeCase : edgeCases) {
+            long time = Iso8601DateCodec.parse(edgeCase[0]);
+
+            assertEquals(edgeCase[1], Iso8601DateCodec.format(time));
+            assertEquals(time, Iso8601DateCodec.parse(edgeCase[1]));
+            assertEquals(offsetDateFormat.parse(edgeCase[2]).getTime(), time);
+            assertEquals(new Date(time), DateSerializer.deserialize(edgeCase[1]));
+        }
+    }
+
+    public void testJsonObjectsShouldCopyWithoutChangingSource() throws Throwable {
+        JsonObject address = new JsonObject();
+        address.addProperty("country", "US");
+
+        JsonObject source = new JsonObject();
+        source.addProperty("id", "an id");
+        source.addProperty("__version", "AAAAAAAAB9E=");
+        source.add("address", address);
+
+        JsonArray tags = new JsonArray();
+        tags.add(new JsonPrimitive("a tag"));
+        address.add("tags", tags);
+
+        JsonObject copy = JsonObjects.copy(source);
+        copy.remove("id");
+        copy.addProperty("name", "John");
+
+        assertEquals(3, source.entrySet().size());
+        assertEquals("an id", source.get("id").getAsString());
+        assertFalse(source.has("name"));
+
+        // Nested objects and arrays are copied too
+        assertEquals(address, copy.get("address"));
+        assertNotSame(address, copy.get("address"));
+        copy.getAsJsonObject("address").addProperty("country", "CA");
+        copy.getAsJsonObject("address").getAsJsonArray("tags").add(new JsonPrimitive("another tag"));
+        assertEquals("US", address.get("country").getAsString());
+        assertEquals(1, tags.size());
+
+        Predicate<String> systemProperties = new Predicate<String>() {
+            @Override
+            public boolean apply(String propertyName) {
+                return propertyName.startsWith("__");
+            }
+        };
+
+        JsonObject withoutSystemProperties = JsonObjects.withoutProperties(source, systemProperties);
+        assertNotSame(source, withoutSystemProperties);
+        assertFalse(withoutSystemProperties.has("__version"));
+        assertTrue(source.has("__version"));
+        assertEquals(2, withoutSystemProperties.entrySet().size());
+        assertNotSame(address, withoutSystemProperties.get("address"));
+
+        // Objects without matching properties are not copied
+        assertSame(withoutSystemProperties, JsonObjects.withoutProperties(withoutSystemProperties, systemProperties));
+    }
 }
@@ -23,18 +23,29 @@ import android.test.InstrumentationTestCase;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.JsonResponseParser;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponseImpl;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.StatusLineMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObject;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.ResultsContainer;
 
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 
 public class ServiceFilterTests extends InstrumentationTestCase {
@@ -369,4 +380,65 @@ public class ServiceFilterTests extends InstrumentationTestCase {
             }
         }
     }
-}
\ No newline at end of file
+
+    public void testStreamingResponseShouldBufferContentLazily() throws Throwable {
+        BasicHttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        httpResponse.setEntity(new StringEntity("{\"id\":1}", MobileServiceClient.UTF8_ENCODING));
+
+        ServiceFilterResponseImpl response = new ServiceFilterResponseImpl(httpResponse, true);
+
+        // Filters reading the content should still get it
+        assertEquals("{\"id\":1}", response.getContent());
+        assertSame(response.getContent(), response.getContent());
+
+        // The buffered content can still be parsed as a stream
+        JsonElement json = JsonResponseParser.parse(response);
+        assertEquals(1, json.getAsJsonObject().get("id").getAsInt());
+    }
+
+    public void testStreamingResponseShouldBeParsedFromStream() throws Throwable {
+        BasicHttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        httpResponse.setEntity(new StringEntity("[{\"id\":1},{\"id\":2}]", MobileServiceClient.UTF8_ENCODING));
+
+        ServiceFilterResponseImpl response = new ServiceFilterResponseImpl(httpResponse, true);
+
+        JsonElement json = JsonResponseParser.parse(response);
+
+        assertEquals(2, json.getAsJsonArray().size());
+
+        // The streamed content is not kept
+        assertNull(response.getContent());
+        assertNull(response.getRawContent());
+
+        try {
+            response.getContentStream();
+            fail("Expected the content to be streamed only once");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testStreamingResponseShouldReadTheRestOfTheContentOnClose() throws Throwable {
+        ByteArrayInputStream content = new ByteArrayInputStream("{\"id\":1}".getBytes(MobileServiceClient.UTF8_ENCODING));
+
+        BasicHttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        httpResponse.setEntity(new InputStreamEntity(content, -1));
+
+        ServiceFilterResponseImpl response = new ServiceFilterResponseImpl(httpResponse, true);
+
+        InputStream stream = response.getContentStream();
+
+        assertEquals('{', stream.read());
+        stream.close();
+
+        assertEquals(0, content.available());
+        assertNull(response.getContent());
+    }
+
+    public void testJsonResponseParserShouldReturnNullForResponseWithoutContent() throws Throwable {
+        ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+        response.setContent((String) null);
+
+        assertNull(JsonResponseParser.parse(response));
+    }
+}
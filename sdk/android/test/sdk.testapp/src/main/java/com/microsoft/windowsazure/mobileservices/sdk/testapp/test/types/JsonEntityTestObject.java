@@ -0,0 +1,93 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types;
+
+import com.google.gson.annotations.SerializedName;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntity;
+
+import java.util.Date;
+
+@JsonEntity
+public class JsonEntityTestObject {
+    private String id;
+
+    @SerializedName("name")
+    private String mName;
+
+    @SerializedName("__version")
+    private String mVersion;
+
+    int count;
+
+    Date dueDate;
+
+    private transient boolean mDirty;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void setName(String name) {
+        mName = name;
+
+        // Type adapters must not call the setter, like Gson
+        mDirty = true;
+    }
+
+    public String getVersion() {
+        return mVersion;
+    }
+
+    public void setVersion(String version) {
+        mVersion = version;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(Date dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    public boolean isDirty() {
+        return mDirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        mDirty = dirty;
+    }
+}